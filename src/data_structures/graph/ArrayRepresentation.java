@@ -8,19 +8,17 @@ import gui.overlay.OverlayLabel;
 import java.awt.Color;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.io.StreamCorruptedException;
 import java.util.Arrays;
 import java.util.LinkedList;
 
 import org.jdesktop.swingx.mapviewer.GeoPosition;
 
 import util.Distance;
+import util.FixedPoint;
 import data_structures.grid.InvalidCoordinateArraysException;
 import data_structures.grid.LookupGrid;
 
@@ -39,12 +37,56 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     private double    lat[] = null;
     private double    lon[] = null;
-    private int    source[] = null;
+    /*
+     * Instead of lat/lon for graph files storing fixed-point coordinates,
+     * see FixedPoint.
+     */
+    private int  lat_fixed[] = null;
+    private int  lon_fixed[] = null;
+    private int     node_num = 0;
     private int    target[] = null;
     private int    offset[] = null;
-    private int      dist[] = null;
-    private int    dist_w[] = null;
+    /*
+     * Highway type per edge, GraphFile.TYPE_UNKNOWN where files storing only
+     * weighted distances don't tell it apart, see typesFromWeights().
+     */
+    private byte     type[] = null;
     private final double types[];
+    /*
+     * Distance and weighted distance per edge, DIST_ESCAPE when the value doesn't
+     * fit into a char (or is negative, i.e. not routable), see dist(int) and weight(int).
+     * These few edges are listed in wide_edge (ascending) with their actual values
+     * in wide_dist and wide_dist_w.
+     */
+    private char   dist16[] = null;
+    private char dist_w16[] = null;
+    private int   wide_edge[] = null;
+    private int   wide_dist[] = null;
+    private int wide_dist_w[] = null;
+    private static final char DIST_ESCAPE = Character.MAX_VALUE;
+    /*
+     * Distances as read from the file, only while loading, see packDistances().
+     * load_dist_w is null for text files, which store the highway types only.
+     */
+    private int   load_dist[] = null;
+    private int load_dist_w[] = null;
+    
+    /*
+     * Reverse adjacency (incoming edges), mapped from a binary graph file storing it
+     * or built on first use, see reverse().
+     */
+    private volatile ReverseAdjacency reverse = null;
+    
+    /*
+     * Strongly connected components, stored with the graph or computed at load time.
+     */
+    private StrongComponents scc = null;
+    
+    /*
+     * Lowest ratio of edge cost to straight-line length, unweighted and weighted,
+     * see getMinCostPerMeter(boolean).
+     */
+    private double[] cost_per_meter = null;
     
     /*
      * Non-routable nodes info (tourism nodes)
@@ -68,16 +110,32 @@ final public class ArrayRepresentation implements Graph, Serializable {
     
     private LookupGrid grid = null;
     private LookupGrid ngrid = null;
+    // nodes of the main component only, the same as grid when there's a single component
+    private LookupGrid mgrid = null;
     
     
     /**
      * Read graph data from the given file and provide various access methods.
      * <br><br>
      * This class is effectively final. No (global) state modification occurs after
-     * loading of the graph. Getters don't have side effects and get by without locking.
+     * loading of the graph. Getters don't have side effects and get by without locking,
+     * except for the first access to incoming edges (see {@link #inEdgeBegin(int)}).
      * <br><br>
-     * The graph can either be loaded from a plain text file or as the binary result
-     * of {@link #save(String)}, the latter is considerably faster.
+     * The graph can either be loaded from a plain text file, a legacy serialized
+     * file or the binary result of {@link #save(String)}. The latter is mapped into memory
+     * (see {@link GraphFile#GraphFile(String) GraphFile}) and considerably faster.
+     * The format is detected automatically, loading and saving again converts
+     * a graph to the binary format.
+     * <br><br>
+     * Edges are kept as adjacency arrays (CSR): the edges of node {@code n} are
+     * {@code offset[n] .. offset[n+1]-1}, so their source isn't stored. Per edge only
+     * target (an {@code int}), distance and weighted distance (a {@code char} each) and
+     * highway type (a {@code byte}) are held in memory, 9 bytes altogether. The few
+     * distances exceeding a {@code char} (or negative, i.e. not routable) are kept in
+     * a sorted side table. The weighted distances stored with binary and serialized
+     * graphs are used as they are, text files get them derived from the highway type.
+     * Coordinates of binary files storing them as fixed-point values (see
+     * {@link #save(String, boolean)}) are kept as {@code int}s, which halves their size.
      * <br><br>
      * Graph file specification:
      * <pre>
@@ -105,7 +163,19 @@ final public class ArrayRepresentation implements Graph, Serializable {
     public ArrayRepresentation(String f) throws InvalidGraphFormatException, IOException
     {
         super();
-        types = new double[29];
+        types = speedFactors();
+        
+        load(f);
+    }
+    
+    
+    /**
+     * Speed factor per highway type, {@code dist_w = dist / factor}.<br>
+     * Types not routable are {@code -1}.
+     */
+    static double[] speedFactors()
+    {
+        final double[] types = new double[29];
         Arrays.fill(types, -1);
         types[1]  = 1.3;   // motorway
         types[2]  = 1.2;   // primary
@@ -118,40 +188,99 @@ final public class ArrayRepresentation implements Graph, Serializable {
         types[10] = 0.5;   // turning_circle
         types[11] = 0.3;   // service
         types[12] = 0.5;   // unclassified
-        
-        load(f);
+        return types;
     }
     
     
     /**
-     * Save the graph as a binary blob.
+     * Lowest ratio of edge cost to the straight-line (haversine) length of the edge
+     * over all routable edges of {@code g}, for both metrics. Edge costs are rounded
+     * and weighted ones depend on the highway type, so this is the largest factor
+     * the straight-line distance between two nodes can be scaled with and still not
+     * exceed the cost of any path between them.
+     * 
+     * @return {@code {unweighted, weighted}}, {@code 0} for graphs without edges
+     */
+    static double[] minCostPerMeter(Graph g)
+    {
+        final double[] r = { Double.MAX_VALUE, Double.MAX_VALUE };
+        for (int n = 0; n < g.size(); ++n) {
+            final double lat = g.getLat(n);
+            final double lon = g.getLon(n);
+            for (int e = g.edgeBegin(n), end = g.edgeEnd(n); e < end; ++e) {
+                final int v = g.edgeTarget(e);
+                final double h = Distance.haversine(lat, lon, g.getLat(v), g.getLon(v));
+                // no cost is too low for an edge without length
+                if (h <= 0)
+                    continue;
+                
+                for (int k = 0; k < 2; ++k) {
+                    final int c = g.edgeWeight(e, k == 1);
+                    if (c >= 0)
+                        r[k] = Math.min(r[k], c / h);
+                }
+            }
+        }
+        for (int k = 0; k < 2; ++k) {
+            if (r[k] == Double.MAX_VALUE)
+                r[k] = 0;
+        }
+        return r;
+    }
+    
+    
+    /**
+     * Save the graph in the binary format described in {@link GraphFile#GraphFile(String) GraphFile},
+     * keeping the coordinates in the format they were loaded in.
      * 
      * @param f file location
      */
     public void save(String f) throws IOException
     {
-        ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(f));
-        
-        oos.writeObject(lat);
-        oos.writeObject(lon);
-
-        oos.writeObject(source);
-        oos.writeObject(target);
-        oos.writeObject(offset);
-        oos.writeObject(dist);
-        oos.writeObject(dist_w);
+        save(f, lat == null);
+    }
+    
+    
+    /**
+     * Save the graph in the binary format described in {@link GraphFile#GraphFile(String) GraphFile}.
+     * 
+     * @param f file location
+     * @param fixed store the coordinates as fixed-point values (see {@link FixedPoint})?
+     *        Rounds them to {@code 1e-7} degrees, but halves their size.
+     */
+    public void save(String f, boolean fixed) throws IOException
+    {
+        final int[] dist = new int[target.length];
+        final int[] dist_w = new int[target.length];
+        for (int e = 0; e < dist.length; ++e) {
+            dist[e] = dist(e);
+            dist_w[e] = weight(e);
+        }
         
-        oos.writeObject(nlat);
-        oos.writeObject(nlon);
-        oos.writeObject(tour);
-        oos.writeObject(name);
-
-        oos.writeDouble(minLat);
-        oos.writeDouble(maxLat);
-        oos.writeDouble(minLon);
-        oos.writeDouble(maxLon);
+        final GraphFileWriter w = new GraphFileWriter(f, node_num, target.length, nlat.length, minLat, maxLat, minLon, maxLon);
+        if (fixed) {
+            w.addSection(GraphFile.SECTION_LAT_FIXED,  lat != null ? FixedPoint.toFixed(lat) : lat_fixed)
+             .addSection(GraphFile.SECTION_LON_FIXED,  lon != null ? FixedPoint.toFixed(lon) : lon_fixed)
+             .addSection(GraphFile.SECTION_NLAT_FIXED, FixedPoint.toFixed(nlat))
+             .addSection(GraphFile.SECTION_NLON_FIXED, FixedPoint.toFixed(nlon));
+        }
+        else {
+            w.addSection(GraphFile.SECTION_LAT,  lat != null ? lat : FixedPoint.toDegrees(lat_fixed))
+             .addSection(GraphFile.SECTION_LON,  lon != null ? lon : FixedPoint.toDegrees(lon_fixed))
+             .addSection(GraphFile.SECTION_NLAT, nlat)
+             .addSection(GraphFile.SECTION_NLON, nlon);
+        }
         
-        oos.close();
+        scc.addTo(w)
+            .addSection(GraphFile.SECTION_OFFSET, offset)
+            .addSection(GraphFile.SECTION_TARGET, target)
+            .addSection(GraphFile.SECTION_DIST,   dist)
+            .addSection(GraphFile.SECTION_DIST_W, dist_w)
+            .addSection(GraphFile.SECTION_TYPE,   type)
+            .addSection(GraphFile.SECTION_TOUR,   tour)
+            .addNames(name);
+        reverse().addTo(w)
+            .close();
     }
     
     
@@ -183,30 +312,28 @@ final public class ArrayRepresentation implements Graph, Serializable {
             
             
             // read edges
-            source = new int[edge_num];         // TODO: actually... we don't need this
             target = new int[edge_num];
             offset = new int[node_num + 1];     // +1 because of getNeighbor()
-            dist   = new int[edge_num];
-            dist_w = new int[edge_num];
+            load_dist = new int[edge_num];
+            type   = new byte[edge_num];
             Arrays.fill(offset, -1);
             
+            // edges are sorted by source, only the first edge of every node is of interest
             for (int i = 0; i < edge_num; ++i)
             {
                 final String[] s = b.readLine().split(" ");
-                source[i] = Integer.parseInt(s[0]);
+                final int source = Integer.parseInt(s[0]);
                 target[i] = Integer.parseInt(s[1]);
-                dist[i]   = Integer.parseInt(s[2]);
-
-                final double weight  = types[Integer.parseInt(s[3])];
-                dist_w[i] = (int) Math.round(dist[i]/weight);
+                load_dist[i] = Integer.parseInt(s[2]);
+                type[i]   = Byte.parseByte(s[3]);
                 
-                if (offset[source[i]] < 0) {
-                    offset[source[i]] = i;
+                if (offset[source] < 0) {
+                    offset[source] = i;
                 }
             }
             
             // fix offset array
-            int last = source.length;
+            int last = edge_num;
             for (int i = offset.length - 1; i > 0; --i) {
                 if (offset[i] < 0) {
                     offset[i] = last;
@@ -240,19 +367,81 @@ final public class ArrayRepresentation implements Graph, Serializable {
     }
     
     
-    private void loadFromBinary(ObjectInputStream ois) throws IOException, InvalidGraphFormatException
+    /**
+     * Bulk copy all sections of a mapped binary graph file into our arrays.
+     */
+    private void loadFromMapped(GraphFile gf) throws IOException, InvalidGraphFormatException
+    {
+        System.out.println("Found binary graph, mapping...");
+        
+        final int node_num = gf.getNodeCount();
+        final int edge_num = gf.getEdgeCount();
+        final int tour_num = gf.getTourismNodeCount();
+        
+        offset = new int[node_num + 1];
+        target = new int[edge_num];
+        load_dist   = new int[edge_num];
+        load_dist_w = new int[edge_num];
+        
+        if (gf.hasFixedCoordinates()) {
+            lat_fixed = new int[node_num];
+            lon_fixed = new int[node_num];
+            gf.getChunkedInts(GraphFile.SECTION_LAT_FIXED, node_num).get(lat_fixed);
+            gf.getChunkedInts(GraphFile.SECTION_LON_FIXED, node_num).get(lon_fixed);
+        }
+        else {
+            lat = gf.getCoordinates(GraphFile.SECTION_LAT, node_num);
+            lon = gf.getCoordinates(GraphFile.SECTION_LON, node_num);
+        }
+        gf.getChunkedInts(GraphFile.SECTION_OFFSET, node_num + 1).get(offset);
+        gf.getChunkedInts(GraphFile.SECTION_TARGET, edge_num).get(target);
+        gf.getChunkedInts(GraphFile.SECTION_DIST,   edge_num).get(load_dist);
+        gf.getChunkedInts(GraphFile.SECTION_DIST_W, edge_num).get(load_dist_w);
+        if (gf.hasSection(GraphFile.SECTION_TYPE)) {
+            type = new byte[edge_num];
+            gf.getBytes(GraphFile.SECTION_TYPE, edge_num).get(type);
+        }
+        else {
+            type = typesFromWeights(ChunkedIntBuffer.wrap(load_dist), ChunkedIntBuffer.wrap(load_dist_w));
+        }
+        
+        if (offset[0] != 0 || offset[node_num] != edge_num) {
+            throw new InvalidGraphFormatException("Invalid offset section");
+        }
+
+        // few, always kept as doubles
+        nlat = gf.getCoordinates(GraphFile.SECTION_NLAT, tour_num);
+        nlon = gf.getCoordinates(GraphFile.SECTION_NLON, tour_num);
+        tour = new byte[tour_num];
+        
+        gf.getBytes(GraphFile.SECTION_TOUR,   tour_num).get(tour);
+        name = gf.getNames();
+        
+        minLat = gf.getMinLat();
+        maxLat = gf.getMaxLat();
+        minLon = gf.getMinLon();
+        maxLon = gf.getMaxLon();
+        
+        scc = StrongComponents.read(gf, true);
+        // stays mapped, the mapping outlives the file channel
+        reverse = ReverseAdjacency.read(gf);
+    }
+    
+    
+    private void loadFromSerialized(ObjectInputStream ois) throws IOException, InvalidGraphFormatException
     {
         try {
-            System.out.println("Found serialized graph, reading...");
+            System.out.println("Found legacy serialized graph, reading...");
             
             lat    = (double[]) ois.readObject();
             lon    = (double[]) ois.readObject();
 
-            source = (int[])    ois.readObject();
+            ois.readObject();   // source, implied by offset
             target = (int[])    ois.readObject();
             offset = (int[])    ois.readObject();
-            dist   = (int[])    ois.readObject();
-            dist_w = (int[])    ois.readObject();
+            load_dist   = (int[]) ois.readObject();
+            load_dist_w = (int[]) ois.readObject();
+            type   = typesFromWeights(ChunkedIntBuffer.wrap(load_dist), ChunkedIntBuffer.wrap(load_dist_w));
             
             nlat   = (double[]) ois.readObject();
             nlon   = (double[]) ois.readObject();
@@ -273,19 +462,53 @@ final public class ArrayRepresentation implements Graph, Serializable {
     
     private void load(String f) throws InvalidGraphFormatException, IOException
     {
-        try {
-            final ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f));
-            loadFromBinary(ois);
-            ois.close();
+        switch (GraphFile.detectFormat(f)) {
+            case GraphFile.FORMAT_BINARY:
+                final GraphFile gf = new GraphFile(f);
+                try {
+                    loadFromMapped(gf);
+                }
+                finally {
+                    gf.close();
+                }
+                break;
+            case GraphFile.FORMAT_SERIALIZED:
+                final ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f));
+                loadFromSerialized(ois);
+                ois.close();
+                break;
+            default:
+                final BufferedReader b = new BufferedReader(new InputStreamReader(new FileInputStream(f)), 8192);
+                loadFromText(b);
+                b.close();
+                break;
         }
-        catch (StreamCorruptedException e1) {
-            final BufferedReader b = new BufferedReader(new InputStreamReader(new FileInputStream(f)), 8192);
-            loadFromText(b);
-            b.close();
+        
+        node_num = offset.length - 1;
+        for (byte t : type) {
+            // without weighted distances in the file they're derived from the type
+            if ((t < 0 || t >= types.length) && (t != GraphFile.TYPE_UNKNOWN || load_dist_w == null)) {
+                throw new InvalidGraphFormatException("Invalid highway type " + t);
+            }
         }
+        packDistances();
+        
+        if (scc == null) {
+            scc = new StrongComponents(node_num, ChunkedIntBuffer.wrap(offset), ChunkedIntBuffer.wrap(target));
+        }
+        cost_per_meter = minCostPerMeter(this);
         
         try {
-            grid = new LookupGrid(lat, lon, minLat, maxLat, minLon, maxLon);
+            if (lat != null) {
+                grid = new LookupGrid(lat, lon, minLat, maxLat, minLon, maxLon);
+                mgrid = scc.getComponentSize(0) == size() ? grid
+                            : new LookupGrid(ChunkedDoubleBuffer.wrap(lat), ChunkedDoubleBuffer.wrap(lon), scc.getNodes(0), minLat, maxLat, minLon, maxLon);
+            }
+            else {
+                grid = new LookupGrid(ChunkedIntBuffer.wrap(lat_fixed), ChunkedIntBuffer.wrap(lon_fixed), null, minLat, maxLat, minLon, maxLon);
+                mgrid = scc.getComponentSize(0) == size() ? grid
+                            : new LookupGrid(ChunkedIntBuffer.wrap(lat_fixed), ChunkedIntBuffer.wrap(lon_fixed), scc.getNodes(0), minLat, maxLat, minLon, maxLon);
+            }
             ngrid = new LookupGrid(nlat, nlon);
         }
         catch (InvalidCoordinateArraysException e) {
@@ -294,6 +517,70 @@ final public class ArrayRepresentation implements Graph, Serializable {
     }
     
     
+    /**
+     * Recover the highway type of every edge from its weighted distance, for
+     * files not storing the types. Only a type which is the single one matching
+     * is trusted. Types sharing a speed factor (e.g. motorway and trunk) and short
+     * edges, whose rounded weights match several factors, can't be told apart and
+     * become {@link GraphFile#TYPE_UNKNOWN}, as do edges matching no type at all.
+     * The weighted distances remain the reference for routing either way.
+     * 
+     * @param dist distance per edge
+     * @param dist_w weighted distance per edge
+     */
+    static byte[] typesFromWeights(ChunkedIntBuffer dist, ChunkedIntBuffer dist_w)
+    {
+        final double[] types = speedFactors();
+        final byte[] r = new byte[dist_w.size()];
+        
+        for (int e = 0; e < r.length; ++e) {
+            r[e] = typeFromWeight(types, dist.get(e), dist_w.get(e));
+        }
+        return r;
+    }
+    
+    
+    /**
+     * See {@link #typesFromWeights(ChunkedIntBuffer, ChunkedIntBuffer)}.
+     * 
+     * @param types speed factors, see {@link #speedFactors()}
+     * @return the single type matching, {@link GraphFile#TYPE_UNKNOWN} otherwise
+     */
+    static byte typeFromWeight(double[] types, int dist, int dist_w)
+    {
+        byte match = GraphFile.TYPE_UNKNOWN;
+        for (int t = 0; t < types.length; ++t) {
+            if (Math.round(dist / types[t]) == dist_w) {
+                if (match != GraphFile.TYPE_UNKNOWN)
+                    return GraphFile.TYPE_UNKNOWN;
+                match = (byte) t;
+            }
+        }
+        return match;
+    }
+    
+    
+    /**
+     * Incoming-edge CSR, required for backward searches only. Mapped from binary
+     * graph files storing it, otherwise built on first use and kept, which takes
+     * {@code 8} bytes per edge and {@code 4} per node.
+     */
+    private ReverseAdjacency reverse()
+    {
+        ReverseAdjacency r = reverse;
+        if (r == null) {
+            synchronized (this) {
+                r = reverse;
+                if (r == null) {
+                    r = new ReverseAdjacency(node_num, ChunkedIntBuffer.wrap(offset), ChunkedIntBuffer.wrap(target));
+                    reverse = r;
+                }
+            }
+        }
+        return r;
+    }
+    
+    
     /**
      * Search the ID of the node closest to the given coordinates.
      * 
@@ -344,14 +631,47 @@ final public class ArrayRepresentation implements Graph, Serializable {
     }
     
     
+    /**
+     * Search the ID of the node closest to the given coordinates, optionally
+     * only considering nodes of the largest strongly connected component.
+     * Nodes of other components (e.g. dead-end fragments) might not be able to
+     * reach most of the graph or not be reachable from it. These nodes have
+     * their own {@link LookupGrid}, which is as fast as the regular one.
+     * 
+     * @param lat latitude in decimal degrees
+     * @param lon longitude in decimal degrees
+     * @param mainComponent only nodes of component {@code 0}?
+     * @return ID of the found node or {@code -1}
+     */
+    public int getNearestNode(double lat, double lon, boolean mainComponent)
+    {
+        return getNearestNode(mainComponent ? mgrid : grid, lat, lon);
+    }
+    
+    
+    /**
+     * Search the ID of the node closest to the given position, optionally
+     * only considering nodes of the largest strongly connected component.
+     * See {@link #getNearestNode(double, double, boolean)}.
+     * 
+     * @param pos GeoPosition
+     * @param mainComponent only nodes of component {@code 0}?
+     * @return ID of the found node or {@code -1}
+     */
+    public int getNearestNode(GeoPosition pos, boolean mainComponent)
+    {
+        return getNearestNode(pos.getLatitude(), pos.getLongitude(), mainComponent);
+    }
+    
+    
     private int getNearestNode(LookupGrid lg, double lat, double lon)
     {
         /* naive approach yielding ideal result -> check every existing node
         int id = -1;
         double dist = Double.MAX_VALUE;
         
-        for (int i = 0; i < this.lat.length; ++i) {
-            final double d = Distance.haversine(lat, lon, this.lat[i], this.lon[i]);
+        for (int i = 0; i < node_num; ++i) {
+            final double d = Distance.haversine(lat, lon, getLat(i), getLon(i));
             if (d < dist) {
                 id = i;
                 dist = d;
@@ -368,33 +688,66 @@ final public class ArrayRepresentation implements Graph, Serializable {
     }
     
     
-    private LinkedList<Integer> getNodesInRange(double[] la, double[] lo, double lat, double lon, int range)
+    private static LinkedList<Integer> toList(int[] a)
     {
-        final double max_lat = Distance.translateLat(lat,  range);
-        final double min_lat = Distance.translateLat(lat, -range);
-        final double max_lon = Distance.translateLon(lon,  range, lat);
-        final double min_lon = Distance.translateLon(lon, -range, lat);
         final LinkedList<Integer> r = new LinkedList<Integer>();
-        
-        for (int i = 0; i < la.length; ++i)
-        {
-            if (la[i] > min_lat && la[i] < max_lat && lo[i] > min_lon && lo[i] < max_lon && Distance.haversine(la[i], lo[i], lat, lon) < range) {
-                r.add(i);
-            }
-        }
+        for (int i : a)
+            r.add(i);
         return r;
     }
     
     
     public LinkedList<Integer> getNodesInRange(double lat, double lon, int range)
     {
-        return getNodesInRange(this.lat, this.lon, lat, lon, range);
+        return toList(getNodesWithinRadius(lat, lon, range));
     }
     
     
     public LinkedList<Integer> getNNodesInRange(double lat, double lon, int range)
     {
-        return getNodesInRange(this.nlat, this.nlon, lat, lon, range);
+        return toList(getNNodesWithinRadius(lat, lon, range));
+    }
+    
+    
+    /**
+     * Get all routable nodes closer than {@code meters} to {@code (lat, lon)},
+     * see {@link LookupGrid#withinRadius(double, double, double)}.
+     * 
+     * @return node IDs in no particular order
+     */
+    public int[] getNodesWithinRadius(double lat, double lon, double meters)
+    {
+        return grid != null ? grid.withinRadius(lat, lon, meters) : new int[0];
+    }
+    
+    
+    /**
+     * Non-routable version of {@link #getNodesWithinRadius(double, double, double)}.
+     */
+    public int[] getNNodesWithinRadius(double lat, double lon, double meters)
+    {
+        return ngrid != null ? ngrid.withinRadius(lat, lon, meters) : new int[0];
+    }
+    
+    
+    /**
+     * Get the {@code k} routable nodes closest to {@code (lat, lon)},
+     * see {@link LookupGrid#kNearest(double, double, int)}.
+     * 
+     * @return node IDs ordered by increasing distance
+     */
+    public int[] getKNearestNodes(double lat, double lon, int k)
+    {
+        return grid != null ? grid.kNearest(lat, lon, k) : new int[0];
+    }
+    
+    
+    /**
+     * Non-routable version of {@link #getKNearestNodes(double, double, int)}.
+     */
+    public int[] getKNearestNNodes(double lat, double lon, int k)
+    {
+        return ngrid != null ? ngrid.kNearest(lat, lon, k) : new int[0];
     }
     
     
@@ -408,8 +761,8 @@ final public class ArrayRepresentation implements Graph, Serializable {
         Color[] c = {Color.BLACK, Color.DARK_GRAY, Color.GRAY, Color.LIGHT_GRAY, Color.WHITE};
         OverlayAggregate oa = new OverlayAggregate();
         
-        for (int i = 0; i < lat.length; ++i) {
-            GeoPosition g = new GeoPosition(lat[i], lon[i]);
+        for (int i = 0; i < node_num; ++i) {
+            GeoPosition g = getPosition(i);
             oa.addPoint(new OverlayElement(g, c[i % c.length], 7));
         }
         win.addPersistentOverlay(oa);
@@ -446,8 +799,8 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public int[] getNeighbors(int n)
     {
-        if (n < 0 || n >= lat.length) {
-            throw new RuntimeException("Bad Node ID: " + n + " (offset.length = " + lat.length + ")");
+        if (n < 0 || n >= node_num) {
+            throw new RuntimeException("Bad Node ID: " + n + " (offset.length = " + node_num + ")");
         }
 
         int[] r = new int[offset[n+1] - offset[n]];
@@ -468,8 +821,8 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public int getIthNeighbor(int n, int i)
     {
-        if (n < 0 || n >= lat.length) {
-            throw new RuntimeException("Bad Node ID: " + n + " (offset.length = " + lat.length + ")");
+        if (n < 0 || n >= node_num) {
+            throw new RuntimeException("Bad Node ID: " + n + " (offset.length = " + node_num + ")");
         }
         
         if ((offset[n] + i) < offset[n+1])
@@ -478,6 +831,133 @@ final public class ArrayRepresentation implements Graph, Serializable {
     }
     
     
+    /**
+     * Index of the first outgoing edge of node {@code n}. The edges of {@code n} are
+     * {@code edgeBegin(n) <= e < }{@link #edgeEnd(int) edgeEnd(n)}, the {@code i}'th edge of
+     * {@code n} (see {@link #getIthNeighbor(int, int)}) is {@code edgeBegin(n) + i}.
+     * <br><br>
+     * Unlike the {@code getIth*()} methods the range accessors don't check their
+     * arguments and don't look up {@code offset[n]} per edge, so a search relaxing
+     * the edges of {@code u} reads {@code offset} once and then the edge arrays in order:
+     * <pre>
+     * {@code
+     * for (int e = g.edgeBegin(u), end = g.edgeEnd(u); e < end; ++e) {
+     *     final int v = g.edgeTarget(e);
+     *     final int inc = g.edgeWeight(e, weighted);
+     *     ...
+     * }
+     * }
+     * </pre>
+     * 
+     * @param n node ID
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < n < }{@link #size()}
+     */
+    public int edgeBegin(int n)
+    {
+        return offset[n];
+    }
+    
+    
+    /**
+     * See {@link #edgeBegin(int)}.
+     * 
+     * @return index after the last outgoing edge of node {@code n}
+     */
+    public int edgeEnd(int n)
+    {
+        return offset[n+1];
+    }
+    
+    
+    /**
+     * See {@link #edgeBegin(int)}.
+     * 
+     * @param e edge index
+     * @return node ID of the target of edge {@code e}
+     */
+    public int edgeTarget(int e)
+    {
+        return target[e];
+    }
+    
+    
+    /**
+     * See {@link #edgeBegin(int)}.
+     * 
+     * @param e edge index
+     * @param weighted dist weighted by street type
+     * @return distance of edge {@code e}
+     */
+    public int edgeWeight(int e, boolean weighted)
+    {
+        return weighted ? weight(e) : dist(e);
+    }
+    
+    
+    /**
+     * See {@link #edgeBegin(int)}.
+     * 
+     * @param e edge index
+     * @return highway type of edge {@code e} (see {@link #speedFactors()}), {@link GraphFile#TYPE_UNKNOWN}
+     *         when the graph file didn't store it and it's ambiguous, see {@link #typesFromWeights(ChunkedIntBuffer, ChunkedIntBuffer)}
+     */
+    public int edgeType(int e)
+    {
+        return type[e];
+    }
+    
+    
+    /**
+     * Index of the first incoming edge of node {@code n}, like {@link #edgeBegin(int)}:
+     * the incoming edges of {@code n} are {@code inEdgeBegin(n) <= r < }{@link #inEdgeEnd(int) inEdgeEnd(n)}.
+     * <br><br>
+     * Only backward searches need the incoming edges. Unless the graph file stores
+     * them, the first call builds them, which locks and takes about as long as
+     * loading the edges.
+     * 
+     * @param n node ID
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < n < }{@link #size()}
+     */
+    public int inEdgeBegin(int n)
+    {
+        return reverse().getOffset().get(n);
+    }
+    
+    
+    /**
+     * See {@link #inEdgeBegin(int)}.
+     */
+    public int inEdgeEnd(int n)
+    {
+        return reverse().getOffset().get(n+1);
+    }
+    
+    
+    /**
+     * See {@link #inEdgeBegin(int)}.
+     * 
+     * @param r incoming edge index
+     * @return node ID of the source of incoming edge {@code r}
+     */
+    public int inEdgeSource(int r)
+    {
+        return reverse().getSource().get(r);
+    }
+    
+    
+    /**
+     * See {@link #inEdgeBegin(int)}.
+     * 
+     * @param r incoming edge index
+     * @return index of incoming edge {@code r} among all (outgoing) edges, e.g. for
+     *         {@link #edgeWeight(int, boolean)}
+     */
+    public int inEdgeForward(int r)
+    {
+        return reverse().getEdge().get(r);
+    }
+    
+    
     /**
      * Searches all outgoing edges of {@code from} and
      * returns the distance of the first edge found with
@@ -490,13 +970,13 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public int getDist(int from, int to)
     {
-        if (from < 0 || from >= lat.length) {
-            throw new RuntimeException("Bad Node ID: " + from + " (offset.length = " + lat.length + ")");
+        if (from < 0 || from >= node_num) {
+            throw new RuntimeException("Bad Node ID: " + from + " (offset.length = " + node_num + ")");
         }
         
         for (int i = offset[from]; i < offset[from+1]; ++i) {
             if (target[i] == to)
-                return dist[i];
+                return dist(i);
         }
         return -1;
     }
@@ -508,7 +988,7 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public double getLat(int n)
     {
-        return lat[n];
+        return lat != null ? lat[n] : FixedPoint.toDegrees(lat_fixed[n]);
     }
     
     
@@ -528,7 +1008,7 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public double getLon(int n)
     {
-        return lon[n];
+        return lon != null ? lon[n] : FixedPoint.toDegrees(lon_fixed[n]);
     }
     
     
@@ -552,7 +1032,7 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public GeoPosition getPosition(int n)
     {
-        return new GeoPosition(lat[n], lon[n]);
+        return new GeoPosition(getLat(n), getLon(n));
     }
     
     
@@ -582,12 +1062,42 @@ final public class ArrayRepresentation implements Graph, Serializable {
     }
     
 
+    /**
+     * @return strongly connected component of node {@code n}, {@code 0} is the largest one
+     */
+    public int getComponent(int n)
+    {
+        return scc.getComponent(n);
+    }
+    
+    
+    /**
+     * @return number of nodes of component {@code c}
+     */
+    public int getComponentSize(int c)
+    {
+        return scc.getComponentSize(c);
+    }
+    
+    
+    /**
+     * Constant time test to reject queries without searching,
+     * see {@link StrongComponents#mayReach(int, int)}.
+     * 
+     * @return {@code false} when there's certainly no path from {@code from} to {@code to}
+     */
+    public boolean mayReach(int from, int to)
+    {
+        return scc.mayReach(from, to);
+    }
+    
+
     /**
      * Size of the loaded graph (number of nodes).
      */
     public int size()
     {
-        return lat.length;
+        return node_num;
     }
     
     
@@ -596,7 +1106,7 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public int sizeN()
     {
-        return lat.length;
+        return nlat.length;
     }
     
     
@@ -617,10 +1127,96 @@ final public class ArrayRepresentation implements Graph, Serializable {
      */
     public int getIthEdgeDistFor(int n, int i, boolean weighted)
     {
-        if (weighted)
-            return dist_w[offset[n]+i];
-        else
-            return dist[offset[n]+i];
+        final int e = offset[n]+i;
+        return weighted ? weight(e) : dist(e);
+    }
+    
+    
+    /**
+     * Narrow the distances read by the loaders to {@code char}s, deriving the
+     * weighted ones from the highway types for text files.
+     */
+    private void packDistances()
+    {
+        final int edge_num = load_dist.length;
+        if (load_dist_w == null) {
+            load_dist_w = new int[edge_num];
+            for (int e = 0; e < edge_num; ++e) {
+                load_dist_w[e] = (int) Math.round(load_dist[e] / types[type[e]]);
+            }
+        }
+        
+        dist16   = new char[edge_num];
+        dist_w16 = new char[edge_num];
+        int wide = 0;
+        for (int e = 0; e < edge_num; ++e) {
+            dist16[e]   = narrow(load_dist[e]);
+            dist_w16[e] = narrow(load_dist_w[e]);
+            if (dist16[e] == DIST_ESCAPE || dist_w16[e] == DIST_ESCAPE)
+                ++wide;
+        }
+        
+        wide_edge   = new int[wide];
+        wide_dist   = new int[wide];
+        wide_dist_w = new int[wide];
+        wide = 0;
+        for (int e = 0; e < edge_num; ++e) {
+            if (dist16[e] == DIST_ESCAPE || dist_w16[e] == DIST_ESCAPE) {
+                wide_edge[wide]   = e;
+                wide_dist[wide]   = load_dist[e];
+                wide_dist_w[wide] = load_dist_w[e];
+                ++wide;
+            }
+        }
+        
+        load_dist = null;
+        load_dist_w = null;
+    }
+    
+    
+    private static char narrow(int d)
+    {
+        return d >= 0 && d < DIST_ESCAPE ? (char) d : DIST_ESCAPE;
+    }
+    
+    
+    /**
+     * Distance of edge {@code e}.
+     */
+    private int dist(int e)
+    {
+        final int d = dist16[e];
+        if (d != DIST_ESCAPE)
+            return d;
+        return wide_dist[Arrays.binarySearch(wide_edge, e)];
+    }
+    
+    
+    /**
+     * Distance of edge {@code e} weighted by its highway type, negative for
+     * types which aren't routable.
+     */
+    private int weight(int e)
+    {
+        final int w = dist_w16[e];
+        if (w != DIST_ESCAPE)
+            return w;
+        return wide_dist_w[Arrays.binarySearch(wide_edge, e)];
+    }
+    
+    
+    /**
+     * Lowest ratio of edge cost to straight-line length over all edges, computed
+     * at load time. The straight-line distance between two nodes times this
+     * ratio is a lower bound of the cost of every path between them, even with
+     * edge costs rounded to whole meters, see {@link path.search.AStar}.
+     * 
+     * @param weighted dist weighted by street type
+     * @return cost per meter, {@code 0 <= } ratio
+     */
+    public double getMinCostPerMeter(boolean weighted)
+    {
+        return cost_per_meter[weighted ? 1 : 0];
     }
     
     
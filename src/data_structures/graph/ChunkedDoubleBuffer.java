@@ -0,0 +1,117 @@
+package data_structures.graph;
+
+import java.nio.DoubleBuffer;
+
+
+
+/**
+ * See {@link #ChunkedDoubleBuffer(DoubleBuffer[], double[])}.
+ */
+public final class ChunkedDoubleBuffer
+{
+    /**
+     * Values per chunk, {@code 1 << SHIFT} (1 GiB).
+     */
+    static final int SHIFT = 27;
+    static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private final DoubleBuffer[] chunks;
+    // chunks[0], the only one of sections up to 1 GiB
+    private final DoubleBuffer   first;
+    private final int            size;
+    /**
+     * Array backing all chunks, {@code null} for mapped ones.
+     */
+    private final double[]       array;
+
+
+    /**
+     * Like {@link ChunkedIntBuffer}, for {@code double} values, e.g. the
+     * coordinates of more than 268M nodes.
+     *
+     * @param chunks buffers of {@code CHUNK} values each, the last one may be shorter
+     * @param array backing array of all chunks, {@code null} for mapped ones
+     */
+    ChunkedDoubleBuffer(DoubleBuffer[] chunks, double[] array)
+    {
+        int size = 0;
+        for (int k = 0; k < chunks.length; ++k) {
+            if (k < chunks.length - 1 && chunks[k].limit() != CHUNK) {
+                throw new RuntimeException("Chunk " + k + " has " + chunks[k].limit() + " values");
+            }
+            size += chunks[k].limit();
+        }
+        this.chunks = chunks;
+        first = chunks[0];
+        this.size = size;
+        this.array = array;
+    }
+
+
+    /**
+     * Use {@code a} without copying it.
+     */
+    public static ChunkedDoubleBuffer wrap(double[] a)
+    {
+        final DoubleBuffer[] chunks = new DoubleBuffer[Math.max(1, (int) ((a.length + (long) MASK) >> SHIFT))];
+        for (int k = 0; k < chunks.length; ++k) {
+            final int begin = k << SHIFT;
+            chunks[k] = DoubleBuffer.wrap(a, begin, Math.min(CHUNK, a.length - begin)).slice();
+        }
+        return new ChunkedDoubleBuffer(chunks, a);
+    }
+
+
+    /**
+     * @return value at index {@code i}
+     * @throws IndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public double get(int i)
+    {
+        return i < CHUNK ? first.get(i) : chunks[i >>> SHIFT].get(i & MASK);
+    }
+
+
+    /**
+     * Copy all values into {@code dst}, which must hold at least {@link #size()} values.
+     */
+    public void get(double[] dst)
+    {
+        for (int k = 0; k < chunks.length; ++k) {
+            final DoubleBuffer c = chunks[k].duplicate();
+            c.rewind();
+            c.get(dst, k << SHIFT, c.limit());
+        }
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return array backing the values, {@code null} when they are mapped
+     */
+    public double[] array()
+    {
+        return array;
+    }
+
+
+    /**
+     * @return independent views of all chunks in order, e.g. to write them
+     */
+    DoubleBuffer[] chunks()
+    {
+        final DoubleBuffer[] r = new DoubleBuffer[chunks.length];
+        for (int k = 0; k < r.length; ++k) {
+            r[k] = chunks[k].duplicate();
+            r[k].rewind();
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,121 @@
+package data_structures.graph;
+
+import java.nio.IntBuffer;
+
+
+
+/**
+ * See {@link #ChunkedIntBuffer(IntBuffer[], int[])}.
+ */
+public final class ChunkedIntBuffer
+{
+    /**
+     * Values per chunk, {@code 1 << SHIFT} (1 GiB).
+     */
+    static final int SHIFT = 28;
+    static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private final IntBuffer[] chunks;
+    // chunks[0], the only one of sections up to 1 GiB
+    private final IntBuffer   first;
+    private final int         size;
+    /**
+     * Array backing all chunks, {@code null} for mapped ones.
+     */
+    private final int[]       array;
+
+
+    /**
+     * Read-only {@code int} values addressed by an {@code int} index, held in
+     * several buffers of {@code CHUNK} values each (the last one may be shorter).<br>
+     * A mapped buffer can't exceed 2 GiB, but sections of large graphs do, e.g.
+     * the targets of more than 536M edges. {@link GraphFile#getChunkedInts(int, int)}
+     * therefore maps such sections in chunks. Smaller sections and arrays are a
+     * single chunk, {@link #get(int)} then merely adds a shift and a mask.
+     *
+     * @param chunks buffers of {@code CHUNK} values each, the last one may be shorter
+     * @param array backing array of all chunks, {@code null} for mapped ones
+     */
+    ChunkedIntBuffer(IntBuffer[] chunks, int[] array)
+    {
+        int size = 0;
+        for (int k = 0; k < chunks.length; ++k) {
+            if (k < chunks.length - 1 && chunks[k].limit() != CHUNK) {
+                throw new RuntimeException("Chunk " + k + " has " + chunks[k].limit() + " values");
+            }
+            size += chunks[k].limit();
+        }
+        this.chunks = chunks;
+        first = chunks[0];
+        this.size = size;
+        this.array = array;
+    }
+
+
+    /**
+     * Use {@code a} without copying it.
+     */
+    public static ChunkedIntBuffer wrap(int[] a)
+    {
+        final IntBuffer[] chunks = new IntBuffer[Math.max(1, (int) ((a.length + (long) MASK) >> SHIFT))];
+        for (int k = 0; k < chunks.length; ++k) {
+            final int begin = k << SHIFT;
+            chunks[k] = IntBuffer.wrap(a, begin, Math.min(CHUNK, a.length - begin)).slice();
+        }
+        return new ChunkedIntBuffer(chunks, a);
+    }
+
+
+    /**
+     * @return value at index {@code i}
+     * @throws IndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public int get(int i)
+    {
+        return i < CHUNK ? first.get(i) : chunks[i >>> SHIFT].get(i & MASK);
+    }
+
+
+    /**
+     * Copy all values into {@code dst}, which must hold at least {@link #size()} values.
+     */
+    public void get(int[] dst)
+    {
+        for (int k = 0; k < chunks.length; ++k) {
+            final IntBuffer c = chunks[k].duplicate();
+            c.rewind();
+            c.get(dst, k << SHIFT, c.limit());
+        }
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return array backing the values, {@code null} when they are mapped
+     */
+    public int[] array()
+    {
+        return array;
+    }
+
+
+    /**
+     * @return independent views of all chunks in order, e.g. to write them
+     */
+    IntBuffer[] chunks()
+    {
+        final IntBuffer[] r = new IntBuffer[chunks.length];
+        for (int k = 0; k < r.length; ++k) {
+            r[k] = chunks[k].duplicate();
+            r[k].rewind();
+        }
+        return r;
+    }
+
+}
@@ -22,8 +22,14 @@ public interface Graph {
     public int getNearestNNode(double lat, double lon);
     public int getNearestNode(GeoPosition pos);
     public int getNearestNNode(GeoPosition pos);
+    public int getNearestNode(double lat, double lon, boolean mainComponent);
+    public int getNearestNode(GeoPosition pos, boolean mainComponent);
     public LinkedList<Integer> getNodesInRange(double lat, double lon, int range);
     public LinkedList<Integer> getNNodesInRange(double lat, double lon, int range);
+    public int[] getNodesWithinRadius(double lat, double lon, double meters);
+    public int[] getNNodesWithinRadius(double lat, double lon, double meters);
+    public int[] getKNearestNodes(double lat, double lon, int k);
+    public int[] getKNearestNNodes(double lat, double lon, int k);
 
     // getters using implementation-internal IDs
     public int getIthEdgeDistFor(int n, int i);
@@ -39,9 +45,26 @@ public interface Graph {
     public GeoPosition getNPosition(int n);
     public String getName(int n);
 
+    // edges as index ranges, unchecked, see ArrayRepresentation.edgeBegin()
+    public int edgeBegin(int n);
+    public int edgeEnd(int n);
+    public int edgeTarget(int e);
+    public int edgeWeight(int e, boolean weighted);
+    public int edgeType(int e);
+    public int inEdgeBegin(int n);
+    public int inEdgeEnd(int n);
+    public int inEdgeSource(int r);
+    public int inEdgeForward(int r);
+
+    // connectivity, see StrongComponents
+    public int getComponent(int n);
+    public int getComponentSize(int c);
+    public boolean mayReach(int from, int to);
+
     // getters for graph (meta)data
     public double[] getBoundingRectLat();
     public double[] getBoundingRectLon();
+    public double getMinCostPerMeter(boolean weighted);
     public int size();
     public int sizeN();
 
@@ -0,0 +1,110 @@
+package data_structures.graph;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+
+
+/**
+ * See {@link #GraphChecksum(Graph, boolean)}.
+ */
+public final class GraphChecksum
+{
+    private final int  node_num;
+    private final int  edge_num;
+    private final long checksum;
+
+
+    /**
+     * Identify the edges of a graph and their costs in one metric, for data
+     * derived from them and stored in files of their own (e.g. contraction
+     * hierarchies or landmark tables). These refer to node and edge indices and
+     * silently yield wrong results when used with a graph that was changed,
+     * reordered or rebuilt with the same number of nodes.<br>
+     * Besides the number of nodes and edges a 64 bit FNV-1a hash over the CSR
+     * offsets, the edge targets and the edge costs is kept. It takes one pass
+     * over the edges, see {@link #read(GraphFile, int)} and
+     * {@link #addTo(GraphFileWriter, int)} to store it.
+     *
+     * @param g graph
+     * @param weighted metric of the costs
+     */
+    public GraphChecksum(Graph g, boolean weighted)
+    {
+        node_num = g.size();
+        edge_num = node_num > 0 ? g.edgeEnd(node_num - 1) : 0;
+
+        long h = 0xcbf29ce484222325L;
+        for (int n = 0; n < node_num; ++n) {
+            h = hash(h, g.edgeBegin(n));
+            for (int e = g.edgeBegin(n), end = g.edgeEnd(n); e < end; ++e) {
+                h = hash(h, g.edgeTarget(e));
+                h = hash(h, g.edgeWeight(e, weighted));
+            }
+        }
+        checksum = hash(h, edge_num);
+    }
+
+
+    private GraphChecksum(int node_num, int edge_num, long checksum)
+    {
+        this.node_num = node_num;
+        this.edge_num = edge_num;
+        this.checksum = checksum;
+    }
+
+
+    private static long hash(long h, int v)
+    {
+        return (h ^ v) * 0x100000001b3L;
+    }
+
+
+    /**
+     * Read a checksum stored as section {@code id} of {@code gf}.
+     *
+     * @return {@code null} when {@code gf} was written without it
+     */
+    public static GraphChecksum read(GraphFile gf, int id) throws InvalidGraphFormatException, IOException
+    {
+        if (!gf.hasSection(id)) {
+            return null;
+        }
+        final IntBuffer b = gf.getInts(id, 4);
+        return new GraphChecksum(b.get(0), b.get(1), ((long) b.get(2) << 32) | (b.get(3) & 0xFFFFFFFFL));
+    }
+
+
+    /**
+     * Add the checksum as section {@code id} to a file about to be written.
+     */
+    public GraphFileWriter addTo(GraphFileWriter w, int id)
+    {
+        return w.addSection(id, new int[] { node_num, edge_num, (int) (checksum >>> 32), (int) checksum });
+    }
+
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof GraphChecksum))
+            return false;
+        final GraphChecksum c = (GraphChecksum) o;
+        return node_num == c.node_num && edge_num == c.edge_num && checksum == c.checksum;
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return (int) checksum;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return node_num + " nodes, " + edge_num + " edges, checksum " + Long.toHexString(checksum);
+    }
+
+}
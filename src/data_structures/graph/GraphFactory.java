@@ -1,23 +1,108 @@
 package data_structures.graph;
 
+import java.io.File;
 import java.io.IOException;
 
 
 
 public final class GraphFactory
 {
+    /**
+     * Graph implementations {@link #load(String, int)} can choose from.<br>
+     * {@code REPRESENTATION_AUTO} picks {@link OffHeapRepresentation} for binary graph
+     * files of at least {@code OFF_HEAP_THRESHOLD} bytes, {@link ArrayRepresentation} otherwise.
+     */
+    public static final int REPRESENTATION_AUTO     = 0,
+                            REPRESENTATION_ARRAY    = 1,
+                            REPRESENTATION_OFF_HEAP = 2;
+
+    /**
+     * System property overriding the representation used by {@link #load(String)},
+     * one of {@code auto}, {@code array} or {@code offheap}.
+     */
+    public static final String REPRESENTATION_PROPERTY = "graph.representation";
+
+    public static final long OFF_HEAP_THRESHOLD = 1L << 30;
+
+
     private GraphFactory() {};
-    
 
+
+    /**
+     * Load a graph using the representation configured by the system property
+     * {@code REPRESENTATION_PROPERTY} (default {@code auto}).<br>
+     * See {@link #load(String, int)}.
+     */
     public static Graph load(String s) throws InvalidGraphFormatException, IOException
     {
-        return new ArrayRepresentation(s);
+        final String p = System.getProperty(REPRESENTATION_PROPERTY, "auto");
+
+        if (p.equalsIgnoreCase("array"))
+            return load(s, REPRESENTATION_ARRAY);
+        else if (p.equalsIgnoreCase("offheap"))
+            return load(s, REPRESENTATION_OFF_HEAP);
+        return load(s, REPRESENTATION_AUTO);
+    }
+
+
+    /**
+     * Load a graph in any supported format with the requested representation.<br>
+     * {@link OffHeapRepresentation} requires a binary graph file. Other formats
+     * are converted into a temporary file first, which is then mapped.
+     *
+     * @param s graph file
+     * @param representation one of the {@code REPRESENTATION_*} values
+     */
+    public static Graph load(String s, int representation) throws InvalidGraphFormatException, IOException
+    {
+        final boolean binary = GraphFile.detectFormat(s) == GraphFile.FORMAT_BINARY;
+
+        if (representation == REPRESENTATION_AUTO) {
+            representation = binary && new File(s).length() >= OFF_HEAP_THRESHOLD
+                                ? REPRESENTATION_OFF_HEAP : REPRESENTATION_ARRAY;
+        }
+
+        if (representation != REPRESENTATION_OFF_HEAP) {
+            return new ArrayRepresentation(s);
+        }
+
+        if (!binary) {
+            final File tmp = File.createTempFile("graph", ".bin");
+            tmp.deleteOnExit();
+            convert(s, tmp.getAbsolutePath());
+            s = tmp.getAbsolutePath();
+        }
+        return new OffHeapRepresentation(s);
     }
-    
-    
+
+
     public static ArrayRepresentation loadArrayRepresentation(String s) throws InvalidGraphFormatException, IOException
     {
         return new ArrayRepresentation(s);
     }
 
+
+    /**
+     * Load a graph in any supported format and write it out in the
+     * binary format, see {@link GraphFile#GraphFile(String) GraphFile}.
+     *
+     * @param in graph file
+     * @param out file location
+     */
+    public static void convert(String in, String out) throws InvalidGraphFormatException, IOException
+    {
+        new ArrayRepresentation(in).save(out);
+    }
+
+
+    /**
+     * See {@link #convert(String, String)}.
+     *
+     * @param fixed store the coordinates as fixed-point values, see {@link ArrayRepresentation#save(String, boolean)}
+     */
+    public static void convert(String in, String out, boolean fixed) throws InvalidGraphFormatException, IOException
+    {
+        new ArrayRepresentation(in).save(out, fixed);
+    }
+
 }
@@ -0,0 +1,497 @@
+package data_structures.graph;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import util.FixedPoint;
+
+
+
+/**
+ * See {@link #GraphFile(String)}.
+ */
+public final class GraphFile
+{
+    /**
+     * Formats recognized by {@link #detectFormat(String)}.
+     */
+    public static final int FORMAT_TEXT       = 0,
+                            FORMAT_SERIALIZED = 1,
+                            FORMAT_BINARY     = 2;
+
+    /**
+     * Current version of the binary format.
+     * Readers refuse files with a higher version, unknown sections are ignored.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Section IDs.
+     */
+    public static final int SECTION_LAT       = 1,
+                            SECTION_LON       = 2,
+                            SECTION_OFFSET    = 3,
+                            SECTION_TARGET    = 4,
+                            SECTION_DIST      = 5,
+                            SECTION_DIST_W    = 6,
+                            SECTION_NLAT      = 7,
+                            SECTION_NLON      = 8,
+                            SECTION_TOUR      = 9,
+                            SECTION_NAME_OFFS = 10,
+                            SECTION_NAME_DATA = 11,
+                            SECTION_SCC       = 12,
+                            SECTION_SCC_WEAK  = 13,
+                            SECTION_TYPE      = 14,
+                            SECTION_LAT_FIXED  = 15,
+                            SECTION_LON_FIXED  = 16,
+                            SECTION_NLAT_FIXED = 17,
+                            SECTION_NLON_FIXED = 18,
+                            SECTION_R_OFFSET   = 19,
+                            SECTION_R_SOURCE   = 20,
+                            SECTION_R_EDGE     = 21,
+                            SECTION_SCC_ORDER  = 22;
+
+    /**
+     * Highway type ({@code SECTION_TYPE}) of edges whose type is not known, e.g. those
+     * of files written without types, see {@code ArrayRepresentation.typesFromWeights()}.
+     * Their weighted distance is the one stored in {@code SECTION_DIST_W}.
+     */
+    public static final byte TYPE_UNKNOWN = -1;
+
+    static final byte[] MAGIC          = { 'P', 'M', 'G', 'R', 'A', 'P', 'H', 0 };
+    static final int    HEADER_SIZE    = 64;
+    static final int    SECTION_ENTRY  = 24;
+    static final int    ALIGNMENT      = 8;
+
+    private final int    version;
+    private final int    nodes;
+    private final int    edges;
+    private final int    tours;
+    private final double minLat, maxLat, minLon, maxLon;
+
+    private final int[]  section_id;
+    private final long[] section_offset;
+    private final long[] section_length;
+
+    private final FileChannel channel;
+
+
+    /**
+     * Open a graph file in the binary format written by {@link GraphFileWriter}
+     * and map its sections into memory on request.<br>
+     * Only the header and the section table are read here. Sections are
+     * mapped read-only using {@code FileChannel.map} by {@link #getSection(int)},
+     * the OS page cache therefore backs the data and shares it among
+     * processes mapping the same file.
+     * <br><br>
+     * File specification (all values little-endian):
+     * <pre>
+     * {@code
+     * offset  size  content
+     *  0       8    magic "PMGRAPH\0"
+     *  8       4    int    version
+     * 12       4    int    number of sections
+     * 16       4    int    number of nodes
+     * 20       4    int    number of edges
+     * 24       4    int    number of non-routable nodes
+     * 28       4    int    reserved
+     * 32      32    double minLat, maxLat, minLon, maxLon
+     * 64      24*k  section table
+     * }
+     * </pre>
+     * With
+     * <pre>
+     * section ::= int int long long      // id reserved offset length (in bytes)
+     * </pre>
+     * Every section starts at a multiple of 8 bytes. Its data is a plain array
+     * of the type given by the section ID (see {@code SECTION_*}), names are
+     * stored as UTF-8 blob plus {@code int} offsets into it.
+     * <br><br>
+     * Coordinates are stored either as {@code double}s ({@code SECTION_LAT} etc.) or
+     * as fixed-point {@code int}s ({@code SECTION_LAT_FIXED} etc., see {@link util.FixedPoint}),
+     * which halves their size. See {@link #hasFixedCoordinates()} and {@link #getCoordinates(int, int)}.
+     * <br><br>
+     * The incoming edges ({@code SECTION_R_*}) are optional and can be derived from the
+     * outgoing ones, see {@link ReverseAdjacency}.
+     * <br><br>
+     * A mapped buffer can't exceed 2 GiB. Sections of {@code int}s and {@code double}s,
+     * which grow with the number of nodes or edges, are therefore mapped in chunks of
+     * 1 GiB, see {@link #getChunkedInts(int, int)} and {@link #getChunkedDoubles(int, int)}.
+     *
+     * @param f graph file
+     * @throws InvalidGraphFormatException when {@code f} is not a (supported) binary graph file
+     * @throws IOException
+     */
+    public GraphFile(String f) throws InvalidGraphFormatException, IOException
+    {
+        channel = new RandomAccessFile(f, "r").getChannel();
+
+        try {
+            final ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(h, 0);
+
+            final byte[] magic = new byte[MAGIC.length];
+            h.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new InvalidGraphFormatException("Not a binary graph file");
+            }
+
+            version = h.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new InvalidGraphFormatException("Unsupported graph file version: " + version);
+            }
+
+            final int k = h.getInt();
+            nodes = h.getInt();
+            edges = h.getInt();
+            tours = h.getInt();
+            h.getInt();
+            minLat = h.getDouble();
+            maxLat = h.getDouble();
+            minLon = h.getDouble();
+            maxLon = h.getDouble();
+
+            if (k < 0 || nodes < 0 || edges < 0 || tours < 0) {
+                throw new InvalidGraphFormatException("Invalid binary graph header");
+            }
+
+            final ByteBuffer t = ByteBuffer.allocate(k * SECTION_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(t, HEADER_SIZE);
+
+            section_id     = new int[k];
+            section_offset = new long[k];
+            section_length = new long[k];
+            for (int i = 0; i < k; ++i) {
+                section_id[i]     = t.getInt();
+                t.getInt();
+                section_offset[i] = t.getLong();
+                section_length[i] = t.getLong();
+
+                if (section_offset[i] < 0 || section_length[i] < 0
+                        || section_offset[i] + section_length[i] > channel.size()) {
+                    throw new InvalidGraphFormatException("Section " + section_id[i] + " exceeds file size");
+                }
+            }
+        }
+        catch (InvalidGraphFormatException | IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    private void readFully(ByteBuffer b, long pos) throws IOException, InvalidGraphFormatException
+    {
+        while (b.hasRemaining()) {
+            final int r = channel.read(b, pos);
+            if (r < 0) {
+                throw new InvalidGraphFormatException("Truncated binary graph file");
+            }
+            pos += r;
+        }
+        b.flip();
+    }
+
+
+    /**
+     * Peek at the first bytes of {@code f} to determine its format.
+     *
+     * @param f graph file
+     * @return one of {@code FORMAT_TEXT}, {@code FORMAT_SERIALIZED} or {@code FORMAT_BINARY}
+     * @throws IOException
+     */
+    public static int detectFormat(String f) throws IOException
+    {
+        final byte[] b = new byte[MAGIC.length];
+        int n = 0;
+
+        try (FileInputStream in = new FileInputStream(f)) {
+            int r;
+            while (n < b.length && (r = in.read(b, n, b.length - n)) > 0) {
+                n += r;
+            }
+        }
+
+        if (n == b.length && Arrays.equals(b, MAGIC)) {
+            return FORMAT_BINARY;
+        }
+        // java.io.ObjectStreamConstants.STREAM_MAGIC
+        if (n >= 2 && (b[0] & 0xFF) == 0xAC && (b[1] & 0xFF) == 0xED) {
+            return FORMAT_SERIALIZED;
+        }
+        return FORMAT_TEXT;
+    }
+
+
+    /**
+     * Close the underlying file.<br>
+     * Sections mapped before stay valid until they are garbage collected.
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+
+    public boolean hasSection(int id)
+    {
+        return indexOf(id) > -1;
+    }
+
+
+    private int indexOf(int id)
+    {
+        for (int i = 0; i < section_id.length; ++i) {
+            if (section_id[i] == id)
+                return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Map the section {@code id} read-only into memory.
+     *
+     * @param id section ID
+     * @return little-endian buffer spanning the whole section
+     * @throws InvalidGraphFormatException when there's no such section or it exceeds 2 GiB
+     *         (use {@link #getChunkedInts(int, int)} etc. for those)
+     * @throws IOException
+     */
+    public ByteBuffer getSection(int id) throws InvalidGraphFormatException, IOException
+    {
+        final int i = section(id);
+        if (section_length[i] > Integer.MAX_VALUE) {
+            throw new InvalidGraphFormatException("Section " + id + " exceeds 2 GiB and can only be mapped in chunks");
+        }
+        return map(section_offset[i], section_length[i]);
+    }
+
+
+    /**
+     * @return index of section {@code id} in the section table
+     * @throws InvalidGraphFormatException when there's no such section
+     */
+    private int section(int id) throws InvalidGraphFormatException
+    {
+        final int i = indexOf(id);
+        if (i < 0) {
+            throw new InvalidGraphFormatException("Missing section " + id);
+        }
+        return i;
+    }
+
+
+    private ByteBuffer map(long pos, long length) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, pos, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    /**
+     * Map section {@code id} as consecutive buffers of {@code chunk} bytes each,
+     * the last one may be shorter.
+     *
+     * @param bytes expected size of the section
+     * @throws InvalidGraphFormatException when there's no such section or it has a different size
+     */
+    private ByteBuffer[] mapChunks(int id, long bytes, long chunk) throws InvalidGraphFormatException, IOException
+    {
+        final int i = section(id);
+        if (section_length[i] != bytes) {
+            throw new InvalidGraphFormatException("Section " + id + " has unexpected size");
+        }
+
+        final ByteBuffer[] r = new ByteBuffer[(int) Math.max(1, (bytes + chunk - 1) / chunk)];
+        for (int k = 0; k < r.length; ++k) {
+            r[k] = map(section_offset[i] + k * chunk, Math.min(chunk, bytes - k * chunk));
+        }
+        return r;
+    }
+
+
+    /**
+     * @return are the coordinates stored as fixed-point {@code int}s?
+     */
+    public boolean hasFixedCoordinates()
+    {
+        return hasSection(SECTION_LAT_FIXED);
+    }
+
+
+    /**
+     * Read {@code count} coordinates in decimal degrees, converted from the
+     * fixed-point section when the file stores them so.
+     *
+     * @param id one of {@code SECTION_LAT}, {@code SECTION_LON}, {@code SECTION_NLAT}
+     *        or {@code SECTION_NLON}
+     * @return new array of size {@code count}
+     */
+    public double[] getCoordinates(int id, int count) throws InvalidGraphFormatException, IOException
+    {
+        final double[] r = new double[count];
+        if (hasSection(id)) {
+            getChunkedDoubles(id, count).get(r);
+            return r;
+        }
+
+        final ChunkedIntBuffer b = getChunkedInts(fixedSection(id), count);
+        for (int i = 0; i < count; ++i) {
+            r[i] = FixedPoint.toDegrees(b.get(i));
+        }
+        return r;
+    }
+
+
+    /**
+     * @return ID of the fixed-point section corresponding to coordinate section {@code id}
+     * @throws RuntimeException when {@code id} isn't a coordinate section
+     */
+    private static int fixedSection(int id)
+    {
+        switch (id) {
+            case SECTION_LAT:  return SECTION_LAT_FIXED;
+            case SECTION_LON:  return SECTION_LON_FIXED;
+            case SECTION_NLAT: return SECTION_NLAT_FIXED;
+            case SECTION_NLON: return SECTION_NLON_FIXED;
+            default:
+                throw new RuntimeException("Not a coordinate section: " + id);
+        }
+    }
+
+
+    /**
+     * Map section {@code id} and check it holds exactly {@code count} doubles.
+     */
+    public DoubleBuffer getDoubles(int id, int count) throws InvalidGraphFormatException, IOException
+    {
+        final ByteBuffer b = getSection(id);
+        if (b.capacity() != (long) count * Double.BYTES) {
+            throw new InvalidGraphFormatException("Section " + id + " has unexpected size");
+        }
+        return b.asDoubleBuffer();
+    }
+
+
+    /**
+     * Map section {@code id} and check it holds exactly {@code count} ints.
+     */
+    public IntBuffer getInts(int id, int count) throws InvalidGraphFormatException, IOException
+    {
+        final ByteBuffer b = getSection(id);
+        if (b.capacity() != (long) count * Integer.BYTES) {
+            throw new InvalidGraphFormatException("Section " + id + " has unexpected size");
+        }
+        return b.asIntBuffer();
+    }
+
+
+    /**
+     * Map section {@code id} in chunks of {@code ChunkedIntBuffer.CHUNK} values
+     * and check it holds exactly {@code count} ints. Unlike {@link #getInts(int, int)}
+     * the section may exceed 2 GiB.
+     */
+    public ChunkedIntBuffer getChunkedInts(int id, int count) throws InvalidGraphFormatException, IOException
+    {
+        final ByteBuffer[] b = mapChunks(id, (long) count * Integer.BYTES, (long) ChunkedIntBuffer.CHUNK * Integer.BYTES);
+        final IntBuffer[] chunks = new IntBuffer[b.length];
+        for (int k = 0; k < b.length; ++k) {
+            chunks[k] = b[k].asIntBuffer();
+        }
+        return new ChunkedIntBuffer(chunks, null);
+    }
+
+
+    /**
+     * Map section {@code id} in chunks of {@code ChunkedDoubleBuffer.CHUNK} values
+     * and check it holds exactly {@code count} doubles. Unlike {@link #getDoubles(int, int)}
+     * the section may exceed 2 GiB.
+     */
+    public ChunkedDoubleBuffer getChunkedDoubles(int id, int count) throws InvalidGraphFormatException, IOException
+    {
+        final ByteBuffer[] b = mapChunks(id, (long) count * Double.BYTES, (long) ChunkedDoubleBuffer.CHUNK * Double.BYTES);
+        final DoubleBuffer[] chunks = new DoubleBuffer[b.length];
+        for (int k = 0; k < b.length; ++k) {
+            chunks[k] = b[k].asDoubleBuffer();
+        }
+        return new ChunkedDoubleBuffer(chunks, null);
+    }
+
+
+    /**
+     * Map section {@code id} and check it holds exactly {@code count} shorts.
+     */
+    public ShortBuffer getShorts(int id, int count) throws InvalidGraphFormatException, IOException
+    {
+        final ByteBuffer b = getSection(id);
+        if (b.capacity() != (long) count * Short.BYTES) {
+            throw new InvalidGraphFormatException("Section " + id + " has unexpected size");
+        }
+        return b.asShortBuffer();
+    }
+
+
+    /**
+     * Map section {@code id} and check it holds exactly {@code count} bytes.
+     */
+    public ByteBuffer getBytes(int id, int count) throws InvalidGraphFormatException, IOException
+    {
+        final ByteBuffer b = getSection(id);
+        if (b.capacity() != count) {
+            throw new InvalidGraphFormatException("Section " + id + " has unexpected size");
+        }
+        return b;
+    }
+
+
+    /**
+     * Decode the names of all non-routable nodes.
+     *
+     * @return array of size {@link #getTourismNodeCount()}, empty names are {@code null}
+     */
+    public String[] getNames() throws InvalidGraphFormatException, IOException
+    {
+        final IntBuffer offs = getInts(SECTION_NAME_OFFS, tours + 1);
+        final ByteBuffer data = getSection(SECTION_NAME_DATA);
+        final String[] r = new String[tours];
+
+        byte[] tmp = new byte[64];
+        for (int i = 0; i < tours; ++i) {
+            final int s = offs.get(i);
+            final int e = offs.get(i + 1);
+            if (s < 0 || e < s || e > data.capacity()) {
+                throw new InvalidGraphFormatException("Invalid name offsets");
+            }
+            if (e == s) {
+                continue;
+            }
+            if (tmp.length < e - s) {
+                tmp = new byte[e - s];
+            }
+            data.position(s);
+            data.get(tmp, 0, e - s);
+            r[i] = new String(tmp, 0, e - s, StandardCharsets.UTF_8);
+        }
+        return r;
+    }
+
+
+    public int getVersion()            { return version; }
+    public int getNodeCount()          { return nodes; }
+    public int getEdgeCount()          { return edges; }
+    public int getTourismNodeCount()   { return tours; }
+    public double getMinLat()          { return minLat; }
+    public double getMaxLat()          { return maxLat; }
+    public double getMinLon()          { return minLon; }
+    public double getMaxLon()          { return maxLon; }
+
+}
@@ -0,0 +1,319 @@
+package data_structures.graph;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+
+
+/**
+ * See {@link #GraphFileWriter(String, int, int, int, double, double, double, double)}.
+ */
+public final class GraphFileWriter
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String file;
+    private final int    nodes, edges, tours;
+    private final double minLat, maxLat, minLon, maxLon;
+
+    private final ArrayList<Integer> ids  = new ArrayList<Integer>();
+    private final ArrayList<Object>  data = new ArrayList<Object>();
+
+
+    /**
+     * Collects sections and writes them as a binary graph file on
+     * {@link #close()}. See {@link GraphFile#GraphFile(String) GraphFile}
+     * for the file specification.<br>
+     * Added arrays and buffers are referenced, not copied, and must not be
+     * modified before the file was written.
+     *
+     * @param f file location
+     */
+    public GraphFileWriter(String f, int nodes, int edges, int tours,
+                           double minLat, double maxLat, double minLon, double maxLon)
+    {
+        file = f;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.tours = tours;
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLon = minLon;
+        this.maxLon = maxLon;
+    }
+
+
+    public GraphFileWriter addSection(int id, double[] a)
+    {
+        return add(id, a);
+    }
+
+
+    public GraphFileWriter addSection(int id, int[] a)
+    {
+        return add(id, a);
+    }
+
+
+    public GraphFileWriter addSection(int id, byte[] a)
+    {
+        return add(id, a);
+    }
+
+
+    /**
+     * Add the remaining content of {@code b}, e.g. a mapped section of another graph file.
+     */
+    public GraphFileWriter addSection(int id, DoubleBuffer b)
+    {
+        return add(id, b.duplicate());
+    }
+
+
+    /**
+     * Add the remaining content of {@code b}, e.g. a mapped section of another graph file.
+     */
+    public GraphFileWriter addSection(int id, IntBuffer b)
+    {
+        return add(id, b.duplicate());
+    }
+
+
+    /**
+     * Add all values of {@code b}, e.g. a section of another graph file mapped in chunks.
+     */
+    public GraphFileWriter addSection(int id, ChunkedDoubleBuffer b)
+    {
+        return add(id, b.chunks());
+    }
+
+
+    /**
+     * Add all values of {@code b}, e.g. a section of another graph file mapped in chunks.
+     */
+    public GraphFileWriter addSection(int id, ChunkedIntBuffer b)
+    {
+        return add(id, b.chunks());
+    }
+
+
+    /**
+     * Add the remaining content of {@code b}, e.g. a mapped section of another graph file.
+     */
+    public GraphFileWriter addSection(int id, ShortBuffer b)
+    {
+        return add(id, b.duplicate());
+    }
+
+
+    /**
+     * Add the remaining content of {@code b}, which has to be little-endian already.
+     */
+    public GraphFileWriter addSection(int id, ByteBuffer b)
+    {
+        return add(id, b.duplicate());
+    }
+
+
+    /**
+     * Add {@code name} as {@code SECTION_NAME_OFFS} and {@code SECTION_NAME_DATA}.
+     * {@code null} is stored as empty name.
+     */
+    public GraphFileWriter addNames(String[] name)
+    {
+        final byte[][] enc = new byte[name.length][];
+        final int[] offs = new int[name.length + 1];
+        for (int i = 0; i < name.length; ++i) {
+            enc[i] = name[i] == null ? new byte[0] : name[i].getBytes(StandardCharsets.UTF_8);
+            offs[i + 1] = offs[i] + enc[i].length;
+        }
+
+        final byte[] blob = new byte[offs[name.length]];
+        for (int i = 0; i < name.length; ++i) {
+            System.arraycopy(enc[i], 0, blob, offs[i], enc[i].length);
+        }
+
+        add(GraphFile.SECTION_NAME_OFFS, offs);
+        return add(GraphFile.SECTION_NAME_DATA, blob);
+    }
+
+
+    private GraphFileWriter add(int id, Object o)
+    {
+        if (ids.contains(id)) {
+            throw new RuntimeException("Duplicate section " + id);
+        }
+        ids.add(id);
+        data.add(o);
+        return this;
+    }
+
+
+    private static long byteLength(Object o)
+    {
+        // chunks of a section
+        if (o instanceof Object[]) {
+            long r = 0;
+            for (Object c : (Object[]) o)
+                r += byteLength(c);
+            return r;
+        }
+        if (o instanceof double[])
+            return ((double[]) o).length * (long) Double.BYTES;
+        if (o instanceof int[])
+            return ((int[]) o).length * (long) Integer.BYTES;
+        if (o instanceof byte[])
+            return ((byte[]) o).length;
+        if (o instanceof DoubleBuffer)
+            return ((DoubleBuffer) o).remaining() * (long) Double.BYTES;
+        if (o instanceof IntBuffer)
+            return ((IntBuffer) o).remaining() * (long) Integer.BYTES;
+        if (o instanceof ShortBuffer)
+            return ((ShortBuffer) o).remaining() * (long) Short.BYTES;
+        return ((ByteBuffer) o).remaining();
+    }
+
+
+    private static long align(long pos)
+    {
+        return (pos + GraphFile.ALIGNMENT - 1) / GraphFile.ALIGNMENT * GraphFile.ALIGNMENT;
+    }
+
+
+    /**
+     * Write the file.
+     */
+    public void close() throws IOException
+    {
+        final int k = ids.size();
+        final long[] offset = new long[k];
+        final long[] length = new long[k];
+
+        long pos = align(GraphFile.HEADER_SIZE + k * GraphFile.SECTION_ENTRY);
+        for (int i = 0; i < k; ++i) {
+            offset[i] = pos;
+            length[i] = byteLength(data.get(i));
+            pos = align(pos + length[i]);
+        }
+
+        try (FileChannel ch = new FileOutputStream(file).getChannel()) {
+            final ByteBuffer b = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            b.put(GraphFile.MAGIC);
+            b.putInt(GraphFile.VERSION);
+            b.putInt(k);
+            b.putInt(nodes);
+            b.putInt(edges);
+            b.putInt(tours);
+            b.putInt(0);
+            b.putDouble(minLat);
+            b.putDouble(maxLat);
+            b.putDouble(minLon);
+            b.putDouble(maxLon);
+            for (int i = 0; i < k; ++i) {
+                if (b.remaining() < GraphFile.SECTION_ENTRY) {
+                    drain(ch, b);
+                }
+                b.putInt(ids.get(i));
+                b.putInt(0);
+                b.putLong(offset[i]);
+                b.putLong(length[i]);
+            }
+
+            long written = GraphFile.HEADER_SIZE + k * GraphFile.SECTION_ENTRY;
+            for (int i = 0; i < k; ++i) {
+                for (; written < offset[i]; ++written) {
+                    if (!b.hasRemaining())
+                        drain(ch, b);
+                    b.put((byte) 0);
+                }
+                writeSection(ch, b, data.get(i));
+                written += length[i];
+            }
+            drain(ch, b);
+        }
+    }
+
+
+    private static void writeSection(FileChannel ch, ByteBuffer b, Object o) throws IOException
+    {
+        if (o instanceof Object[]) {
+            for (Object c : (Object[]) o)
+                writeSection(ch, b, c);
+        }
+        else if (o instanceof double[]) {
+            for (double d : (double[]) o) {
+                if (b.remaining() < Double.BYTES)
+                    drain(ch, b);
+                b.putDouble(d);
+            }
+        }
+        else if (o instanceof int[]) {
+            for (int i : (int[]) o) {
+                if (b.remaining() < Integer.BYTES)
+                    drain(ch, b);
+                b.putInt(i);
+            }
+        }
+        else if (o instanceof byte[]) {
+            final byte[] a = (byte[]) o;
+            for (int i = 0; i < a.length; ) {
+                if (!b.hasRemaining())
+                    drain(ch, b);
+                final int n = Math.min(b.remaining(), a.length - i);
+                b.put(a, i, n);
+                i += n;
+            }
+        }
+        else if (o instanceof DoubleBuffer) {
+            final DoubleBuffer src = (DoubleBuffer) o;
+            while (src.hasRemaining()) {
+                if (b.remaining() < Double.BYTES)
+                    drain(ch, b);
+                b.putDouble(src.get());
+            }
+        }
+        else if (o instanceof IntBuffer) {
+            final IntBuffer src = (IntBuffer) o;
+            while (src.hasRemaining()) {
+                if (b.remaining() < Integer.BYTES)
+                    drain(ch, b);
+                b.putInt(src.get());
+            }
+        }
+        else if (o instanceof ShortBuffer) {
+            final ShortBuffer src = (ShortBuffer) o;
+            while (src.hasRemaining()) {
+                if (b.remaining() < Short.BYTES)
+                    drain(ch, b);
+                b.putShort(src.get());
+            }
+        }
+        else {
+            drain(ch, b);
+            final ByteBuffer src = (ByteBuffer) o;
+            while (src.hasRemaining()) {
+                ch.write(src);
+            }
+        }
+    }
+
+
+    private static void drain(FileChannel ch, ByteBuffer b) throws IOException
+    {
+        b.flip();
+        while (b.hasRemaining()) {
+            ch.write(b);
+        }
+        b.clear();
+    }
+
+}
@@ -11,6 +11,11 @@ public class GraphMain
     @SuppressWarnings("unused")
     public static void main(String[] args) throws InvalidGraphFormatException, IOException
     {
+        if (args.length == 2 || args.length == 3) {
+            GraphFactory.convert(args[0], args[1], args.length == 3 && args[2].equals("fixed"));
+            return;
+        }
+        
         System.in.read();
         StopWatch sw = new StopWatch().lap();
         ArrayRepresentation g = GraphFactory.loadArrayRepresentation("graph");
@@ -0,0 +1,579 @@
+package data_structures.graph;
+
+import gui.MainWindow;
+import gui.overlay.OverlayAggregate;
+import gui.overlay.OverlayElement;
+import gui.overlay.OverlayLabel;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import util.FixedPoint;
+import data_structures.grid.InvalidCoordinateArraysException;
+import data_structures.grid.LookupGrid;
+
+
+
+/**
+ * See {@link #OffHeapRepresentation(String) OffHeapRepresentation}.
+ */
+final public class OffHeapRepresentation implements Graph
+{
+    /*
+     * Routable nodes info, mapped from the graph file
+     */
+    private final ChunkedDoubleBuffer lat;
+    private final ChunkedDoubleBuffer lon;
+    // instead of lat/lon for files storing fixed-point coordinates
+    private final ChunkedIntBuffer lat_fixed;
+    private final ChunkedIntBuffer lon_fixed;
+    private final ChunkedIntBuffer target;
+    private final ChunkedIntBuffer offset;
+    private final ChunkedIntBuffer dist;
+    private final ChunkedIntBuffer dist_w;
+    // highway type per edge, null for files written without it
+    private final ByteBuffer   type;
+    // speed factors to recover the type of such files, see edgeType(int)
+    private final double[]     types = ArrayRepresentation.speedFactors();
+    private final int          node_num;
+    private final int          edge_num;
+
+    /*
+     * Reverse adjacency (incoming edges), mapped from the graph file or built
+     * on first use on the heap for files written without it, see reverse().
+     */
+    private volatile ReverseAdjacency reverse;
+
+    /*
+     * Strongly connected components, mapped from the graph file
+     * or computed at load time for files written without them.
+     */
+    private final StrongComponents scc;
+
+    // see ArrayRepresentation.getMinCostPerMeter(boolean)
+    private final double[] cost_per_meter;
+
+    /*
+     * Non-routable nodes info (tourism nodes)
+     * These are few, see ArrayRepresentation, and are kept on the heap.
+     */
+    private final double nlat[];
+    private final double nlon[];
+    private final byte   tour[];
+    private final String name[];
+
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+
+    private LookupGrid grid = null;
+    private LookupGrid ngrid = null;
+    // nodes of the main component only, the same as grid when there's a single component
+    private LookupGrid mgrid = null;
+
+
+    /**
+     * Map a graph file in the binary format (see {@link GraphFile#GraphFile(String) GraphFile})
+     * and access it without copying it onto the Java heap.<br>
+     * Coordinates (as {@code double}s or fixed-point {@code int}s, whichever the file stores),
+     * the CSR offsets, all edge arrays and the incoming edges stay in the mapped file,
+     * i.e. they are backed by the OS page cache instead of the heap. This neither pressures
+     * the GC nor requires a heap sized for the whole graph, and several processes mapping
+     * the same file share its pages. Only the lookup grid and the (few) non-routable
+     * nodes are held on the heap. Files written without incoming edges (see
+     * {@link ReverseAdjacency}) get them built on the heap once a backward search
+     * needs them, saving such a graph again stores them.<br>
+     * Sections exceeding 2 GiB, i.e. of graphs with more than 268M nodes or 536M
+     * edges, are mapped in chunks, see {@link ChunkedIntBuffer}.
+     * <br><br>
+     * Other graph formats have to be converted first, see
+     * {@link GraphFactory#convert(String, String)}.
+     * <br><br>
+     * Just like {@link ArrayRepresentation} this class is effectively final and
+     * getters get by without locking, except for building the incoming edges.
+     *
+     * @param f binary graph file
+     * @throws InvalidGraphFormatException
+     * @throws IOException
+     */
+    public OffHeapRepresentation(String f) throws InvalidGraphFormatException, IOException
+    {
+        final GraphFile gf = new GraphFile(f);
+        try {
+            node_num = gf.getNodeCount();
+            edge_num = gf.getEdgeCount();
+            final int tour_num = gf.getTourismNodeCount();
+
+            final boolean fixed = gf.hasFixedCoordinates();
+            lat    = fixed ? null : gf.getChunkedDoubles(GraphFile.SECTION_LAT, node_num);
+            lon    = fixed ? null : gf.getChunkedDoubles(GraphFile.SECTION_LON, node_num);
+            lat_fixed = fixed ? gf.getChunkedInts(GraphFile.SECTION_LAT_FIXED, node_num) : null;
+            lon_fixed = fixed ? gf.getChunkedInts(GraphFile.SECTION_LON_FIXED, node_num) : null;
+            offset = gf.getChunkedInts(GraphFile.SECTION_OFFSET, node_num + 1);
+            target = gf.getChunkedInts(GraphFile.SECTION_TARGET, edge_num);
+            dist   = gf.getChunkedInts(GraphFile.SECTION_DIST,   edge_num);
+            dist_w = gf.getChunkedInts(GraphFile.SECTION_DIST_W, edge_num);
+            type   = gf.hasSection(GraphFile.SECTION_TYPE) ? gf.getBytes(GraphFile.SECTION_TYPE, edge_num) : null;
+
+            if (offset.get(0) != 0 || offset.get(node_num) != edge_num) {
+                throw new InvalidGraphFormatException("Invalid offset section");
+            }
+
+            nlat = gf.getCoordinates(GraphFile.SECTION_NLAT, tour_num);
+            nlon = gf.getCoordinates(GraphFile.SECTION_NLON, tour_num);
+            tour = new byte[tour_num];
+            gf.getBytes(GraphFile.SECTION_TOUR,   tour_num).get(tour);
+            name = gf.getNames();
+
+            minLat = gf.getMinLat();
+            maxLat = gf.getMaxLat();
+            minLon = gf.getMinLon();
+            maxLon = gf.getMaxLon();
+
+            final StrongComponents c = StrongComponents.read(gf, false);
+            scc = c != null ? c : new StrongComponents(node_num, offset, target);
+            reverse = ReverseAdjacency.read(gf);
+        }
+        finally {
+            gf.close();
+        }
+
+        System.out.println("Mapped binary graph off-heap");
+
+        cost_per_meter = ArrayRepresentation.minCostPerMeter(this);
+
+        try {
+            if (lat != null) {
+                grid = new LookupGrid(lat, lon, minLat, maxLat, minLon, maxLon);
+                mgrid = scc.getComponentSize(0) == size() ? grid
+                            : new LookupGrid(lat, lon, scc.getNodes(0), minLat, maxLat, minLon, maxLon);
+            }
+            else {
+                grid = new LookupGrid(lat_fixed, lon_fixed, null, minLat, maxLat, minLon, maxLon);
+                mgrid = scc.getComponentSize(0) == size() ? grid
+                            : new LookupGrid(lat_fixed, lon_fixed, scc.getNodes(0), minLat, maxLat, minLon, maxLon);
+            }
+            ngrid = new LookupGrid(nlat, nlon);
+        }
+        catch (InvalidCoordinateArraysException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Write the mapped sections into a new binary graph file without copying them onto the heap.
+     * Highway types of files written without them are recovered from the weighted
+     * distances where that's unambiguous, like {@link ArrayRepresentation} does.
+     *
+     * @param f file location
+     */
+    public void save(String f) throws IOException
+    {
+        final ByteBuffer types = type != null ? type
+                                 : ByteBuffer.wrap(ArrayRepresentation.typesFromWeights(dist, dist_w));
+
+        final GraphFileWriter w = new GraphFileWriter(f, node_num, edge_num, nlat.length, minLat, maxLat, minLon, maxLon);
+        if (lat != null) {
+            w.addSection(GraphFile.SECTION_LAT,  lat)
+             .addSection(GraphFile.SECTION_LON,  lon)
+             .addSection(GraphFile.SECTION_NLAT, nlat)
+             .addSection(GraphFile.SECTION_NLON, nlon);
+        }
+        else {
+            w.addSection(GraphFile.SECTION_LAT_FIXED,  lat_fixed)
+             .addSection(GraphFile.SECTION_LON_FIXED,  lon_fixed)
+             .addSection(GraphFile.SECTION_NLAT_FIXED, FixedPoint.toFixed(nlat))
+             .addSection(GraphFile.SECTION_NLON_FIXED, FixedPoint.toFixed(nlon));
+        }
+        
+        scc.addTo(w)
+            .addSection(GraphFile.SECTION_OFFSET, offset)
+            .addSection(GraphFile.SECTION_TARGET, target)
+            .addSection(GraphFile.SECTION_DIST,   dist)
+            .addSection(GraphFile.SECTION_DIST_W, dist_w)
+            .addSection(GraphFile.SECTION_TYPE,   types)
+            .addSection(GraphFile.SECTION_TOUR,   tour)
+            .addNames(name);
+        reverse().addTo(w)
+            .close();
+    }
+
+
+    /**
+     * See {@code ArrayRepresentation.reverse()}.
+     */
+    private ReverseAdjacency reverse()
+    {
+        ReverseAdjacency r = reverse;
+        if (r == null) {
+            synchronized (this) {
+                r = reverse;
+                if (r == null) {
+                    r = new ReverseAdjacency(node_num, offset, target);
+                    reverse = r;
+                }
+            }
+        }
+        return r;
+    }
+
+
+    public int getNearestNode(double lat, double lon)
+    {
+        return getNearestNode(grid, lat, lon);
+    }
+
+
+    public int getNearestNNode(double lat, double lon)
+    {
+        return getNearestNode(ngrid, lat, lon);
+    }
+
+
+    public int getNearestNode(GeoPosition pos)
+    {
+        return getNearestNode(grid, pos.getLatitude(), pos.getLongitude());
+    }
+
+
+    public int getNearestNNode(GeoPosition pos)
+    {
+        return getNearestNode(ngrid, pos.getLatitude(), pos.getLongitude());
+    }
+
+
+    public int getNearestNode(double lat, double lon, boolean mainComponent)
+    {
+        return getNearestNode(mainComponent ? mgrid : grid, lat, lon);
+    }
+
+
+    public int getNearestNode(GeoPosition pos, boolean mainComponent)
+    {
+        return getNearestNode(pos.getLatitude(), pos.getLongitude(), mainComponent);
+    }
+
+
+    private int getNearestNode(LookupGrid lg, double lat, double lon)
+    {
+        if (lg != null) {
+            return lg.getNearestNode(lat, lon);
+        }
+        System.err.println("error: no lookup grid");
+        return -1;
+    }
+
+
+    private static LinkedList<Integer> toList(int[] a)
+    {
+        final LinkedList<Integer> r = new LinkedList<Integer>();
+        for (int i : a)
+            r.add(i);
+        return r;
+    }
+
+
+    public LinkedList<Integer> getNodesInRange(double lat, double lon, int range)
+    {
+        return toList(getNodesWithinRadius(lat, lon, range));
+    }
+
+
+    public LinkedList<Integer> getNNodesInRange(double lat, double lon, int range)
+    {
+        return toList(getNNodesWithinRadius(lat, lon, range));
+    }
+
+
+    /**
+     * Get all routable nodes closer than {@code meters} to {@code (lat, lon)},
+     * see {@link LookupGrid#withinRadius(double, double, double)}.
+     * 
+     * @return node IDs in no particular order
+     */
+    public int[] getNodesWithinRadius(double lat, double lon, double meters)
+    {
+        return grid != null ? grid.withinRadius(lat, lon, meters) : new int[0];
+    }
+
+
+    /**
+     * Non-routable version of {@link #getNodesWithinRadius(double, double, double)}.
+     */
+    public int[] getNNodesWithinRadius(double lat, double lon, double meters)
+    {
+        return ngrid != null ? ngrid.withinRadius(lat, lon, meters) : new int[0];
+    }
+
+
+    /**
+     * Get the {@code k} routable nodes closest to {@code (lat, lon)},
+     * see {@link LookupGrid#kNearest(double, double, int)}.
+     * 
+     * @return node IDs ordered by increasing distance
+     */
+    public int[] getKNearestNodes(double lat, double lon, int k)
+    {
+        return grid != null ? grid.kNearest(lat, lon, k) : new int[0];
+    }
+
+
+    /**
+     * Non-routable version of {@link #getKNearestNodes(double, double, int)}.
+     */
+    public int[] getKNearestNNodes(double lat, double lon, int k)
+    {
+        return ngrid != null ? ngrid.kNearest(lat, lon, k) : new int[0];
+    }
+
+
+    public void drawRoutableNodes(MainWindow win)
+    {
+        Color[] c = {Color.BLACK, Color.DARK_GRAY, Color.GRAY, Color.LIGHT_GRAY, Color.WHITE};
+        OverlayAggregate oa = new OverlayAggregate();
+
+        for (int i = 0; i < node_num; ++i) {
+            GeoPosition g = getPosition(i);
+            oa.addPoint(new OverlayElement(g, c[i % c.length], 7));
+        }
+        win.addPersistentOverlay(oa);
+    }
+
+
+    public void drawNonRoutableNodes(MainWindow win)
+    {
+        Color[] c = {Color.RED};
+        OverlayAggregate oa = new OverlayAggregate();
+
+        for (int i = 0; i < nlat.length; ++i) {
+            GeoPosition g = new GeoPosition(nlat[i], nlon[i]);
+            oa.addPoint(new OverlayElement(g, c[i % c.length], 7)).addLabel(new OverlayLabel(name[i], g));
+        }
+
+        win.addPersistentOverlay(oa);
+    }
+
+
+    private void checkNode(int n)
+    {
+        if (n < 0 || n >= node_num) {
+            throw new RuntimeException("Bad Node ID: " + n + " (offset.length = " + node_num + ")");
+        }
+    }
+
+
+    public int[] getNeighbors(int n)
+    {
+        checkNode(n);
+
+        final int o = offset.get(n);
+        int[] r = new int[offset.get(n+1) - o];
+        for (int i = 0; i < r.length; ++i) {
+            r[i] = target.get(o + i);
+        }
+        return r;
+    }
+
+
+    public int getIthNeighbor(int n, int i)
+    {
+        checkNode(n);
+
+        final int e = offset.get(n) + i;
+        if (e < offset.get(n+1))
+            return target.get(e);
+        return -1;
+    }
+
+
+    public int edgeBegin(int n)
+    {
+        return offset.get(n);
+    }
+
+
+    public int edgeEnd(int n)
+    {
+        return offset.get(n+1);
+    }
+
+
+    public int edgeTarget(int e)
+    {
+        return target.get(e);
+    }
+
+
+    public int edgeWeight(int e, boolean weighted)
+    {
+        return weighted ? dist_w.get(e) : dist.get(e);
+    }
+
+
+    public int edgeType(int e)
+    {
+        return type != null ? type.get(e) : ArrayRepresentation.typeFromWeight(types, dist.get(e), dist_w.get(e));
+    }
+
+
+    public int inEdgeBegin(int n)
+    {
+        return reverse().getOffset().get(n);
+    }
+
+
+    public int inEdgeEnd(int n)
+    {
+        return reverse().getOffset().get(n+1);
+    }
+
+
+    public int inEdgeSource(int r)
+    {
+        return reverse().getSource().get(r);
+    }
+
+
+    public int inEdgeForward(int r)
+    {
+        return reverse().getEdge().get(r);
+    }
+
+
+    public int getDist(int from, int to)
+    {
+        checkNode(from);
+
+        for (int i = offset.get(from); i < offset.get(from+1); ++i) {
+            if (target.get(i) == to)
+                return dist.get(i);
+        }
+        return -1;
+    }
+
+
+    public double getLat(int n)
+    {
+        return lat != null ? lat.get(n) : FixedPoint.toDegrees(lat_fixed.get(n));
+    }
+
+
+    public double getNLat(int n)
+    {
+        return nlat[n];
+    }
+
+
+    public double getLon(int n)
+    {
+        return lon != null ? lon.get(n) : FixedPoint.toDegrees(lon_fixed.get(n));
+    }
+
+
+    public double getNLon(int n)
+    {
+        return nlon[n];
+    }
+
+
+    public GeoPosition getPosition(int n)
+    {
+        return new GeoPosition(getLat(n), getLon(n));
+    }
+
+
+    public GeoPosition getNPosition(int n)
+    {
+        return new GeoPosition(nlat[n], nlon[n]);
+    }
+
+
+    public String getName(int n)
+    {
+        return name[n];
+    }
+
+
+    public int getComponent(int n)
+    {
+        return scc.getComponent(n);
+    }
+
+
+    public int getComponentSize(int c)
+    {
+        return scc.getComponentSize(c);
+    }
+
+
+    public boolean mayReach(int from, int to)
+    {
+        return scc.mayReach(from, to);
+    }
+
+
+    public int size()
+    {
+        return node_num;
+    }
+
+
+    public int sizeN()
+    {
+        return nlat.length;
+    }
+
+
+    public int getIthEdgeDistFor(int n, int i)
+    {
+        return getIthEdgeDistFor(n, i, false);
+    }
+
+
+    public int getIthEdgeDistFor(int n, int i, boolean weighted)
+    {
+        if (weighted)
+            return dist_w.get(offset.get(n)+i);
+        else
+            return dist.get(offset.get(n)+i);
+    }
+
+
+    public double getMinCostPerMeter(boolean weighted)
+    {
+        return cost_per_meter[weighted ? 1 : 0];
+    }
+
+
+    public double[] getBoundingRectLat()
+    {
+        return new double[] {maxLat, maxLat, minLat, minLat};
+    }
+
+
+    public double[] getBoundingRectLon()
+    {
+        return new double[] {maxLon, minLon, minLon, maxLon};
+    }
+
+
+    public void visualizeGridLookup(boolean t, MainWindow w)
+    {
+        if (grid != null)
+            grid.setVisualize(t, w);
+    }
+
+
+    public void visualizeNGridLookup(boolean t, MainWindow w)
+    {
+        if (ngrid != null)
+            ngrid.setVisualize(t, w);
+    }
+
+}
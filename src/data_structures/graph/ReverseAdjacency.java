@@ -0,0 +1,140 @@
+package data_structures.graph;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+
+/**
+ * See {@link #ReverseAdjacency(int, ChunkedIntBuffer, ChunkedIntBuffer)}.
+ */
+public final class ReverseAdjacency
+{
+    /**
+     * First incoming edge of every node, {@code node_num + 1} values.
+     */
+    private final ChunkedIntBuffer offset;
+    /**
+     * Source of every incoming edge.
+     */
+    private final ChunkedIntBuffer source;
+    /**
+     * Index of the forward edge corresponding to every incoming edge.
+     */
+    private final ChunkedIntBuffer edge;
+
+
+    /**
+     * Build the incoming edges of a graph given as CSR ({@code offset}, {@code target})
+     * as CSR of its own, required for backward searches. A counting sort over all
+     * edge targets, incoming edges of a node are ordered by their source.<br>
+     * The result is kept in arrays on the heap. It is stored with the graph as
+     * {@code GraphFile.SECTION_R_OFFSET}, {@code GraphFile.SECTION_R_SOURCE} and
+     * {@code GraphFile.SECTION_R_EDGE}, see {@link #read(GraphFile)} and
+     * {@link #addTo(GraphFileWriter)}.
+     *
+     * @param node_num number of nodes
+     * @param offset first edge of every node, {@code node_num + 1} values
+     * @param target target of every edge
+     */
+    public ReverseAdjacency(int node_num, ChunkedIntBuffer offset, ChunkedIntBuffer target)
+    {
+        final int edge_num = target.size();
+        final int[] r_offset = new int[node_num + 1];
+        final int[] r_source = new int[edge_num];
+        final int[] r_edge   = new int[edge_num];
+
+        for (int i = 0; i < edge_num; ++i) {
+            ++r_offset[target.get(i) + 1];
+        }
+        for (int i = 0; i < node_num; ++i) {
+            r_offset[i + 1] += r_offset[i];
+        }
+
+        // next free position per node
+        final int[] pos = Arrays.copyOf(r_offset, node_num);
+        for (int n = 0; n < node_num; ++n) {
+            for (int i = offset.get(n); i < offset.get(n+1); ++i) {
+                final int p = pos[target.get(i)]++;
+                r_source[p] = n;
+                r_edge[p]   = i;
+            }
+        }
+
+        this.offset = ChunkedIntBuffer.wrap(r_offset);
+        source = ChunkedIntBuffer.wrap(r_source);
+        edge   = ChunkedIntBuffer.wrap(r_edge);
+    }
+
+
+    private ReverseAdjacency(ChunkedIntBuffer offset, ChunkedIntBuffer source, ChunkedIntBuffer edge)
+    {
+        this.offset = offset;
+        this.source = source;
+        this.edge = edge;
+    }
+
+
+    /**
+     * Map the incoming edges stored in {@code gf}, they stay in the mapped file.
+     *
+     * @return {@code null} when {@code gf} was written without incoming edges
+     * @throws InvalidGraphFormatException when the sections don't match the graph
+     */
+    public static ReverseAdjacency read(GraphFile gf) throws InvalidGraphFormatException, IOException
+    {
+        if (!gf.hasSection(GraphFile.SECTION_R_OFFSET) || !gf.hasSection(GraphFile.SECTION_R_SOURCE)
+                || !gf.hasSection(GraphFile.SECTION_R_EDGE)) {
+            return null;
+        }
+
+        final int node_num = gf.getNodeCount();
+        final int edge_num = gf.getEdgeCount();
+        final ChunkedIntBuffer offset = gf.getChunkedInts(GraphFile.SECTION_R_OFFSET, node_num + 1);
+        if (offset.get(0) != 0 || offset.get(node_num) != edge_num) {
+            throw new InvalidGraphFormatException("Invalid reverse offset section");
+        }
+        return new ReverseAdjacency(offset,
+                                    gf.getChunkedInts(GraphFile.SECTION_R_SOURCE, edge_num),
+                                    gf.getChunkedInts(GraphFile.SECTION_R_EDGE,   edge_num));
+    }
+
+
+    /**
+     * Add the incoming edges as sections to a graph file about to be written.
+     */
+    public GraphFileWriter addTo(GraphFileWriter w)
+    {
+        return w.addSection(GraphFile.SECTION_R_OFFSET, offset)
+                .addSection(GraphFile.SECTION_R_SOURCE, source)
+                .addSection(GraphFile.SECTION_R_EDGE,   edge);
+    }
+
+
+    /**
+     * @return first incoming edge of every node, {@code node_num + 1} values
+     */
+    public ChunkedIntBuffer getOffset()
+    {
+        return offset;
+    }
+
+
+    /**
+     * @return source of every incoming edge
+     */
+    public ChunkedIntBuffer getSource()
+    {
+        return source;
+    }
+
+
+    /**
+     * @return index of the forward edge corresponding to every incoming edge
+     */
+    public ChunkedIntBuffer getEdge()
+    {
+        return edge;
+    }
+
+}
@@ -0,0 +1,328 @@
+package data_structures.graph;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+
+/**
+ * See {@link #StrongComponents(int, ChunkedIntBuffer, ChunkedIntBuffer)}.
+ */
+public final class StrongComponents
+{
+    /**
+     * Component of every node, {@code 0} is the largest one.
+     */
+    private final ChunkedIntBuffer scc;
+    /**
+     * Weakly connected component of every strongly connected component.
+     */
+    private final int[]     weak;
+    /**
+     * Completion index of every component in Tarjan's algorithm. Edges between
+     * different components lead to components completed earlier (a reverse
+     * topological order), see {@link #mayReach(int, int)}.
+     */
+    private final int[]     order;
+    /**
+     * Number of nodes of every component.
+     */
+    private final int[]     size;
+
+
+    /**
+     * Label the strongly connected components (SCC) of a graph given as CSR
+     * ({@code offset}, {@code target}): two nodes are in the same component if
+     * and only if there are paths in both directions between them.<br>
+     * Components are numbered by decreasing size, i.e. {@code 0} is the main
+     * component. Every component also knows its weakly connected component
+     * (ignoring edge directions), there's no path at all between nodes of
+     * different weak components, and the order Tarjan's algorithm completed it in.
+     * A path only leads to components completed earlier, so nodes of the same weak
+     * component aren't necessarily able to reach each other either.
+     * <br><br>
+     * The labelling uses Tarjan's algorithm with an explicit stack instead of
+     * recursion, which would overflow the call stack on large graphs. Time and
+     * memory are linear in the size of the graph.
+     * <br><br>
+     * The labels are stored with the graph as {@code GraphFile.SECTION_SCC},
+     * {@code GraphFile.SECTION_SCC_WEAK} and {@code GraphFile.SECTION_SCC_ORDER},
+     * see {@link #read(GraphFile, boolean)} and {@link #addTo(GraphFileWriter)}.
+     *
+     * @param node_num number of nodes
+     * @param offset first edge of every node, {@code node_num + 1} values
+     * @param target target of every edge
+     */
+    public StrongComponents(int node_num, ChunkedIntBuffer offset, ChunkedIntBuffer target)
+    {
+        final int[] comp  = tarjan(node_num, offset, target);
+        int comp_num = 0;
+        for (int c : comp)
+            comp_num = Math.max(comp_num, c + 1);
+
+        // renumber by decreasing size, ties in order of discovery
+        final int[] count = new int[comp_num];
+        for (int c : comp)
+            ++count[c];
+        final long[] key = new long[comp_num];
+        for (int c = 0; c < comp_num; ++c)
+            key[c] = ((long) (node_num - count[c]) << 32) | c;
+        Arrays.sort(key);
+
+        final int[] rank = new int[comp_num];
+        size = new int[comp_num];
+        order = new int[comp_num];
+        for (int i = 0; i < comp_num; ++i) {
+            final int c = (int) key[i];
+            rank[c] = i;
+            size[i] = count[c];
+            order[i] = c;
+        }
+        for (int n = 0; n < node_num; ++n)
+            comp[n] = rank[comp[n]];
+
+        weak = weakComponents(node_num, offset, target, comp, comp_num);
+        scc = ChunkedIntBuffer.wrap(comp);
+    }
+
+
+    /**
+     * Use previously computed labels, e.g. read from a graph file.
+     *
+     * @param scc component of every node
+     * @param weak weakly connected component of every component
+     * @param order completion index of every component
+     * @throws InvalidGraphFormatException when a label is out of range
+     */
+    public StrongComponents(ChunkedIntBuffer scc, int[] weak, int[] order) throws InvalidGraphFormatException
+    {
+        if (order.length != weak.length) {
+            throw new InvalidGraphFormatException("Invalid component order");
+        }
+        this.scc = scc;
+        this.weak = weak;
+        this.order = order;
+        size = new int[weak.length];
+        for (int n = 0; n < scc.size(); ++n) {
+            final int c = scc.get(n);
+            if (c < 0 || c >= weak.length) {
+                throw new InvalidGraphFormatException("Invalid component of node " + n);
+            }
+            ++size[c];
+        }
+    }
+
+
+    /**
+     * Read the labels stored in {@code gf}.
+     *
+     * @param copy copy the node labels onto the heap instead of keeping them mapped
+     * @return {@code null} when {@code gf} was written without components (or their order)
+     */
+    public static StrongComponents read(GraphFile gf, boolean copy) throws InvalidGraphFormatException, IOException
+    {
+        if (!gf.hasSection(GraphFile.SECTION_SCC) || !gf.hasSection(GraphFile.SECTION_SCC_WEAK)
+                || !gf.hasSection(GraphFile.SECTION_SCC_ORDER)) {
+            return null;
+        }
+
+        final int[] weak = new int[gf.getSection(GraphFile.SECTION_SCC_WEAK).capacity() / Integer.BYTES];
+        gf.getInts(GraphFile.SECTION_SCC_WEAK, weak.length).get(weak);
+        final int[] order = new int[weak.length];
+        gf.getInts(GraphFile.SECTION_SCC_ORDER, order.length).get(order);
+
+        ChunkedIntBuffer scc = gf.getChunkedInts(GraphFile.SECTION_SCC, gf.getNodeCount());
+        if (copy) {
+            final int[] a = new int[gf.getNodeCount()];
+            scc.get(a);
+            scc = ChunkedIntBuffer.wrap(a);
+        }
+        return new StrongComponents(scc, weak, order);
+    }
+
+
+    /**
+     * Add the labels as sections to a graph file about to be written.
+     */
+    public GraphFileWriter addTo(GraphFileWriter w)
+    {
+        return w.addSection(GraphFile.SECTION_SCC, scc)
+                .addSection(GraphFile.SECTION_SCC_WEAK, weak)
+                .addSection(GraphFile.SECTION_SCC_ORDER, order);
+    }
+
+
+    /**
+     * Iterative Tarjan.
+     *
+     * @return component of every node, numbered in order of completion
+     */
+    private static int[] tarjan(int node_num, ChunkedIntBuffer offset, ChunkedIntBuffer target)
+    {
+        // DFS number (starting with 1, 0 = not visited yet) and lowlink
+        final int[] index = new int[node_num];
+        final int[] low   = new int[node_num];
+        final int[] comp  = new int[node_num];
+        Arrays.fill(comp, -1);
+
+        // nodes of unfinished components
+        final int[] stack = new int[node_num];
+        int sp = 0;
+        // DFS path and the next edge to follow for each of its nodes
+        final int[] path  = new int[node_num];
+        final int[] edge  = new int[node_num];
+        int pp = 0;
+
+        int counter = 0;
+        int comp_num = 0;
+
+        for (int r = 0; r < node_num; ++r) {
+            if (index[r] != 0)
+                continue;
+
+            index[r] = low[r] = ++counter;
+            stack[sp++] = r;
+            path[pp] = r;
+            edge[pp++] = offset.get(r);
+
+            while (pp > 0) {
+                final int u = path[pp - 1];
+                final int e = edge[pp - 1];
+
+                if (e < offset.get(u + 1)) {
+                    edge[pp - 1] = e + 1;
+                    final int v = target.get(e);
+                    if (index[v] == 0) {
+                        index[v] = low[v] = ++counter;
+                        stack[sp++] = v;
+                        path[pp] = v;
+                        edge[pp++] = offset.get(v);
+                    }
+                    // visited nodes without component are on the stack
+                    else if (comp[v] < 0) {
+                        low[u] = Math.min(low[u], index[v]);
+                    }
+                    continue;
+                }
+
+                // all edges of u done
+                --pp;
+                if (pp > 0) {
+                    final int p = path[pp - 1];
+                    low[p] = Math.min(low[p], low[u]);
+                }
+                if (low[u] == index[u]) {
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        comp[w] = comp_num;
+                    } while (w != u);
+                    ++comp_num;
+                }
+            }
+        }
+        return comp;
+    }
+
+
+    /**
+     * Union-find over all edges.
+     *
+     * @return weakly connected component (numbered densely) of every strongly connected component
+     */
+    private static int[] weakComponents(int node_num, ChunkedIntBuffer offset, ChunkedIntBuffer target, int[] comp, int comp_num)
+    {
+        final int[] parent = new int[node_num];
+        for (int n = 0; n < node_num; ++n)
+            parent[n] = n;
+
+        for (int n = 0; n < node_num; ++n) {
+            for (int e = offset.get(n); e < offset.get(n + 1); ++e) {
+                final int a = find(parent, n);
+                final int b = find(parent, target.get(e));
+                if (a != b)
+                    parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        final int[] id = new int[node_num];
+        Arrays.fill(id, -1);
+        final int[] weak = new int[comp_num];
+        int weak_num = 0;
+        for (int n = 0; n < node_num; ++n) {
+            final int root = find(parent, n);
+            if (id[root] < 0)
+                id[root] = weak_num++;
+            weak[comp[n]] = id[root];
+        }
+        return weak;
+    }
+
+
+    private static int find(int[] parent, int n)
+    {
+        // path halving
+        while (parent[n] != n) {
+            parent[n] = parent[parent[n]];
+            n = parent[n];
+        }
+        return n;
+    }
+
+
+    /**
+     * @return IDs of all nodes of component {@code c} in ascending order
+     */
+    public int[] getNodes(int c)
+    {
+        final int[] r = new int[size[c]];
+        int k = 0;
+        for (int n = 0; n < scc.size(); ++n) {
+            if (scc.get(n) == c)
+                r[k++] = n;
+        }
+        return r;
+    }
+
+
+    /**
+     * @return component of node {@code n}, {@code 0} is the largest one
+     */
+    public int getComponent(int n)
+    {
+        return scc.get(n);
+    }
+
+
+    /**
+     * @return number of nodes of component {@code c}
+     */
+    public int getComponentSize(int c)
+    {
+        return size[c];
+    }
+
+
+    public int getComponentCount()
+    {
+        return size.length;
+    }
+
+
+    /**
+     * Constant time test for queries to reject without searching. A path between
+     * different components passes components completed ever earlier by Tarjan's
+     * algorithm, so there's none unless {@code from}'s component was completed
+     * after {@code to}'s. Besides, both have to be in the same weak component.
+     *
+     * @return {@code false} when there's certainly no path from {@code from} to {@code to},
+     *         {@code true} when there might be one (certainly when both are in the same component)
+     */
+    public boolean mayReach(int from, int to)
+    {
+        final int a = scc.get(from);
+        final int b = scc.get(to);
+        return a == b || weak[a] == weak[b] && order[a] > order[b];
+    }
+
+}
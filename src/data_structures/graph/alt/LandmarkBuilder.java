@@ -0,0 +1,309 @@
+package data_structures.graph.alt;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import data_structures.graph.Graph;
+import data_structures.graph.GraphChecksum;
+import data_structures.heap.BinaryMinHeap;
+
+
+
+/**
+ * See {@link #LandmarkBuilder(Graph, boolean)}.
+ */
+public final class LandmarkBuilder
+{
+    /**
+     * Landmark selection strategies, see {@link #build(int, int)}.
+     */
+    public static final int SELECT_FARTHEST = 0,
+                            SELECT_AVOID    = 1;
+
+    /**
+     * Roots tried by {@link #SELECT_AVOID} before giving up on finding another landmark.
+     */
+    private final int     AVOID_ROOT_TRIES = 32;
+    private final int     UNREACHED = Integer.MAX_VALUE;
+
+    private final Graph   g;
+    private final boolean weighted;
+    private final int     node_num;
+    private final Random  random = new Random(42);
+
+    /*
+     * Exact distances of the landmarks selected so far.
+     */
+    private int[][]       from = new int[0][];
+    private int[][]       to = new int[0][];
+    private int[]         landmark = new int[0];
+
+    /*
+     * Scratch space of the full searches.
+     */
+    private final int[]   pred;
+    private final int[]   order;
+    private int           order_n = 0;
+
+
+    /**
+     * Select landmarks of {@code graph} and compute their distance tables for one metric.
+     * Each landmark costs one forward and one backward search over the whole graph.
+     * <br><br>
+     * This is an offline step, see {@link LandmarkBuilderMain}. The result does not
+     * depend on a node order, it can be recomputed cheaply whenever the graph changes.
+     *
+     * @param graph
+     * @param weighted use distances weighted by street types?
+     */
+    public LandmarkBuilder(Graph graph, boolean weighted)
+    {
+        g = graph;
+        this.weighted = weighted;
+        node_num = g.size();
+        pred = new int[node_num];
+        order = new int[node_num];
+    }
+
+
+    /**
+     * Select up to {@code count} landmarks, fewer when the strategy runs out of candidates.
+     * <ul>
+     * <li>{@link #SELECT_FARTHEST}: every new landmark is the node farthest away
+     * from all landmarks selected so far (the first one is farthest from a random node).
+     * <li>{@link #SELECT_AVOID}: grow a shortest path tree from a random root and
+     * weight every node by the gap between its distance and the current lower bound.
+     * Descend from the root into the heaviest subtree not containing a landmark,
+     * the leaf reached becomes the new landmark. Usually gives tighter bounds.
+     * </ul>
+     *
+     * @param count number of landmarks, at most {@link Landmarks#MAX_LANDMARKS}
+     * @param strategy selection strategy
+     * @return the resulting landmark tables
+     */
+    public Landmarks build(int count, int strategy)
+    {
+        if (count < 1 || count > Landmarks.MAX_LANDMARKS) {
+            throw new RuntimeException("Invalid number of landmarks: " + count);
+        }
+        if (strategy != SELECT_FARTHEST && strategy != SELECT_AVOID) {
+            throw new RuntimeException("Unknown landmark selection strategy " + strategy);
+        }
+
+        while (landmark.length < count) {
+            final int l = strategy == SELECT_FARTHEST ? selectFarthest() : selectAvoid();
+            if (l < 0)
+                break;
+            addLandmark(l);
+            System.out.println("Landmark " + landmark.length + " / " + count + ": node " + l);
+        }
+
+        return toLandmarks();
+    }
+
+
+    private int randomNode()
+    {
+        return random.nextInt(node_num);
+    }
+
+
+    private boolean isLandmark(int n)
+    {
+        for (int l : landmark) {
+            if (l == n)
+                return true;
+        }
+        return false;
+    }
+
+
+    private int selectFarthest()
+    {
+        int[] d = null;
+        if (landmark.length == 0) {
+            d = new int[node_num];
+            search(randomNode(), true, d);
+        }
+
+        int best = -1;
+        long best_d = -1;
+        for (int n = 0; n < node_num; ++n) {
+            long m;
+            if (d != null) {
+                m = d[n] == UNREACHED ? -1 : d[n];
+            }
+            else {
+                // distance to the set of landmarks, only nodes connected to all of them
+                m = Long.MAX_VALUE;
+                for (int l = 0; l < landmark.length; ++l) {
+                    if (from[l][n] == UNREACHED) {
+                        m = -1;
+                        break;
+                    }
+                    m = Math.min(m, from[l][n]);
+                }
+            }
+            if (m > best_d && !isLandmark(n)) {
+                best_d = m;
+                best = n;
+            }
+        }
+        return best_d > 0 ? best : -1;
+    }
+
+
+    private int selectAvoid()
+    {
+        final int[] d = new int[node_num];
+        final long[] size = new long[node_num];
+        final int[] best_child = new int[node_num];
+
+        for (int tries = 0; tries < AVOID_ROOT_TRIES; ++tries) {
+            final int r = randomNode();
+            search(r, true, d);
+
+            // weight: how much the current bound underestimates the distance from the root
+            for (int i = 0; i < order_n; ++i) {
+                final int n = order[i];
+                size[n] = isLandmark(n) ? -1 : d[n] - lowerBound(r, n);
+                best_child[n] = -1;
+            }
+
+            // accumulate subtree sizes bottom up, subtrees containing a landmark are -1
+            for (int i = order_n - 1; i > 0; --i) {
+                final int n = order[i];
+                final int p = pred[n];
+                if (size[n] < 0) {
+                    size[p] = -1;
+                }
+                else if (size[p] >= 0) {
+                    size[p] += size[n];
+                }
+            }
+            for (int i = 1; i < order_n; ++i) {
+                final int n = order[i];
+                final int p = pred[n];
+                if (size[n] > 0 && (best_child[p] < 0 || size[n] > size[best_child[p]]))
+                    best_child[p] = n;
+            }
+
+            // the root itself may be part of a landmark's subtree, descend anyway
+            int n = best_child[r];
+            if (n < 0)
+                continue;
+            while (best_child[n] >= 0)
+                n = best_child[n];
+            return n;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Lower bound of {@code d(v, t)} by the landmarks selected so far.
+     */
+    private long lowerBound(int v, int t)
+    {
+        long r = 0;
+        for (int l = 0; l < landmark.length; ++l) {
+            if (from[l][v] != UNREACHED && from[l][t] != UNREACHED)
+                r = Math.max(r, (long) from[l][t] - from[l][v]);
+            if (to[l][v] != UNREACHED && to[l][t] != UNREACHED)
+                r = Math.max(r, (long) to[l][v] - to[l][t]);
+        }
+        return r;
+    }
+
+
+    private void addLandmark(int n)
+    {
+        final int k = landmark.length;
+        landmark = Arrays.copyOf(landmark, k + 1);
+        from = Arrays.copyOf(from, k + 1);
+        to = Arrays.copyOf(to, k + 1);
+
+        landmark[k] = n;
+        from[k] = new int[node_num];
+        to[k] = new int[node_num];
+        search(n, true, from[k]);
+        search(n, false, to[k]);
+    }
+
+
+    /**
+     * Dijkstra from {@code s} over the whole graph, along (forward) or against the
+     * edge direction. Fills {@code d}, {@link #pred} and the settle {@link #order}.
+     */
+    private void search(int s, boolean forward, int[] d)
+    {
+        Arrays.fill(d, UNREACHED);
+        order_n = 0;
+        final BinaryMinHeap heap = new BinaryMinHeap(1024);
+
+        d[s] = 0;
+        pred[s] = -1;
+        heap.insert(s, 0);
+
+        while (!heap.isEmpty()) {
+            final int u = heap.getMinID();
+            final int u_dist = heap.getMinValue();
+            heap.removeMin();
+            if (u_dist > d[u])
+                continue;
+            order[order_n++] = u;
+
+            final int end = forward ? g.edgeEnd(u) : g.inEdgeEnd(u);
+            for (int j = forward ? g.edgeBegin(u) : g.inEdgeBegin(u); j < end; ++j) {
+                final int v = forward ? g.edgeTarget(j) : g.inEdgeSource(j);
+                final int inc = g.edgeWeight(forward ? j : g.inEdgeForward(j), weighted);
+                if (inc < 0)
+                    continue;
+
+                final int new_dist = u_dist + inc;
+                if (new_dist < d[v]) {
+                    d[v] = new_dist;
+                    pred[v] = u;
+                    heap.insert(v, new_dist);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Quantize the exact distances, see {@link Landmarks#Landmarks(String)}.
+     */
+    private Landmarks toLandmarks()
+    {
+        int max = 0;
+        for (int l = 0; l < landmark.length; ++l) {
+            for (int n = 0; n < node_num; ++n) {
+                if (from[l][n] != UNREACHED)
+                    max = Math.max(max, from[l][n]);
+                if (to[l][n] != UNREACHED)
+                    max = Math.max(max, to[l][n]);
+            }
+        }
+        final int quantum = max / Landmarks.UNREACHABLE + 1;
+
+        final short[][] q_from = new short[landmark.length][];
+        final short[][] q_to = new short[landmark.length][];
+        for (int l = 0; l < landmark.length; ++l) {
+            q_from[l] = quantize(from[l], quantum);
+            q_to[l] = quantize(to[l], quantum);
+        }
+        return new Landmarks(new GraphChecksum(g, weighted), weighted, quantum, landmark.clone(), q_from, q_to);
+    }
+
+
+    private short[] quantize(int[] d, int quantum)
+    {
+        final short[] r = new short[node_num];
+        for (int n = 0; n < node_num; ++n) {
+            r[n] = (short) (d[n] == UNREACHED ? Landmarks.UNREACHABLE : d[n] / quantum);
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,37 @@
+package data_structures.graph.alt;
+
+import java.io.IOException;
+
+import util.StopWatch;
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFactory;
+import data_structures.graph.InvalidGraphFormatException;
+
+public class LandmarkBuilderMain
+{
+
+    public static void main(String[] args) throws InvalidGraphFormatException, IOException
+    {
+        if (args.length < 1) {
+            System.out.println("Parameters: <graph file> [<landmarks>] [farthest|avoid]");
+            return;
+        }
+
+        final String graph_file = args[0];
+        final int count = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        final int strategy = args.length > 2 && args[2].equals("farthest")
+                                ? LandmarkBuilder.SELECT_FARTHEST
+                                : LandmarkBuilder.SELECT_AVOID;
+        final Graph g = GraphFactory.load(graph_file);
+
+        // one set of tables per metric
+        for (boolean weighted : new boolean[] { false, true }) {
+            final StopWatch sw = new StopWatch().lap();
+            final Landmarks lm = new LandmarkBuilder(g, weighted).build(count, strategy);
+            final String out_file = Landmarks.fileFor(graph_file, weighted);
+            lm.save(out_file);
+            System.out.println("Finished: " + out_file + " (in " + sw.lap().getLastInSecStr() + " sec)");
+        }
+    }
+
+}
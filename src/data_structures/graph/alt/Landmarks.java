@@ -0,0 +1,212 @@
+package data_structures.graph.alt;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+
+import data_structures.graph.Graph;
+import data_structures.graph.GraphChecksum;
+import data_structures.graph.GraphFile;
+import data_structures.graph.GraphFileWriter;
+import data_structures.graph.InvalidGraphFormatException;
+
+
+
+/**
+ * See {@link #Landmarks(String)}.
+ */
+public final class Landmarks
+{
+    /**
+     * Section IDs within a landmark file. The tables of landmark {@code l}
+     * are stored in sections {@code SECTION_FROM + l} and {@code SECTION_TO + l}.
+     */
+    public static final int SECTION_METRIC    = 201,
+                            SECTION_QUANTUM   = 202,
+                            SECTION_LANDMARKS = 203,
+                            SECTION_GRAPH     = 204,
+                            SECTION_FROM      = 1000,
+                            SECTION_TO        = 2000;
+
+    /**
+     * Maximum number of landmarks a file can hold.
+     */
+    public static final int MAX_LANDMARKS = 1000;
+
+    /**
+     * Stored value of nodes not connected to the landmark.
+     */
+    static final int        UNREACHABLE = 0xFFFF;
+
+    private final boolean   weighted;
+    private final int       node_num;
+    /*
+     * Graph the tables were computed for, null for files written without it,
+     * see ContractionHierarchy.
+     */
+    private final GraphChecksum graph;
+    private volatile Graph      verified = null;
+    /**
+     * Stored distances are {@code floor(dist / quantum)}.
+     */
+    private final int       quantum;
+    private final int[]     landmark;
+    /*
+     * Quantized distances from (to) every landmark to (from) every node,
+     * as unsigned shorts.
+     */
+    private final ShortBuffer[] from;
+    private final ShortBuffer[] to;
+
+
+    /**
+     * Load landmark tables written by {@link #save(String)}, the tables stay mapped.
+     * <br><br>
+     * For every landmark {@code l} the distances {@code d(l, v)} and {@code d(v, l)}
+     * to and from all nodes are known. By the triangle inequality
+     * {@code d(v, t) >= d(l, t) - d(l, v)} and {@code d(v, t) >= d(v, l) - d(t, l)},
+     * see {@link #lowerBound(int, int, int)}. These bounds are used by
+     * {@link path.search.ALTSearch ALTSearch}, see {@link LandmarkBuilder} for the
+     * preprocessing.
+     * <br><br>
+     * To keep the tables compact distances are stored as unsigned 16 bit values in
+     * units of {@link #getQuantum()} cost units, rounded down. The bounds account for
+     * the rounding and hence stay valid.
+     * <br><br>
+     * Tables are stored in the binary graph file format (see
+     * {@link GraphFile#GraphFile(String) GraphFile}), one file per metric next to the
+     * graph file, see {@link #fileFor(String, boolean)}. Like contraction hierarchies
+     * they are refused for other graphs, see {@link #matches(Graph)}.
+     *
+     * @param f landmark file
+     * @throws InvalidGraphFormatException
+     * @throws IOException
+     */
+    public Landmarks(String f) throws InvalidGraphFormatException, IOException
+    {
+        final GraphFile gf = new GraphFile(f);
+        try {
+            node_num = gf.getNodeCount();
+            weighted = gf.getInts(SECTION_METRIC, 1).get(0) != 0;
+            quantum  = gf.getInts(SECTION_QUANTUM, 1).get(0);
+
+            final int k = gf.getSection(SECTION_LANDMARKS).capacity() / Integer.BYTES;
+            if (k > MAX_LANDMARKS) {
+                throw new InvalidGraphFormatException("Too many landmarks");
+            }
+            landmark = new int[k];
+            gf.getInts(SECTION_LANDMARKS, k).get(landmark);
+
+            from = new ShortBuffer[k];
+            to = new ShortBuffer[k];
+            for (int l = 0; l < k; ++l) {
+                from[l] = gf.getShorts(SECTION_FROM + l, node_num);
+                to[l]   = gf.getShorts(SECTION_TO + l, node_num);
+            }
+            graph = GraphChecksum.read(gf, SECTION_GRAPH);
+        }
+        finally {
+            gf.close();
+        }
+    }
+
+
+    /**
+     * Wrap the tables computed by {@link LandmarkBuilder}.
+     */
+    Landmarks(GraphChecksum graph, boolean weighted, int quantum, int[] landmark, short[][] from, short[][] to)
+    {
+        this.graph    = graph;
+        this.weighted = weighted;
+        this.quantum  = quantum;
+        this.landmark = landmark;
+        this.node_num = landmark.length == 0 ? 0 : from[0].length;
+        this.from = new ShortBuffer[landmark.length];
+        this.to   = new ShortBuffer[landmark.length];
+        for (int l = 0; l < landmark.length; ++l) {
+            this.from[l] = ShortBuffer.wrap(from[l]);
+            this.to[l]   = ShortBuffer.wrap(to[l]);
+        }
+    }
+
+
+    /**
+     * Location of the landmark file for graph file {@code graph} and the given metric.
+     */
+    public static String fileFor(String graph, boolean weighted)
+    {
+        return graph + (weighted ? ".alt_w" : ".alt");
+    }
+
+
+    /**
+     * Save the tables, see {@link #Landmarks(String)}.
+     *
+     * @param f file location
+     */
+    public void save(String f) throws IOException
+    {
+        final GraphFileWriter w = new GraphFileWriter(f, node_num, 0, 0, 0, 0, 0, 0)
+            .addSection(SECTION_METRIC,    new int[] { weighted ? 1 : 0 })
+            .addSection(SECTION_QUANTUM,   new int[] { quantum })
+            .addSection(SECTION_LANDMARKS, landmark);
+        if (graph != null) {
+            graph.addTo(w, SECTION_GRAPH);
+        }
+        for (int l = 0; l < landmark.length; ++l) {
+            w.addSection(SECTION_FROM + l, from[l]);
+            w.addSection(SECTION_TO + l, to[l]);
+        }
+        w.close();
+    }
+
+
+    /**
+     * Check the tables were computed for {@code g}, like
+     * {@link data_structures.graph.ch.ContractionHierarchy#matches(Graph) ContractionHierarchy.matches()}.
+     *
+     * @return {@code false} also for files written without checksum
+     */
+    public boolean matches(Graph g)
+    {
+        if (verified == g)
+            return true;
+        if (graph == null || g.size() != node_num || !graph.equals(new GraphChecksum(g, weighted)))
+            return false;
+        verified = g;
+        return true;
+    }
+
+
+    public boolean isWeighted()           { return weighted; }
+    public int size()                     { return node_num; }
+    public int getQuantum()               { return quantum; }
+    public int getLandmarkCount()         { return landmark.length; }
+    public int getLandmark(int l)         { return landmark[l]; }
+
+
+    /**
+     * Lower bound of the distance from {@code v} to {@code t} derived from landmark {@code l}.
+     *
+     * @return bound, {@code 0} when {@code l} does not provide one
+     */
+    public int lowerBound(int l, int v, int t)
+    {
+        int r = 0;
+
+        // d(v, t) >= d(l, t) - d(l, v)
+        final int lv = from[l].get(v) & 0xFFFF;
+        final int lt = from[l].get(t) & 0xFFFF;
+        if (lv != UNREACHABLE && lt != UNREACHABLE)
+            r = lt - lv;
+
+        // d(v, t) >= d(v, l) - d(t, l)
+        final int vl = to[l].get(v) & 0xFFFF;
+        final int tl = to[l].get(t) & 0xFFFF;
+        if (vl != UNREACHABLE && tl != UNREACHABLE)
+            r = Math.max(r, vl - tl);
+
+        // both values may be rounded down by up to quantum - 1
+        return Math.max(0, r * quantum - (quantum - 1));
+    }
+
+}
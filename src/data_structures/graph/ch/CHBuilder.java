@@ -0,0 +1,424 @@
+package data_structures.graph.ch;
+
+import java.util.Arrays;
+
+import data_structures.graph.Graph;
+import data_structures.graph.GraphChecksum;
+import data_structures.heap.BinaryMinHeap;
+
+
+
+/**
+ * See {@link #CHBuilder(Graph, boolean)}.
+ */
+public final class CHBuilder
+{
+    /**
+     * Witness searches settle at most this many nodes, when simulating a
+     * contraction for the node order and when actually contracting.
+     * Giving up early only costs superfluous shortcuts, never correctness.
+     */
+    private final int SIMULATION_SETTLE_LIMIT = 50;
+    private final int CONTRACTION_SETTLE_LIMIT = 500;
+    private final int UNREACHED = Integer.MAX_VALUE;
+
+    private final Graph   g;
+    private final boolean weighted;
+    private final int     node_num;
+
+    /*
+     * Remaining (not yet contracted) graph, one growable edge list per node
+     * and direction. mid is negative for original edges, see
+     * ContractionHierarchy.originalEdge().
+     */
+    private final int[][] out_t, out_w, out_m;
+    private final int[][] in_t,  in_w,  in_m;
+    private final int[]   out_n, in_n;
+
+    private final boolean[] contracted;
+    private final int[]     deleted_neighbors;
+    private final int[]     level;
+    private final int[]     prio;
+    private final int[]     updated_by;
+
+    /*
+     * Final hierarchy edges, collected when a node is contracted.
+     */
+    private final int[][] up_t, up_w, up_m;
+    private final int[][] down_t, down_w, down_m;
+
+    /*
+     * Witness search state, reset via the touched list.
+     */
+    private final int[]   w_dist;
+    private final int[]   touched;
+    private int           touched_n = 0;
+    /**
+     * Nodes marked with the current {@code w_round} are targets of the witness search.
+     */
+    private final int[]   w_target;
+    private int           w_round = 0;
+    private final BinaryMinHeap w_heap = new BinaryMinHeap(64);
+
+    private long shortcut_num = 0;
+
+
+    /**
+     * Preprocess {@code graph} into a {@link ContractionHierarchy} for one metric.<br>
+     * Nodes are contracted one at a time in the order of their priority, which is
+     * the edge difference (shortcuts added minus edges removed) of a simulated
+     * contraction plus the number of already contracted neighbors and the node's level.
+     * Priorities are updated lazily: a node is only contracted when its recomputed
+     * priority is still minimal, otherwise it is reinserted. Contracting {@code v}
+     * adds a shortcut {@code u -> w} for every pair of remaining neighbors unless a
+     * local witness search finds a path {@code u -> w} avoiding {@code v} which is not
+     * longer.
+     * <br><br>
+     * This is an offline step, see {@link CHBuilderMain}.
+     *
+     * @param graph
+     * @param weighted use distances weighted by street types?
+     */
+    public CHBuilder(Graph graph, boolean weighted)
+    {
+        g = graph;
+        this.weighted = weighted;
+        node_num = g.size();
+
+        out_t = new int[node_num][]; out_w = new int[node_num][]; out_m = new int[node_num][];
+        in_t  = new int[node_num][]; in_w  = new int[node_num][]; in_m  = new int[node_num][];
+        out_n = new int[node_num];
+        in_n  = new int[node_num];
+        up_t   = new int[node_num][]; up_w   = new int[node_num][]; up_m   = new int[node_num][];
+        down_t = new int[node_num][]; down_w = new int[node_num][]; down_m = new int[node_num][];
+
+        contracted = new boolean[node_num];
+        deleted_neighbors = new int[node_num];
+        level = new int[node_num];
+        prio = new int[node_num];
+        updated_by = new int[node_num];
+        Arrays.fill(updated_by, -1);
+        w_dist = new int[node_num];
+        touched = new int[node_num];
+        w_target = new int[node_num];
+        Arrays.fill(w_dist, UNREACHED);
+
+        final int[] empty = new int[0];
+        for (int n = 0; n < node_num; ++n) {
+            out_t[n] = out_w[n] = out_m[n] = empty;
+            in_t[n]  = in_w[n]  = in_m[n]  = empty;
+        }
+
+        for (int n = 0; n < node_num; ++n) {
+            for (int e = g.edgeBegin(n), end = g.edgeEnd(n); e < end; ++e) {
+                final int v = g.edgeTarget(e);
+                final int c = g.edgeWeight(e, weighted);
+                if (c < 0 || v == n)
+                    continue;
+                addEdge(n, v, c, ContractionHierarchy.originalMid(e));
+            }
+        }
+    }
+
+
+    /**
+     * Run the contraction.
+     *
+     * @return the resulting hierarchy
+     */
+    public ContractionHierarchy build()
+    {
+        final BinaryMinHeap queue = new BinaryMinHeap(node_num);
+        for (int n = 0; n < node_num; ++n) {
+            prio[n] = priority(n);
+            queue.insert(n, prio[n]);
+        }
+
+        final int[] rank = new int[node_num];
+        int next_rank = 0;
+
+        while (!queue.isEmpty()) {
+            final int v = queue.getMinID();
+            final int p = queue.getMinValue();
+            queue.removeMin();
+
+            if (contracted[v] || p != prio[v])
+                continue;
+
+            // lazy update
+            prio[v] = priority(v);
+            if (!queue.isEmpty() && prio[v] > queue.getMinValue()) {
+                queue.insert(v, prio[v]);
+                continue;
+            }
+
+            contract(v);
+            rank[v] = next_rank++;
+
+            if (next_rank % 100000 == 0) {
+                System.out.println("Contracted " + next_rank + " / " + node_num + " nodes, " + shortcut_num + " shortcuts");
+            }
+
+            // neighbors' priorities changed
+            for (int i = 0; i < up_t[v].length; ++i) {
+                updateNeighbor(queue, v, up_t[v][i]);
+            }
+            for (int i = 0; i < down_t[v].length; ++i) {
+                updateNeighbor(queue, v, down_t[v][i]);
+            }
+        }
+        System.out.println("Contraction finished, " + shortcut_num + " shortcuts");
+
+        return toHierarchy(rank);
+    }
+
+
+    private void updateNeighbor(BinaryMinHeap queue, int v, int n)
+    {
+        // neighbor by an incoming and an outgoing edge
+        if (updated_by[n] == v)
+            return;
+        updated_by[n] = v;
+
+        ++deleted_neighbors[n];
+        level[n] = Math.max(level[n], level[v] + 1);
+        prio[n] = priority(n);
+        queue.insert(n, prio[n]);
+    }
+
+
+    private int priority(int v)
+    {
+        final int shortcuts = contract(v, true);
+        return 2 * (shortcuts - in_n[v] - out_n[v]) + deleted_neighbors[v] + level[v];
+    }
+
+
+    private void contract(int v)
+    {
+        contract(v, false);
+
+        // remaining edges become hierarchy edges, all neighbors are of higher rank
+        up_t[v]   = Arrays.copyOf(out_t[v], out_n[v]);
+        up_w[v]   = Arrays.copyOf(out_w[v], out_n[v]);
+        up_m[v]   = Arrays.copyOf(out_m[v], out_n[v]);
+        down_t[v] = Arrays.copyOf(in_t[v], in_n[v]);
+        down_w[v] = Arrays.copyOf(in_w[v], in_n[v]);
+        down_m[v] = Arrays.copyOf(in_m[v], in_n[v]);
+
+        for (int i = 0; i < out_n[v]; ++i) {
+            removeEdge(in_t, in_w, in_m, in_n, out_t[v][i], v);
+        }
+        for (int i = 0; i < in_n[v]; ++i) {
+            removeEdge(out_t, out_w, out_m, out_n, in_t[v][i], v);
+        }
+        out_t[v] = out_w[v] = out_m[v] = in_t[v] = in_w[v] = in_m[v] = null;
+        out_n[v] = in_n[v] = 0;
+        contracted[v] = true;
+    }
+
+
+    /**
+     * Find the shortcuts required when contracting {@code v}.
+     *
+     * @param simulate only count the shortcuts
+     * @return number of shortcuts
+     */
+    private int contract(int v, boolean simulate)
+    {
+        if (out_n[v] == 0)
+            return 0;
+
+        int count = 0;
+        final int limit = simulate ? SIMULATION_SETTLE_LIMIT : CONTRACTION_SETTLE_LIMIT;
+        final int[] sc_w = new int[out_n[v]];
+
+        for (int i = 0; i < in_n[v]; ++i) {
+            final int u = in_t[v][i];
+            final int c_uv = in_w[v][i];
+
+            int max = 0;
+            for (int j = 0; j < out_n[v]; ++j) {
+                if (out_t[v][j] != u)
+                    max = Math.max(max, c_uv + out_w[v][j]);
+            }
+
+            ++w_round;
+            int targets = 0;
+            for (int j = 0; j < out_n[v]; ++j) {
+                final int w = out_t[v][j];
+                if (w != u && w_target[w] != w_round) {
+                    w_target[w] = w_round;
+                    ++targets;
+                }
+            }
+
+            witnessSearch(u, v, max, limit, targets);
+
+            int sc_n = 0;
+            for (int j = 0; j < out_n[v]; ++j) {
+                final int w = out_t[v][j];
+                final int c = c_uv + out_w[v][j];
+                sc_w[j] = -1;
+                if (w == u || w_dist[w] <= c)
+                    continue;
+                sc_w[j] = c;
+                ++sc_n;
+            }
+            resetWitnessSearch();
+
+            count += sc_n;
+            if (!simulate && sc_n > 0) {
+                for (int j = 0; j < out_n[v]; ++j) {
+                    if (sc_w[j] >= 0 && addEdge(u, out_t[v][j], sc_w[j], v))
+                        ++shortcut_num;
+                }
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Dijkstra from {@code s} on the remaining graph without {@code skip}, up to
+     * {@code max} distance, {@code limit} settled nodes or until all {@code targets}
+     * nodes marked in {@code w_target} are settled.
+     */
+    private void witnessSearch(int s, int skip, int max, int limit, int targets)
+    {
+        w_dist[s] = 0;
+        touched[touched_n++] = s;
+        w_heap.insert(s, 0);
+
+        int settled = 0;
+        while (!w_heap.isEmpty() && settled < limit) {
+            final int u = w_heap.getMinID();
+            final int d = w_heap.getMinValue();
+            w_heap.removeMin();
+
+            if (d > w_dist[u])
+                continue;
+            if (d > max)
+                break;
+            ++settled;
+            if (w_target[u] == w_round && --targets == 0)
+                break;
+
+            for (int i = 0; i < out_n[u]; ++i) {
+                final int x = out_t[u][i];
+                if (x == skip)
+                    continue;
+                final int nd = d + out_w[u][i];
+                if (nd < w_dist[x]) {
+                    if (w_dist[x] == UNREACHED)
+                        touched[touched_n++] = x;
+                    w_dist[x] = nd;
+                    w_heap.insert(x, nd);
+                }
+            }
+        }
+    }
+
+
+    private void resetWitnessSearch()
+    {
+        for (int i = 0; i < touched_n; ++i) {
+            w_dist[touched[i]] = UNREACHED;
+        }
+        touched_n = 0;
+        while (!w_heap.isEmpty())
+            w_heap.removeMin();
+    }
+
+
+    /**
+     * Add edge {@code u -> w} or lower the weight of an existing one.
+     *
+     * @return {@code true} when the remaining graph changed
+     */
+    private boolean addEdge(int u, int w, int c, int mid)
+    {
+        for (int i = 0; i < out_n[u]; ++i) {
+            if (out_t[u][i] == w) {
+                if (out_w[u][i] <= c)
+                    return false;
+                out_w[u][i] = c;
+                out_m[u][i] = mid;
+                for (int j = 0; j < in_n[w]; ++j) {
+                    if (in_t[w][j] == u) {
+                        in_w[w][j] = c;
+                        in_m[w][j] = mid;
+                    }
+                }
+                return true;
+            }
+        }
+
+        if (out_n[u] == out_t[u].length) {
+            final int cap = Math.max(4, out_t[u].length * 2);
+            out_t[u] = Arrays.copyOf(out_t[u], cap);
+            out_w[u] = Arrays.copyOf(out_w[u], cap);
+            out_m[u] = Arrays.copyOf(out_m[u], cap);
+        }
+        out_t[u][out_n[u]] = w;
+        out_w[u][out_n[u]] = c;
+        out_m[u][out_n[u]] = mid;
+        ++out_n[u];
+
+        if (in_n[w] == in_t[w].length) {
+            final int cap = Math.max(4, in_t[w].length * 2);
+            in_t[w] = Arrays.copyOf(in_t[w], cap);
+            in_w[w] = Arrays.copyOf(in_w[w], cap);
+            in_m[w] = Arrays.copyOf(in_m[w], cap);
+        }
+        in_t[w][in_n[w]] = u;
+        in_w[w][in_n[w]] = c;
+        in_m[w][in_n[w]] = mid;
+        ++in_n[w];
+        return true;
+    }
+
+
+    private static void removeEdge(int[][] t, int[][] w, int[][] m, int[] num, int n, int other)
+    {
+        for (int i = 0; i < num[n]; ++i) {
+            if (t[n][i] == other) {
+                --num[n];
+                t[n][i] = t[n][num[n]];
+                w[n][i] = w[n][num[n]];
+                m[n][i] = m[n][num[n]];
+                return;
+            }
+        }
+    }
+
+
+    private ContractionHierarchy toHierarchy(int[] rank)
+    {
+        final int[] up_offset = new int[node_num + 1];
+        final int[] down_offset = new int[node_num + 1];
+        for (int n = 0; n < node_num; ++n) {
+            up_offset[n + 1] = up_offset[n] + up_t[n].length;
+            down_offset[n + 1] = down_offset[n] + down_t[n].length;
+        }
+
+        final int[] ut = new int[up_offset[node_num]];
+        final int[] uw = new int[ut.length];
+        final int[] um = new int[ut.length];
+        final int[] dt = new int[down_offset[node_num]];
+        final int[] dw = new int[dt.length];
+        final int[] dm = new int[dt.length];
+        for (int n = 0; n < node_num; ++n) {
+            System.arraycopy(up_t[n], 0, ut, up_offset[n], up_t[n].length);
+            System.arraycopy(up_w[n], 0, uw, up_offset[n], up_w[n].length);
+            System.arraycopy(up_m[n], 0, um, up_offset[n], up_m[n].length);
+            System.arraycopy(down_t[n], 0, dt, down_offset[n], down_t[n].length);
+            System.arraycopy(down_w[n], 0, dw, down_offset[n], down_w[n].length);
+            System.arraycopy(down_m[n], 0, dm, down_offset[n], down_m[n].length);
+            up_t[n] = up_w[n] = up_m[n] = down_t[n] = down_w[n] = down_m[n] = null;
+        }
+
+        return new ContractionHierarchy(new GraphChecksum(g, weighted), weighted, rank, up_offset, ut, uw, um, down_offset, dt, dw, dm);
+    }
+
+}
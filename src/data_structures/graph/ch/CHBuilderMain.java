@@ -0,0 +1,33 @@
+package data_structures.graph.ch;
+
+import java.io.IOException;
+
+import util.StopWatch;
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFactory;
+import data_structures.graph.InvalidGraphFormatException;
+
+public class CHBuilderMain
+{
+
+    public static void main(String[] args) throws InvalidGraphFormatException, IOException
+    {
+        if (args.length < 1) {
+            System.out.println("Parameters: <graph file>");
+            return;
+        }
+
+        final String graph_file = args[0];
+        final Graph g = GraphFactory.load(graph_file);
+
+        // one hierarchy per metric
+        for (boolean weighted : new boolean[] { false, true }) {
+            final StopWatch sw = new StopWatch().lap();
+            final ContractionHierarchy ch = new CHBuilder(g, weighted).build();
+            final String out_file = ContractionHierarchy.fileFor(graph_file, weighted);
+            ch.save(out_file);
+            System.out.println("Finished: " + out_file + " (in " + sw.lap().getLastInSecStr() + " sec)");
+        }
+    }
+
+}
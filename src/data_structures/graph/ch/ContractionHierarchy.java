@@ -0,0 +1,251 @@
+package data_structures.graph.ch;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+import data_structures.graph.Graph;
+import data_structures.graph.GraphChecksum;
+import data_structures.graph.GraphFile;
+import data_structures.graph.GraphFileWriter;
+import data_structures.graph.InvalidGraphFormatException;
+
+
+
+/**
+ * See {@link #ContractionHierarchy(String)}.
+ */
+public final class ContractionHierarchy
+{
+    /**
+     * Section IDs within a hierarchy file.
+     */
+    public static final int SECTION_METRIC      = 101,
+                            SECTION_RANK        = 102,
+                            SECTION_UP_OFFSET   = 103,
+                            SECTION_UP_TARGET   = 104,
+                            SECTION_UP_WEIGHT   = 105,
+                            SECTION_UP_MID      = 106,
+                            SECTION_DOWN_OFFSET = 107,
+                            SECTION_DOWN_TARGET = 108,
+                            SECTION_DOWN_WEIGHT = 109,
+                            SECTION_DOWN_MID    = 110,
+                            SECTION_GRAPH       = 111;
+
+    private final boolean weighted;
+    private final int     node_num;
+    /*
+     * Graph the hierarchy was built from, null for files written without it.
+     * verified is the last graph found to match, see matches(Graph).
+     */
+    private final GraphChecksum  graph;
+    private volatile Graph       verified = null;
+
+    private final IntBuffer rank;
+    /*
+     * Upward edges u -> v with rank[v] > rank[u], stored at u.
+     */
+    private final IntBuffer up_offset;
+    private final IntBuffer up_target;
+    private final IntBuffer up_weight;
+    private final IntBuffer up_mid;
+    /*
+     * Downward edges v -> u with rank[v] > rank[u], stored reversed at u (target = v).
+     */
+    private final IntBuffer down_offset;
+    private final IntBuffer down_target;
+    private final IntBuffer down_weight;
+    private final IntBuffer down_mid;
+
+
+    /**
+     * Load a hierarchy written by {@link #save(String)}, its sections stay mapped.
+     * <br><br>
+     * A contraction hierarchy assigns a rank to every node and adds shortcut edges
+     * such that every shortest path can be found by a search that only ascends in rank,
+     * from both the source (upward edges) and the target (downward edges, reversed).
+     * A shortcut {@code u -> v} replaces the path {@code u -> mid -> v}, original
+     * edges have {@code mid < 0} and keep the index of the graph edge they stand for,
+     * see {@link #originalEdge(int)}. See {@link CHBuilder} for the preprocessing and
+     * {@link path.search.CHDijkstra CHDijkstra} for queries.
+     * <br><br>
+     * Hierarchies are stored in the binary graph file format (see
+     * {@link GraphFile#GraphFile(String) GraphFile}) with their own sections,
+     * one file per metric next to the graph file, see {@link #fileFor(String, boolean)}.
+     * Along with them the {@link GraphChecksum} of the graph is stored, queries
+     * refuse other graphs, see {@link #matches(Graph)}.
+     *
+     * @param f hierarchy file
+     * @throws InvalidGraphFormatException
+     * @throws IOException
+     */
+    public ContractionHierarchy(String f) throws InvalidGraphFormatException, IOException
+    {
+        final GraphFile gf = new GraphFile(f);
+        try {
+            node_num = gf.getNodeCount();
+            final int up_num = gf.getInts(SECTION_UP_OFFSET, node_num + 1).get(node_num);
+            final int down_num = gf.getInts(SECTION_DOWN_OFFSET, node_num + 1).get(node_num);
+
+            weighted    = gf.getInts(SECTION_METRIC, 1).get(0) != 0;
+            rank        = gf.getInts(SECTION_RANK, node_num);
+            up_offset   = gf.getInts(SECTION_UP_OFFSET, node_num + 1);
+            up_target   = gf.getInts(SECTION_UP_TARGET, up_num);
+            up_weight   = gf.getInts(SECTION_UP_WEIGHT, up_num);
+            up_mid      = gf.getInts(SECTION_UP_MID, up_num);
+            down_offset = gf.getInts(SECTION_DOWN_OFFSET, node_num + 1);
+            down_target = gf.getInts(SECTION_DOWN_TARGET, down_num);
+            down_weight = gf.getInts(SECTION_DOWN_WEIGHT, down_num);
+            down_mid    = gf.getInts(SECTION_DOWN_MID, down_num);
+            graph       = GraphChecksum.read(gf, SECTION_GRAPH);
+        }
+        finally {
+            gf.close();
+        }
+    }
+
+
+    /**
+     * Wrap the arrays computed by {@link CHBuilder}.
+     */
+    ContractionHierarchy(GraphChecksum graph, boolean weighted, int[] rank,
+                         int[] up_offset, int[] up_target, int[] up_weight, int[] up_mid,
+                         int[] down_offset, int[] down_target, int[] down_weight, int[] down_mid)
+    {
+        this.graph       = graph;
+        this.weighted    = weighted;
+        this.node_num    = rank.length;
+        this.rank        = IntBuffer.wrap(rank);
+        this.up_offset   = IntBuffer.wrap(up_offset);
+        this.up_target   = IntBuffer.wrap(up_target);
+        this.up_weight   = IntBuffer.wrap(up_weight);
+        this.up_mid      = IntBuffer.wrap(up_mid);
+        this.down_offset = IntBuffer.wrap(down_offset);
+        this.down_target = IntBuffer.wrap(down_target);
+        this.down_weight = IntBuffer.wrap(down_weight);
+        this.down_mid    = IntBuffer.wrap(down_mid);
+    }
+
+
+    /**
+     * Location of the hierarchy file for graph file {@code graph} and the given metric.
+     */
+    public static String fileFor(String graph, boolean weighted)
+    {
+        return graph + (weighted ? ".ch_w" : ".ch");
+    }
+
+
+    /**
+     * Save the hierarchy, see {@link #ContractionHierarchy(String)}.
+     *
+     * @param f file location
+     */
+    public void save(String f) throws IOException
+    {
+        final GraphFileWriter w = new GraphFileWriter(f, node_num, up_target.limit() + down_target.limit(), 0, 0, 0, 0, 0)
+            .addSection(SECTION_METRIC,      new int[] { weighted ? 1 : 0 })
+            .addSection(SECTION_RANK,        rank)
+            .addSection(SECTION_UP_OFFSET,   up_offset)
+            .addSection(SECTION_UP_TARGET,   up_target)
+            .addSection(SECTION_UP_WEIGHT,   up_weight)
+            .addSection(SECTION_UP_MID,      up_mid)
+            .addSection(SECTION_DOWN_OFFSET, down_offset)
+            .addSection(SECTION_DOWN_TARGET, down_target)
+            .addSection(SECTION_DOWN_WEIGHT, down_weight)
+            .addSection(SECTION_DOWN_MID,    down_mid);
+        if (graph != null) {
+            graph.addTo(w, SECTION_GRAPH);
+        }
+        w.close();
+    }
+
+
+    /**
+     * Check the hierarchy was built from {@code g}, i.e. from the same edges
+     * with the same costs, by comparing their {@link GraphChecksum}. It's only
+     * computed (one pass over the edges) the first time {@code g} is checked.
+     *
+     * @return {@code false} also for files written without checksum
+     */
+    public boolean matches(Graph g)
+    {
+        if (verified == g)
+            return true;
+        if (graph == null || g.size() != node_num || !graph.equals(new GraphChecksum(g, weighted)))
+            return false;
+        verified = g;
+        return true;
+    }
+
+
+    public boolean isWeighted()          { return weighted; }
+    public int size()                    { return node_num; }
+    public int getRank(int n)            { return rank.get(n); }
+
+    public int upBegin(int n)            { return up_offset.get(n); }
+    public int upEnd(int n)              { return up_offset.get(n + 1); }
+    public int upTarget(int e)           { return up_target.get(e); }
+    public int upWeight(int e)           { return up_weight.get(e); }
+    public int upMid(int e)              { return up_mid.get(e); }
+
+    public int downBegin(int n)          { return down_offset.get(n); }
+    public int downEnd(int n)            { return down_offset.get(n + 1); }
+    public int downTarget(int e)         { return down_target.get(e); }
+    public int downWeight(int e)         { return down_weight.get(e); }
+    public int downMid(int e)            { return down_mid.get(e); }
+
+
+    /**
+     * @param mid middle node of a hierarchy edge, see {@link #upMid(int)} and {@link #downMid(int)}
+     * @return index of the graph edge an original hierarchy edge stands for, {@code -1} for
+     *         shortcuts and for hierarchies written without the edges ({@code mid == -1})
+     */
+    public static int originalEdge(int mid)
+    {
+        return mid < -1 ? -2 - mid : -1;
+    }
+
+
+    /**
+     * Inverse of {@link #originalEdge(int)}.
+     *
+     * @param e graph edge index
+     */
+    static int originalMid(int e)
+    {
+        return -2 - e;
+    }
+
+
+    /**
+     * Find the cheapest edge {@code from -> to} where {@code to} is of higher rank.
+     *
+     * @return edge index for {@link #upMid(int)} or {@code -1}
+     */
+    public int findUp(int from, int to)
+    {
+        int r = -1;
+        for (int e = upBegin(from); e < upEnd(from); ++e) {
+            if (upTarget(e) == to && (r < 0 || upWeight(e) < upWeight(r)))
+                r = e;
+        }
+        return r;
+    }
+
+
+    /**
+     * Find the cheapest edge {@code from -> to} where {@code from} is of higher rank.
+     *
+     * @return edge index for {@link #downMid(int)} or {@code -1}
+     */
+    public int findDown(int from, int to)
+    {
+        int r = -1;
+        for (int e = downBegin(to); e < downEnd(to); ++e) {
+            if (downTarget(e) == from && (r < 0 || downWeight(e) < downWeight(r)))
+                r = e;
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,311 @@
+package data_structures.graph.reorder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import util.FixedPoint;
+import data_structures.graph.ChunkedIntBuffer;
+import data_structures.graph.GraphFile;
+import data_structures.graph.GraphFileWriter;
+import data_structures.graph.InvalidGraphFormatException;
+import data_structures.graph.ReverseAdjacency;
+
+
+
+/**
+ * See {@link #GraphReorder(String)}.
+ */
+public final class GraphReorder
+{
+    /**
+     * Node orders, see {@link #order(int)}.
+     */
+    public static final int ORDER_HILBERT = 0,
+                            ORDER_BFS     = 1;
+
+    /**
+     * Cells per axis of the grid the Hilbert curve runs through, {@code 2^15}
+     * keeps the curve index below {@code 2^30}.
+     */
+    private static final int HILBERT_SIDE = 1 << 15;
+
+    private final GraphFile gf;
+    private final int    node_num;
+    private final int    edge_num;
+
+    private final double[] lat;
+    private final double[] lon;
+    private final int[]    offset;
+    private final int[]    target;
+
+
+    /**
+     * Renumber the nodes of a binary graph file so that nodes close to each other
+     * get close IDs.<br>
+     * The generator numbers nodes in hash map order, which is random with respect
+     * to geography: every access to the per-node arrays of a search ({@code lat},
+     * {@code offset}, distances, ...) then touches another cache line and page.
+     * After renumbering, the nodes a search settles one after another mostly lie
+     * in the same region of these arrays.
+     * <br><br>
+     * Two orders are available, see {@link #order(int)}. The edges of every
+     * node keep their order, only their targets are renumbered, and all other
+     * sections (non-routable nodes, names) are copied unchanged. Strongly connected
+     * component labels are permuted along.
+     * <br><br>
+     * Files derived from the graph and referring to node IDs (contraction
+     * hierarchies, landmarks) have to be rebuilt for the renumbered graph.
+     * This is an offline step, see {@link GraphReorderMain}.
+     *
+     * @param file graph file in the binary format, see {@link GraphFile#GraphFile(String) GraphFile}
+     * @throws InvalidGraphFormatException when {@code file} is not a binary graph file
+     */
+    public GraphReorder(String file) throws InvalidGraphFormatException, IOException
+    {
+        if (GraphFile.detectFormat(file) != GraphFile.FORMAT_BINARY) {
+            throw new InvalidGraphFormatException("Only binary graph files can be reordered, convert it first");
+        }
+        gf = new GraphFile(file);
+        node_num = gf.getNodeCount();
+        edge_num = gf.getEdgeCount();
+
+        lat = gf.getCoordinates(GraphFile.SECTION_LAT, node_num);
+        lon = gf.getCoordinates(GraphFile.SECTION_LON, node_num);
+        offset = new int[node_num + 1];
+        target = new int[edge_num];
+        gf.getChunkedInts(GraphFile.SECTION_OFFSET, node_num + 1).get(offset);
+        gf.getChunkedInts(GraphFile.SECTION_TARGET, edge_num).get(target);
+    }
+
+
+    /**
+     * Compute a new node order.
+     * <ul>
+     * <li>{@code ORDER_HILBERT}: nodes sorted by their position on a Hilbert curve
+     *     through the bounding rectangle, which preserves locality in both directions.
+     * <li>{@code ORDER_BFS}: breadth-first search along the edges, new roots are
+     *     taken in Hilbert order. Neighbors in the graph get even closer IDs.
+     * </ul>
+     *
+     * @param kind one of {@code ORDER_*}
+     * @return old node ID for every new ID
+     * @throws RuntimeException when {@code kind} is unknown
+     */
+    public int[] order(int kind)
+    {
+        switch (kind) {
+            case ORDER_HILBERT:
+                return hilbertOrder();
+            case ORDER_BFS:
+                return bfsOrder(hilbertOrder());
+            default:
+                throw new RuntimeException("Unknown node order " + kind);
+        }
+    }
+
+
+    private int[] hilbertOrder()
+    {
+        final double lat_span = Math.max(gf.getMaxLat() - gf.getMinLat(), 1e-9);
+        final double lon_span = Math.max(gf.getMaxLon() - gf.getMinLon(), 1e-9);
+
+        final long[] key = new long[node_num];
+        for (int n = 0; n < node_num; ++n) {
+            final int x = cell((lon[n] - gf.getMinLon()) / lon_span);
+            final int y = cell((lat[n] - gf.getMinLat()) / lat_span);
+            key[n] = ((long) hilbertIndex(x, y) << 32) | n;
+        }
+        Arrays.sort(key);
+
+        final int[] r = new int[node_num];
+        for (int i = 0; i < node_num; ++i) {
+            r[i] = (int) key[i];
+        }
+        return r;
+    }
+
+
+    private static int cell(double f)
+    {
+        return Math.max(0, Math.min(HILBERT_SIDE - 1, (int) (f * HILBERT_SIDE)));
+    }
+
+
+    /**
+     * @return distance of cell {@code (x, y)} along the Hilbert curve
+     */
+    static int hilbertIndex(int x, int y)
+    {
+        int d = 0;
+        for (int s = HILBERT_SIDE / 2; s > 0; s /= 2) {
+            final int rx = (x & s) > 0 ? 1 : 0;
+            final int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                final int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+
+    /**
+     * @param roots candidates for starting a new search, in this order
+     */
+    private int[] bfsOrder(int[] roots)
+    {
+        final boolean[] visited = new boolean[node_num];
+        final int[] r = new int[node_num];
+        int head = 0;
+        int tail = 0;
+
+        for (int root : roots) {
+            if (visited[root])
+                continue;
+            visited[root] = true;
+            r[tail++] = root;
+
+            // r doubles as queue
+            while (head < tail) {
+                final int u = r[head++];
+                for (int e = offset[u]; e < offset[u + 1]; ++e) {
+                    final int v = target[e];
+                    if (!visited[v]) {
+                        visited[v] = true;
+                        r[tail++] = v;
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+
+    /**
+     * Write the graph with nodes renumbered according to {@code order} to {@code out}.
+     *
+     * @param order old node ID for every new ID, e.g. as returned by {@link #order(int)}
+     * @throws RuntimeException when {@code order} is not a permutation of all nodes
+     */
+    public void write(String out, int[] order) throws InvalidGraphFormatException, IOException
+    {
+        final int[] rank = rank(order);
+
+        final double[] n_lat = new double[node_num];
+        final double[] n_lon = new double[node_num];
+        final int[] n_offset = new int[node_num + 1];
+        final int[] n_target = new int[edge_num];
+        final int[] n_dist = new int[edge_num];
+        final int[] n_dist_w = new int[edge_num];
+
+        final int[] dist = new int[edge_num];
+        final int[] dist_w = new int[edge_num];
+        gf.getChunkedInts(GraphFile.SECTION_DIST, edge_num).get(dist);
+        gf.getChunkedInts(GraphFile.SECTION_DIST_W, edge_num).get(dist_w);
+        final boolean has_type = gf.hasSection(GraphFile.SECTION_TYPE);
+        final byte[] type = new byte[has_type ? edge_num : 0];
+        if (has_type) {
+            gf.getBytes(GraphFile.SECTION_TYPE, edge_num).get(type);
+        }
+        final byte[] n_type = new byte[type.length];
+
+        for (int n = 0; n < node_num; ++n) {
+            final int old = order[n];
+            n_lat[n] = lat[old];
+            n_lon[n] = lon[old];
+
+            int k = n_offset[n];
+            for (int e = offset[old]; e < offset[old + 1]; ++e, ++k) {
+                n_target[k] = rank[target[e]];
+                n_dist[k] = dist[e];
+                n_dist_w[k] = dist_w[e];
+                if (has_type)
+                    n_type[k] = type[e];
+            }
+            n_offset[n + 1] = k;
+        }
+
+        final int tours = gf.getTourismNodeCount();
+        final GraphFileWriter w = new GraphFileWriter(out, node_num, edge_num, tours,
+                                                      gf.getMinLat(), gf.getMaxLat(), gf.getMinLon(), gf.getMaxLon());
+        // coordinates in the format of the input, converting fixed-point values back is exact
+        if (gf.hasFixedCoordinates()) {
+            w.addSection(GraphFile.SECTION_LAT_FIXED,  FixedPoint.toFixed(n_lat))
+             .addSection(GraphFile.SECTION_LON_FIXED,  FixedPoint.toFixed(n_lon))
+             .addSection(GraphFile.SECTION_NLAT_FIXED, gf.getInts(GraphFile.SECTION_NLAT_FIXED, tours))
+             .addSection(GraphFile.SECTION_NLON_FIXED, gf.getInts(GraphFile.SECTION_NLON_FIXED, tours));
+        }
+        else {
+            w.addSection(GraphFile.SECTION_LAT,  n_lat)
+             .addSection(GraphFile.SECTION_LON,  n_lon)
+             .addSection(GraphFile.SECTION_NLAT, gf.getDoubles(GraphFile.SECTION_NLAT, tours))
+             .addSection(GraphFile.SECTION_NLON, gf.getDoubles(GraphFile.SECTION_NLON, tours));
+        }
+        w.addSection(GraphFile.SECTION_OFFSET, n_offset)
+         .addSection(GraphFile.SECTION_TARGET, n_target)
+         .addSection(GraphFile.SECTION_DIST,   n_dist)
+         .addSection(GraphFile.SECTION_DIST_W, n_dist_w)
+         .addSection(GraphFile.SECTION_TOUR,   gf.getBytes(GraphFile.SECTION_TOUR, tours))
+         .addSection(GraphFile.SECTION_NAME_OFFS, gf.getInts(GraphFile.SECTION_NAME_OFFS, tours + 1))
+         .addSection(GraphFile.SECTION_NAME_DATA, gf.getSection(GraphFile.SECTION_NAME_DATA));
+
+        if (has_type) {
+            w.addSection(GraphFile.SECTION_TYPE, n_type);
+        }
+        if (gf.hasSection(GraphFile.SECTION_SCC) && gf.hasSection(GraphFile.SECTION_SCC_WEAK)
+                && gf.hasSection(GraphFile.SECTION_SCC_ORDER)) {
+            final int[] scc = new int[node_num];
+            gf.getChunkedInts(GraphFile.SECTION_SCC, node_num).get(scc);
+            final int[] n_scc = new int[node_num];
+            for (int n = 0; n < node_num; ++n) {
+                n_scc[n] = scc[order[n]];
+            }
+            w.addSection(GraphFile.SECTION_SCC, n_scc)
+             .addSection(GraphFile.SECTION_SCC_WEAK, gf.getSection(GraphFile.SECTION_SCC_WEAK))
+             .addSection(GraphFile.SECTION_SCC_ORDER, gf.getSection(GraphFile.SECTION_SCC_ORDER));
+        }
+        new ReverseAdjacency(node_num, ChunkedIntBuffer.wrap(n_offset), ChunkedIntBuffer.wrap(n_target)).addTo(w)
+            .close();
+    }
+
+
+    /**
+     * @return new node ID for every old ID
+     * @throws RuntimeException when {@code order} is not a permutation of all nodes
+     */
+    public int[] rank(int[] order)
+    {
+        if (order.length != node_num) {
+            throw new RuntimeException("Order does not match graph");
+        }
+        final int[] r = new int[node_num];
+        Arrays.fill(r, -1);
+        for (int n = 0; n < node_num; ++n) {
+            if (r[order[n]] != -1) {
+                throw new RuntimeException("Node " + order[n] + " appears twice in order");
+            }
+            r[order[n]] = n;
+        }
+        return r;
+    }
+
+
+    public void close() throws IOException
+    {
+        gf.close();
+    }
+
+
+    public int size()
+    {
+        return node_num;
+    }
+
+}
@@ -0,0 +1,78 @@
+package data_structures.graph.reorder;
+
+import java.io.IOException;
+import java.util.Random;
+
+import path.search.Dijkstra;
+import util.StopWatch;
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFactory;
+import data_structures.graph.InvalidGraphFormatException;
+
+public class GraphReorderMain
+{
+
+    public static void main(String[] args) throws InvalidGraphFormatException, IOException
+    {
+        if (args.length < 2) {
+            System.out.println("Parameters: <graph file> <output file> [hilbert|bfs] [<queries>]");
+            return;
+        }
+
+        final String in_file = args[0];
+        final String out_file = args[1];
+        final int kind = args.length > 2 && args[2].equals("bfs") ? GraphReorder.ORDER_BFS : GraphReorder.ORDER_HILBERT;
+        final int queries = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        final StopWatch sw = new StopWatch().lap();
+        final GraphReorder r = new GraphReorder(in_file);
+        final int[] order = r.order(kind);
+        final int[] rank = r.rank(order);
+        r.write(out_file, order);
+        r.close();
+        System.out.println("Finished: " + out_file + " (in " + sw.lap().getLastInSecStr() + " sec)");
+        System.out.println("Contraction hierarchies and landmarks have to be rebuilt for it");
+
+        // the same queries on both graphs, mapped to the new node IDs
+        final Random rnd = new Random(1);
+        final int[] src = new int[queries];
+        final int[] dst = new int[queries];
+        for (int i = 0; i < queries; ++i) {
+            src[i] = rnd.nextInt(order.length);
+            dst[i] = rnd.nextInt(order.length);
+        }
+
+        System.out.println("before: " + benchmark(GraphFactory.load(in_file, GraphFactory.REPRESENTATION_ARRAY), src, dst, null));
+        System.out.println("after:  " + benchmark(GraphFactory.load(out_file, GraphFactory.REPRESENTATION_ARRAY), src, dst, rank));
+    }
+
+
+    /**
+     * Run one {@link Dijkstra} query per pair, once to warm up and once measured.
+     *
+     * @param rank new ID of every node ID in {@code src} and {@code dst}, {@code null} for none
+     * @return settled nodes per second
+     */
+    private static String benchmark(Graph g, int[] src, int[] dst, int[] rank)
+    {
+        final Dijkstra d = new Dijkstra(g, true);
+        long settled = 0;
+        long nanos = 0;
+
+        for (int round = 0; round < 2; ++round) {
+            settled = 0;
+            nanos = 0;
+            for (int i = 0; i < src.length; ++i) {
+                final int s = rank != null ? rank[src[i]] : src[i];
+                final int t = rank != null ? rank[dst[i]] : dst[i];
+                final long start = System.nanoTime();
+                d.pathFromTo(s, t);
+                nanos += System.nanoTime() - start;
+                settled += d.getSettledCount();
+            }
+        }
+        return String.format("%d nodes settled in %.3f sec, %.0f nodes/sec",
+                             settled, nanos / 1e9, settled / (nanos / 1e9));
+    }
+
+}
@@ -2,11 +2,15 @@ package data_structures.grid;
 
 import java.awt.Color;
 import java.io.Serializable;
+import java.util.Arrays;
 
+import data_structures.graph.ChunkedDoubleBuffer;
+import data_structures.graph.ChunkedIntBuffer;
 import gui.MainWindow;
 import gui.overlay.OverlayAggregate;
 import gui.overlay.OverlayElement;
 import util.Distance;
+import util.FixedPoint;
 
 
 
@@ -25,13 +29,31 @@ public class LookupGrid implements Serializable
     private final int    LON_CELLS;
     private final double LAT_CELL_SIZE;
     private final double LON_CELL_SIZE;
+    /**
+     * Smaller side of a cell in meters, anywhere in the grid.
+     */
+    private final double MIN_CELL_METERS;
     private final int    ADDITIONAL_RINGS = 3;
 
     private final int[] grid;
     private final int[] grid_offset;
+    /**
+     * IDs of the indexed nodes, {@code null} when all nodes are indexed.
+     */
+    private final int[] subset;
     
-    private final double lat_ref[];
-    private final double lon_ref[];
+    private final ChunkedDoubleBuffer lat_ref;
+    private final ChunkedDoubleBuffer lon_ref;
+    /*
+     * Fixed-point coordinates instead of lat_ref/lon_ref, see FixedPoint.
+     * Cells are then computed in fixed-point units.
+     */
+    private final ChunkedIntBuffer    lat_fixed;
+    private final ChunkedIntBuffer    lon_fixed;
+    private final int          min_lat_fixed;
+    private final int          min_lon_fixed;
+    private final int          LAT_CELL_FIXED;
+    private final int          LON_CELL_FIXED;
 
     private final double minLat;
     private final double maxLat;
@@ -80,10 +102,67 @@ public class LookupGrid implements Serializable
      */
     public LookupGrid(double[] lat, double[] lon, double minLat, double maxLat, double minLon, double maxLon) throws InvalidCoordinateArraysException
     {
-        if (lat.length != lon.length) {
+        this(ChunkedDoubleBuffer.wrap(lat), ChunkedDoubleBuffer.wrap(lon), minLat, maxLat, minLon, maxLon);
+    }
+    
+    
+    /**
+     * See {@link #LookupGrid(double[], double[], double, double, double, double) LookupGrid}.
+     * <br>
+     * Reads the coordinates through the passed buffers (starting at index 0) instead of arrays,
+     * e.g. for graphs kept in off-heap memory. Only the grid itself is allocated on the heap.
+     * 
+     * @throws InvalidCoordinateArraysException when {@code lat.size() != lon.size()} or {@code lat.size() < 1}
+     */
+    public LookupGrid(ChunkedDoubleBuffer lat, ChunkedDoubleBuffer lon, double minLat, double maxLat, double minLon, double maxLon) throws InvalidCoordinateArraysException
+    {
+        this(lat, lon, null, minLat, maxLat, minLon, maxLon);
+    }
+    
+    
+    /**
+     * See {@link #LookupGrid(double[], double[], double, double, double, double) LookupGrid}.
+     * <br>
+     * Only index the nodes in {@code subset}, e.g. the nodes of a certain connected component.
+     * Lookups return the original node IDs, the grid is sized for the subset.
+     * 
+     * @param subset IDs of the nodes to index, {@code null} for all nodes
+     * @throws InvalidCoordinateArraysException when {@code lat.size() != lon.size()} or the subset is empty
+     */
+    public LookupGrid(ChunkedDoubleBuffer lat, ChunkedDoubleBuffer lon, int[] subset, double minLat, double maxLat, double minLon, double maxLon) throws InvalidCoordinateArraysException
+    {
+        this(lat, lon, null, null, subset, minLat, maxLat, minLon, maxLon);
+    }
+    
+    
+    /**
+     * See {@link #LookupGrid(ChunkedDoubleBuffer, ChunkedDoubleBuffer, int[], double, double, double, double) LookupGrid}.
+     * <br>
+     * Reads fixed-point coordinates (see {@link FixedPoint}) instead, e.g. of graphs storing
+     * them so. Cells are computed in integer arithmetic, queries still take degrees.
+     * 
+     * @param minLat bounds in decimal degrees
+     * @throws InvalidCoordinateArraysException when {@code lat.size() != lon.size()} or the subset is empty
+     */
+    public LookupGrid(ChunkedIntBuffer lat, ChunkedIntBuffer lon, int[] subset, double minLat, double maxLat, double minLon, double maxLon) throws InvalidCoordinateArraysException
+    {
+        this(null, null, lat, lon, subset, minLat, maxLat, minLon, maxLon);
+    }
+    
+    
+    /**
+     * Either {@code lat}, {@code lon} or {@code lat_f}, {@code lon_f} are {@code null}.
+     */
+    private LookupGrid(ChunkedDoubleBuffer lat, ChunkedDoubleBuffer lon, ChunkedIntBuffer lat_f, ChunkedIntBuffer lon_f, int[] subset,
+                       double minLat, double maxLat, double minLon, double maxLon) throws InvalidCoordinateArraysException
+    {
+        final int limit = lat != null ? lat.size() : lat_f.size();
+        if (limit != (lon != null ? lon.size() : lon_f.size())) {
             throw new InvalidCoordinateArraysException("array length differs");
         }
-        if (lat.length < 1) {
+        this.subset = subset;
+        final int size = subset != null ? subset.length : limit;
+        if (size < 1) {
             throw new InvalidCoordinateArraysException("too few elements");
         }
 
@@ -93,21 +172,40 @@ public class LookupGrid implements Serializable
         this.maxLon = maxLon;
         lat_ref = lat;
         lon_ref = lon;
+        lat_fixed = lat_f;
+        lon_fixed = lon_f;
         
         // determine grid sizes (amount of cells)
-        final int m = (int) Math.ceil(lat_ref.length * GRID_FACTOR);
+        final int m = (int) Math.ceil(size * GRID_FACTOR);
         // try to get the width and height reasonably square
         LAT_CELLS = Math.max(1, (int) Math.ceil(m * (maxLon - minLon) / (maxLat - minLat)));
         LON_CELLS = Math.max(1, m);
         
-        LAT_CELL_SIZE = (maxLat - minLat) / LAT_CELLS;
-        LON_CELL_SIZE = (maxLon - minLon) / LON_CELLS;
+        if (lat_fixed != null) {
+            // whole units per cell, the cells cover the bounds including the maximum
+            min_lat_fixed = FixedPoint.toFixed(minLat);
+            min_lon_fixed = FixedPoint.toFixed(minLon);
+            LAT_CELL_FIXED = (int) Math.ceil(((long) FixedPoint.toFixed(maxLat) - min_lat_fixed + 1) / (double) LAT_CELLS);
+            LON_CELL_FIXED = (int) Math.ceil(((long) FixedPoint.toFixed(maxLon) - min_lon_fixed + 1) / (double) LON_CELLS);
+            LAT_CELL_SIZE = FixedPoint.toDegrees(LAT_CELL_FIXED);
+            LON_CELL_SIZE = FixedPoint.toDegrees(LON_CELL_FIXED);
+        }
+        else {
+            min_lat_fixed = min_lon_fixed = 0;
+            LAT_CELL_FIXED = LON_CELL_FIXED = 0;
+            LAT_CELL_SIZE = (maxLat - minLat) / LAT_CELLS;
+            LON_CELL_SIZE = (maxLon - minLon) / LON_CELLS;
+        }
+        // cells are narrowest at the latitude farthest from the equator
+        final double far_lat = Math.max(Math.abs(minLat), Math.abs(maxLat));
+        MIN_CELL_METERS = Math.min(Distance.haversine(minLat, minLon, minLat + LAT_CELL_SIZE, minLon),
+                                   Distance.haversine(far_lat, minLon, far_lat, minLon + LON_CELL_SIZE));
 
         //System.out.println("LAT_CELLS = " + LAT_CELLS);
         //System.out.println("LON_CELLS = " + LON_CELLS);
         
         // create grid arrays and fill them
-        grid = new int[lon_ref.length];
+        grid = new int[size];
         grid_offset = new int[LAT_CELLS * LON_CELLS + 1];
         buildGrid();
     }
@@ -132,11 +230,10 @@ public class LookupGrid implements Serializable
         final int[] count = new int[LAT_CELLS * LON_CELLS];
         
         // first pass
-        for (int i = 0; i < lon_ref.length; ++i)
+        for (int k = 0; k < grid.length; ++k)
         {
-            int lat_cell = lat_ref[i] == maxLat ? LAT_CELLS - 1 : (int) ((lat_ref[i] - minLat) / LAT_CELL_SIZE);
-            int lon_cell = lon_ref[i] == maxLon ? LON_CELLS - 1 : (int) ((lon_ref[i] - minLon) / LON_CELL_SIZE);
-            count[lat_cell * LON_CELLS + lon_cell] += 1;
+            final int i = subset != null ? subset[k] : k;
+            count[nodeCell(i)] += 1;
         }
         
         // build offset array
@@ -146,16 +243,47 @@ public class LookupGrid implements Serializable
         }
         
         // second pass
-        for (int i = 0; i < lon_ref.length; ++i)
+        for (int k = 0; k < grid.length; ++k)
         {
-            int lat_cell = lat_ref[i] == maxLat ? LAT_CELLS - 1 : (int) ((lat_ref[i] - minLat) / LAT_CELL_SIZE);
-            int lon_cell = lon_ref[i] == maxLon ? LON_CELLS - 1 : (int) ((lon_ref[i] - minLon) / LON_CELL_SIZE);
-            int pos = grid_offset[lat_cell * LON_CELLS + lon_cell] + (count[lat_cell * LON_CELLS + lon_cell]-- - 1);
+            final int i = subset != null ? subset[k] : k;
+            final int c = nodeCell(i);
+            int pos = grid_offset[c] + (count[c]-- - 1);
             grid[pos] = i;
         }
     }
     
     
+    private double lat(int n)
+    {
+        return lat_ref != null ? lat_ref.get(n) : FixedPoint.toDegrees(lat_fixed.get(n));
+    }
+    
+    
+    private double lon(int n)
+    {
+        return lon_ref != null ? lon_ref.get(n) : FixedPoint.toDegrees(lon_fixed.get(n));
+    }
+    
+    
+    /**
+     * @return index of the cell containing node {@code n}
+     */
+    private int nodeCell(int n)
+    {
+        if (lat_fixed != null) {
+            return fixedCell(lat_fixed.get(n), min_lat_fixed, LAT_CELL_FIXED, LAT_CELLS) * LON_CELLS
+                 + fixedCell(lon_fixed.get(n), min_lon_fixed, LON_CELL_FIXED, LON_CELLS);
+        }
+        return latCell(lat_ref.get(n)) * LON_CELLS + lonCell(lon_ref.get(n));
+    }
+    
+    
+    private static int fixedCell(int f, int min, int cell_size, int cells)
+    {
+        return Math.max(0, Math.min(cells - 1, (int) ((f - (long) min) / cell_size)));
+    }
+    
+    
     private int searchMinInCell(double lat, double lon, int lat_cell, int lon_cell, int last_min_id)
     {
         if (lat_cell < 0 || lon_cell < 0 || lat_cell >= LAT_CELLS || lon_cell >= LON_CELLS) {
@@ -164,13 +292,13 @@ public class LookupGrid implements Serializable
         
 
         int min_id = last_min_id < 0 ? -1 : last_min_id;
-        double min_dist = last_min_id > -1 ? Distance.haversine(lat, lon, lat_ref[last_min_id], lon_ref[last_min_id]) : Double.MAX_VALUE;
+        double min_dist = last_min_id > -1 ? Distance.haversine(lat, lon, lat(last_min_id), lon(last_min_id)) : Double.MAX_VALUE;
         
         final int index = lat_cell * LON_CELLS + lon_cell;
         for (int i = 0; i < grid_offset[index + 1] - grid_offset[index]; ++i)
         {
             final int pos = grid[grid_offset[index] + i];
-            final double dist = Distance.haversine(lat, lon, lat_ref[pos], lon_ref[pos]);
+            final double dist = Distance.haversine(lat, lon, lat(pos), lon(pos));
             
             if (dist < min_dist) {
                 min_dist = dist;
@@ -189,7 +317,7 @@ public class LookupGrid implements Serializable
             for (int i = 0; i < grid_offset[e + 1] - grid_offset[e]; ++i)
             {
                 final int pos = grid[grid_offset[e] + i];
-                oa.addPoint(new OverlayElement(lat_ref[pos], lon_ref[pos], c[vis_i % c.length], 2));
+                oa.addPoint(new OverlayElement(lat(pos), lon(pos), c[vis_i % c.length], 2));
             }
             win.addOverlay(oa);
         }
@@ -231,8 +359,8 @@ public class LookupGrid implements Serializable
             return -1;
         }
         
-        final int lat_center = lat == maxLat ? LAT_CELLS - 1 : (int) ((lat - minLat) / LAT_CELL_SIZE);
-        final int lon_center = lon == maxLon ? LON_CELLS - 1 : (int) ((lon - minLon) / LON_CELL_SIZE);
+        final int lat_center = latCell(lat);
+        final int lon_center = lonCell(lon);
         
         /*
          * search in expanding rings, originating from (lat_center, lon_center)
@@ -301,6 +429,164 @@ public class LookupGrid implements Serializable
     }
     
     
+    private int latCell(double lat)
+    {
+        if (lat_fixed != null)
+            return fixedCell(FixedPoint.toFixed(lat), min_lat_fixed, LAT_CELL_FIXED, LAT_CELLS);
+        return Math.max(0, Math.min(LAT_CELLS - 1, (int) ((lat - minLat) / LAT_CELL_SIZE)));
+    }
+    
+    
+    private int lonCell(double lon)
+    {
+        if (lon_fixed != null)
+            return fixedCell(FixedPoint.toFixed(lon), min_lon_fixed, LON_CELL_FIXED, LON_CELLS);
+        return Math.max(0, Math.min(LON_CELLS - 1, (int) ((lon - minLon) / LON_CELL_SIZE)));
+    }
+    
+    
+    /**
+     * Search the {@code k} nodes closest to {@code (lat, lon)}, exactly.<br>
+     * Cells are searched in expanding rings like in {@link #getNearestNode(double, double)},
+     * but the search only stops once the ring is farther away than the {@code k}'th
+     * closest node found so far: nodes in cells beyond cannot be closer.
+     * 
+     * @return IDs of at most {@code k} nodes ordered by increasing distance,
+     *         empty when {@code (lat, lon)} is outside of this grid
+     */
+    public int[] kNearest(double lat, double lon, int k)
+    {
+        if (k < 1 || lat < minLat || lat > maxLat || lon < minLon || lon > maxLon) {
+            return new int[0];
+        }
+        
+        // max-heap of the k closest nodes found so far
+        final int[] id = new int[Math.min(k, grid.length)];
+        final double[] dist = new double[id.length];
+        int num = 0;
+        
+        final int lat_center = latCell(lat);
+        final int lon_center = lonCell(lon);
+        
+        for (int ring = 0; ring <= Math.max(LAT_CELLS, LON_CELLS); ++ring) {
+            for (int a = lat_center - ring; a <= lat_center + ring; ++a) {
+                if (a < 0 || a >= LAT_CELLS)
+                    continue;
+                // full row on the top and bottom of the ring, both ends otherwise
+                final int step = (a == lat_center - ring || a == lat_center + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int o = lon_center - ring; o <= lon_center + ring; o += step) {
+                    if (o < 0 || o >= LON_CELLS)
+                        continue;
+                    
+                    final int c = a * LON_CELLS + o;
+                    for (int i = grid_offset[c]; i < grid_offset[c + 1]; ++i) {
+                        final int n = grid[i];
+                        final double d = Distance.haversine(lat, lon, lat(n), lon(n));
+                        if (num < id.length) {
+                            id[num] = n;
+                            dist[num] = d;
+                            siftUp(id, dist, num++);
+                        }
+                        else if (d < dist[0]) {
+                            id[0] = n;
+                            dist[0] = d;
+                            siftDown(id, dist, num);
+                        }
+                    }
+                }
+            }
+            
+            // everything outside this ring is at least ring * cell size away
+            if (num == id.length && dist[0] <= ring * MIN_CELL_METERS) {
+                break;
+            }
+        }
+        
+        // heap order to increasing distance
+        final int[] r = new int[num];
+        for (int i = num - 1; i >= 0; --i) {
+            r[i] = id[0];
+            id[0] = id[i];
+            dist[0] = dist[i];
+            siftDown(id, dist, i);
+        }
+        return r;
+    }
+    
+    
+    private static void siftUp(int[] id, double[] dist, int i)
+    {
+        while (i > 0) {
+            final int p = (i - 1) / 2;
+            if (dist[p] >= dist[i])
+                break;
+            swap(id, dist, i, p);
+            i = p;
+        }
+    }
+    
+    
+    private static void siftDown(int[] id, double[] dist, int size)
+    {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int c = 2 * i + 1;
+            if (c + 1 < size && dist[c + 1] > dist[c])
+                ++c;
+            if (dist[i] >= dist[c])
+                break;
+            swap(id, dist, i, c);
+            i = c;
+        }
+    }
+    
+    
+    private static void swap(int[] id, double[] dist, int a, int b)
+    {
+        final int ti = id[a]; id[a] = id[b]; id[b] = ti;
+        final double td = dist[a]; dist[a] = dist[b]; dist[b] = td;
+    }
+    
+    
+    /**
+     * Search all nodes closer than {@code meters} to {@code (lat, lon)}.<br>
+     * Only the cells overlapping the bounding rectangle of the circle are searched.
+     * 
+     * @return IDs of the nodes found in no particular order
+     */
+    public int[] withinRadius(double lat, double lon, double meters)
+    {
+        final int m = (int) Math.ceil(meters);
+        final double lat_lo = Distance.translateLat(lat, -m);
+        final double lat_hi = Distance.translateLat(lat,  m);
+        // the circle is widest at the latitude closest to the pole
+        final double wide_lat = Math.abs(lat_lo) > Math.abs(lat_hi) ? lat_lo : lat_hi;
+        final double lon_lo = Distance.translateLon(lon, -m, wide_lat);
+        final double lon_hi = Distance.translateLon(lon,  m, wide_lat);
+        
+        if (lat_hi < minLat || lat_lo > maxLat || lon_hi < minLon || lon_lo > maxLon) {
+            return new int[0];
+        }
+        
+        int[] r = new int[16];
+        int num = 0;
+        for (int a = latCell(lat_lo); a <= latCell(lat_hi); ++a) {
+            for (int o = lonCell(lon_lo); o <= lonCell(lon_hi); ++o) {
+                final int c = a * LON_CELLS + o;
+                for (int i = grid_offset[c]; i < grid_offset[c + 1]; ++i) {
+                    final int n = grid[i];
+                    if (Distance.haversine(lat, lon, lat(n), lon(n)) < meters) {
+                        if (num == r.length)
+                            r = Arrays.copyOf(r, 2 * num);
+                        r[num++] = n;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(r, num);
+    }
+    
+    
     /**
      * Compute the minimum over the passed array.
      * 
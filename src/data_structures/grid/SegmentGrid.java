@@ -0,0 +1,317 @@
+package data_structures.grid;
+
+import data_structures.graph.Graph;
+
+
+
+/**
+ * See {@link #SegmentGrid(Graph, boolean)}.
+ */
+public class SegmentGrid
+{
+    /**
+     * Average number of segments per cell the grid is sized for.
+     */
+    private final int    SEGMENTS_PER_CELL = 8;
+    private final int    MAX_CELLS = 1 << 24;
+    private static final double METERS_PER_DEGREE = 6371000 * Math.PI / 180;
+
+    private final Graph  g;
+
+    /*
+     * Indexed segments: the seg_edge'th edge of seg_from
+     */
+    private final int[]  seg_from;
+    private final int[]  seg_edge;
+
+    /*
+     * Segments overlapping every cell, CSR like LookupGrid
+     */
+    private final int[]  grid;
+    private final int[]  grid_offset;
+
+    private final int    LAT_CELLS;
+    private final int    LON_CELLS;
+    private final double LAT_CELL_SIZE;
+    private final double LON_CELL_SIZE;
+    /**
+     * Smaller side of a cell in meters, anywhere in the grid.
+     */
+    private final double min_cell_meters;
+
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+
+
+    /**
+     * Fast lookup for "get the nearest point on any road to point (x, y)" queries.<br>
+     * Unlike {@link LookupGrid}, which returns the nearest node, the segments (edges)
+     * of {@code graph} are indexed: a location next to a long road is snapped onto
+     * the road itself instead of onto one of its possibly far away ends.
+     * <br><br>
+     * The grid divides the bounding rectangle of the graph into (roughly square)
+     * cells, every segment is listed in each cell it passes through (not each cell of
+     * its bounding rectangle, which grows quadratically with the length of diagonal
+     * segments). Of two opposing edges only one is indexed.
+     * <br><br>
+     * This class is effectively final, getters don't have side effects and
+     * get by without locking.
+     *
+     * @param graph
+     * @param mainComponent only index segments of the largest strongly connected component
+     *        (see {@link Graph#getComponent(int)})?
+     */
+    public SegmentGrid(Graph graph, boolean mainComponent)
+    {
+        g = graph;
+
+        final double[] la = g.getBoundingRectLat();
+        final double[] lo = g.getBoundingRectLon();
+        minLat = la[2];
+        maxLat = la[0];
+        minLon = lo[1];
+        maxLon = lo[0];
+
+        // select segments
+        int num = 0;
+        for (int n = 0; n < g.size(); ++n) {
+            for (int i = 0, v; (v = g.getIthNeighbor(n, i)) != -1; ++i) {
+                if (indexed(n, v, mainComponent))
+                    ++num;
+            }
+        }
+        seg_from = new int[num];
+        seg_edge = new int[num];
+        num = 0;
+        for (int n = 0; n < g.size(); ++n) {
+            for (int i = 0, v; (v = g.getIthNeighbor(n, i)) != -1; ++i) {
+                if (indexed(n, v, mainComponent)) {
+                    seg_from[num] = n;
+                    seg_edge[num++] = i;
+                }
+            }
+        }
+
+        // size the grid, cells are square at the center of the graph
+        final double height = Math.max(1, (maxLat - minLat) * METERS_PER_DEGREE);
+        final double width = Math.max(1, (maxLon - minLon) * METERS_PER_DEGREE
+                                         * Math.cos(Math.toRadians((minLat + maxLat) / 2)));
+        final double cells = Math.min(MAX_CELLS, Math.max(1, num / SEGMENTS_PER_CELL));
+        final double side = Math.sqrt(height * width / cells);
+        LAT_CELLS = Math.max(1, Math.min((int) Math.ceil(height / side), MAX_CELLS));
+        LON_CELLS = Math.max(1, Math.min((int) Math.ceil(width / side), MAX_CELLS / LAT_CELLS));
+        LAT_CELL_SIZE = (maxLat - minLat) / LAT_CELLS;
+        LON_CELL_SIZE = (maxLon - minLon) / LON_CELLS;
+
+        final double max_abs_lat = Math.min(90, Math.max(Math.abs(minLat), Math.abs(maxLat)));
+        min_cell_meters = Math.min(LAT_CELL_SIZE * METERS_PER_DEGREE,
+                                   LON_CELL_SIZE * METERS_PER_DEGREE * Math.cos(Math.toRadians(max_abs_lat)));
+
+        grid_offset = new int[LAT_CELLS * LON_CELLS + 1];
+        grid = buildGrid();
+    }
+
+
+    /**
+     * Index the edge {@code u -> v} unless the opposing edge is indexed.
+     */
+    private boolean indexed(int u, int v, boolean mainComponent)
+    {
+        if (mainComponent && (g.getComponent(u) != 0 || g.getComponent(v) != 0))
+            return false;
+        return u < v || g.getDist(v, u) < 0;
+    }
+
+
+    private int latCell(double lat)
+    {
+        return Math.max(0, Math.min(LAT_CELLS - 1, (int) ((lat - minLat) / LAT_CELL_SIZE)));
+    }
+
+
+    private int lonCell(double lon)
+    {
+        return Math.max(0, Math.min(LON_CELLS - 1, (int) ((lon - minLon) / LON_CELL_SIZE)));
+    }
+
+
+    private int[] buildGrid()
+    {
+        final int[] count = new int[LAT_CELLS * LON_CELLS];
+
+        // first pass, count
+        for (int s = 0; s < seg_from.length; ++s) {
+            rasterize(s, count, null);
+        }
+
+        for (int i = 0; i < count.length; ++i) {
+            grid_offset[i+1] = grid_offset[i] + count[i];
+        }
+
+        // second pass, fill
+        final int[] r = new int[grid_offset[count.length]];
+        for (int s = 0; s < seg_from.length; ++s) {
+            rasterize(s, count, r);
+        }
+        return r;
+    }
+
+
+    /**
+     * Walk along segment {@code s} through all cells it passes through, from the
+     * cell of one end to the cell of the other one, always crossing the nearer
+     * cell border next (a 2D DDA). Passing a corner of a cell exactly, both cells
+     * sharing the corner with it are visited as well.<br>
+     * Cells are lines of latitude and longitude, so this is exact for the straight
+     * line between the ends in degrees, which is the segment in the projection
+     * {@link #getNearestSegment(double, double)} measures distances in.
+     *
+     * @param count number of segments per cell, incremented when {@code r == null},
+     *        otherwise decremented to find the position of {@code s} in {@code r}
+     */
+    private void rasterize(int s, int[] count, int[] r)
+    {
+        final int u = seg_from[s];
+        final int v = g.getIthNeighbor(u, seg_edge[s]);
+        int a = latCell(g.getLat(u));
+        int o = lonCell(g.getLon(u));
+        final int a_end = latCell(g.getLat(v));
+        final int o_end = lonCell(g.getLon(v));
+        final int a_step = a_end > a ? 1 : -1;
+        final int o_step = o_end > o ? 1 : -1;
+
+        // position along the segment (0 .. 1) of the next lat (lon) border and between two borders
+        final double dy = g.getLat(v) - g.getLat(u);
+        final double dx = g.getLon(v) - g.getLon(u);
+        double t_a = Double.POSITIVE_INFINITY, dt_a = 0;
+        double t_o = Double.POSITIVE_INFINITY, dt_o = 0;
+        if (a != a_end) {
+            t_a = (minLat + (a_step > 0 ? a + 1 : a) * LAT_CELL_SIZE - g.getLat(u)) / dy;
+            dt_a = LAT_CELL_SIZE / Math.abs(dy);
+        }
+        if (o != o_end) {
+            t_o = (minLon + (o_step > 0 ? o + 1 : o) * LON_CELL_SIZE - g.getLon(u)) / dx;
+            dt_o = LON_CELL_SIZE / Math.abs(dx);
+        }
+
+        visit(s, a * LON_CELLS + o, count, r);
+        while (a != a_end || o != o_end) {
+            final double ta = a != a_end ? t_a : Double.POSITIVE_INFINITY;
+            final double to = o != o_end ? t_o : Double.POSITIVE_INFINITY;
+            if (ta < to) {
+                a += a_step;
+                t_a += dt_a;
+            }
+            else if (to < ta) {
+                o += o_step;
+                t_o += dt_o;
+            }
+            else {
+                visit(s, (a + a_step) * LON_CELLS + o, count, r);
+                visit(s, a * LON_CELLS + o + o_step, count, r);
+                a += a_step;
+                o += o_step;
+                t_a += dt_a;
+                t_o += dt_o;
+            }
+            visit(s, a * LON_CELLS + o, count, r);
+        }
+    }
+
+
+    private void visit(int s, int c, int[] count, int[] r)
+    {
+        if (r == null)
+            ++count[c];
+        else
+            r[grid_offset[c] + --count[c]] = s;
+    }
+
+
+    /**
+     * Search the point closest to {@code (lat, lon)} on any indexed segment.<br>
+     * Cells are searched in expanding rings around the cell containing {@code (lat, lon)},
+     * like {@link LookupGrid#getNearestNode(double, double)}. The search stops once
+     * the ring is farther away than the closest point found, segments beyond
+     * cannot be closer.
+     * <br><br>
+     * Distances are computed in a local equirectangular projection, which is
+     * accurate for segments of road length.
+     *
+     * @return nearest segment and projection point, {@code null} when {@code (lat, lon)}
+     *         is outside of the graph's bounding rectangle or nothing is indexed
+     */
+    public SegmentSnap getNearestSegment(double lat, double lon)
+    {
+        if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon || seg_from.length == 0) {
+            return null;
+        }
+
+        final int lat_center = latCell(lat);
+        final int lon_center = lonCell(lon);
+        final double kx = METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+        final double ky = METERS_PER_DEGREE;
+
+        int best = -1;
+        double best_dist = Double.MAX_VALUE;
+        double best_t = 0;
+
+        for (int ring = 0; ring <= Math.max(LAT_CELLS, LON_CELLS); ++ring) {
+            for (int a = lat_center - ring; a <= lat_center + ring; ++a) {
+                if (a < 0 || a >= LAT_CELLS)
+                    continue;
+                // full row on the top and bottom of the ring, both ends otherwise
+                final int step = (a == lat_center - ring || a == lat_center + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int o = lon_center - ring; o <= lon_center + ring; o += step) {
+                    if (o < 0 || o >= LON_CELLS)
+                        continue;
+
+                    final int c = a * LON_CELLS + o;
+                    for (int k = grid_offset[c]; k < grid_offset[c+1]; ++k) {
+                        final int s = grid[k];
+                        final int u = seg_from[s];
+                        final int v = g.getIthNeighbor(u, seg_edge[s]);
+
+                        // local coordinates in meters, origin (lat, lon)
+                        final double ux = (g.getLon(u) - lon) * kx, uy = (g.getLat(u) - lat) * ky;
+                        final double dx = (g.getLon(v) - lon) * kx - ux, dy = (g.getLat(v) - lat) * ky - uy;
+                        final double len2 = dx * dx + dy * dy;
+                        final double t = len2 > 0 ? Math.max(0, Math.min(1, -(ux * dx + uy * dy) / len2)) : 0;
+                        final double px = ux + t * dx, py = uy + t * dy;
+                        final double d = Math.sqrt(px * px + py * py);
+
+                        if (d < best_dist) {
+                            best = s;
+                            best_dist = d;
+                            best_t = t;
+                        }
+                    }
+                }
+            }
+
+            // everything outside this ring is at least ring * cell size away
+            if (best > -1 && best_dist <= ring * min_cell_meters) {
+                break;
+            }
+        }
+
+        final int u = seg_from[best];
+        final int v = g.getIthNeighbor(u, seg_edge[best]);
+        return new SegmentSnap(u, v, seg_edge[best], best_t,
+                               g.getLat(u) + best_t * (g.getLat(v) - g.getLat(u)),
+                               g.getLon(u) + best_t * (g.getLon(v) - g.getLon(u)),
+                               best_dist);
+    }
+
+
+    /**
+     * @return number of indexed segments
+     */
+    public int size()
+    {
+        return seg_from.length;
+    }
+
+}
@@ -0,0 +1,74 @@
+package data_structures.grid;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+
+
+/**
+ * See {@link #SegmentSnap(int, int, int, double, double, double, double)}.
+ */
+public final class SegmentSnap
+{
+    private final int    from;
+    private final int    to;
+    private final int    edge;
+    private final double fraction;
+    private final double lat;
+    private final double lon;
+    private final double dist;
+
+
+    /**
+     * A location projected onto a road segment, the result of
+     * {@link SegmentGrid#getNearestSegment(double, double)}.<br>
+     * The segment is the {@code edge}'th edge of node {@code from}, leading to {@code to}.
+     * The projection point divides it at {@code fraction} ({@code 0} = {@code from},
+     * {@code 1} = {@code to}).
+     *
+     * @param from node ID
+     * @param to node ID
+     * @param edge index of the edge within the edges of {@code from}
+     * @param fraction position on the segment, {@code 0 <= fraction <= 1}
+     * @param lat latitude of the projection point
+     * @param lon longitude of the projection point
+     * @param dist distance of the original location from the projection point in meters
+     */
+    public SegmentSnap(int from, int to, int edge, double fraction, double lat, double lon, double dist)
+    {
+        this.from = from;
+        this.to = to;
+        this.edge = edge;
+        this.fraction = fraction;
+        this.lat = lat;
+        this.lon = lon;
+        this.dist = dist;
+    }
+
+
+    public int getFrom()            { return from; }
+    public int getTo()              { return to; }
+    public int getEdge()            { return edge; }
+    public double getFraction()     { return fraction; }
+    public double getLat()          { return lat; }
+    public double getLon()          { return lon; }
+    public double getDist()         { return dist; }
+
+
+    /**
+     * @return location of the projection point
+     */
+    public GeoPosition getPosition()
+    {
+        return new GeoPosition(lat, lon);
+    }
+
+
+    /**
+     * @return {@code true} when both snaps lie on the same edge
+     */
+    public boolean sameEdge(SegmentSnap o)
+    {
+        return from == o.from && edge == o.edge;
+    }
+
+}
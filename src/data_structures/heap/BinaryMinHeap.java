@@ -7,7 +7,7 @@ import java.util.Arrays;
 /**
  * See {@link #BinaryMinHeap(int) BinaryMinHeap}.
  */
-public final class BinaryMinHeap
+public final class BinaryMinHeap implements MinPriorityQueue
 {
     private final double GROWTH_FACTOR = 0.5;
 
@@ -19,7 +19,7 @@ public final class BinaryMinHeap
     /**
      * Initializes a new empty minimum heap with initial size {@code Math.max(1, size)}.<br>
      * This heap is specifically tailored for storing a node ID along with its value,
-     * as used by {@link path.search.Dijkstra Dijkstra}.
+     * as used by {@link path.search.AStar AStar}.
      * The value is used for sorting.
      * <br><br>
      * The heap will increase its size upon {@link #insert(int, int) insert()} when {@link #isFull()}
@@ -84,6 +84,15 @@ public final class BinaryMinHeap
     }
 
 
+    /**
+     * Remove all elements, the allocated capacity is kept.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+
     /**
      * Insert a new heap element consisting of an arbitrary node ID and value.
      * Only the value is used for sorting, the node ID bears no relevance to the heap.
@@ -120,6 +129,15 @@ public final class BinaryMinHeap
     }
 
 
+    /**
+     * Same as {@link #insert(int, int)}, there's no position tracking.
+     */
+    public void insertOrDecrease(int node_id, int value)
+    {
+        insert(node_id, value);
+    }
+
+
     /**
      * @return the min heap node ID
      */
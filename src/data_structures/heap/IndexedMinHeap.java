@@ -0,0 +1,261 @@
+package data_structures.heap;
+
+import java.util.Arrays;
+
+
+
+/**
+ * See {@link #IndexedMinHeap(int, int) IndexedMinHeap}.
+ */
+public final class IndexedMinHeap implements MinPriorityQueue
+{
+    private final double GROWTH_FACTOR = 0.5;
+    /**
+     * Default number of children per element, see {@link #IndexedMinHeap(int)}.
+     */
+    public static final int DEFAULT_ARITY = 4;
+
+    private final int   arity;
+    /**
+     * Heap position of every node ID, {@code -1} when not contained.
+     */
+    private final int[] pos;
+    private int[]       heap_nid = null;
+    private int[]       heap_val = null;
+    private int         size     = 0;
+
+
+    /**
+     * Initializes a new empty minimum heap for node IDs {@code 0} to {@code nodes - 1}.<br>
+     * Like {@link BinaryMinHeap} every element is a node ID along with its value,
+     * which is used for sorting. Unlike {@link BinaryMinHeap} every node ID is
+     * contained at most once: its position is tracked and {@link #decreaseKey(int, int)}
+     * moves it up in place. The heap therefore never holds more elements than there
+     * are nodes in the frontier of a search and no outdated duplicates have to be
+     * skipped.
+     * <br><br>
+     * Every element has {@code arity} children. Compared to a binary heap a 4-ary
+     * heap is flatter and its children share cache lines, at the cost of more
+     * comparisons per level in {@link #removeMin()}.
+     * <br><br>
+     * The heap will increase its capacity upon {@link #insert(int, int) insert()} when
+     * full, the position index is allocated once for all {@code nodes}.
+     *
+     * @param nodes number of node IDs
+     * @param arity number of children per element, at least {@code 2}
+     */
+    public IndexedMinHeap(int nodes, int arity)
+    {
+        if (arity < 2) {
+            throw new RuntimeException("Heap arity must be at least 2");
+        }
+        this.arity = arity;
+        pos = new int[nodes];
+        Arrays.fill(pos, -1);
+        heap_nid = new int[16];
+        heap_val = new int[16];
+    }
+
+
+    /**
+     * Using {@code arity == DEFAULT_ARITY}.<br>
+     * See {@link #IndexedMinHeap(int, int)}.
+     */
+    public IndexedMinHeap(int nodes)
+    {
+        this(nodes, DEFAULT_ARITY);
+    }
+
+
+    private void grow()
+    {
+        final int new_capacity = heap_nid.length + (int) (heap_nid.length * GROWTH_FACTOR) + 1;
+        heap_nid = Arrays.copyOf(heap_nid, new_capacity);
+        heap_val = Arrays.copyOf(heap_val, new_capacity);
+    }
+
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return {@code true} when {@code node_id} is currently in the heap
+     */
+    public boolean contains(int node_id)
+    {
+        return pos[node_id] >= 0;
+    }
+
+
+    /**
+     * @return current value of {@code node_id}, which has to be {@link #contains(int) contained}
+     */
+    public int getValue(int node_id)
+    {
+        return heap_val[pos[node_id]];
+    }
+
+
+    /**
+     * Remove all elements in time proportional to their number,
+     * the allocated capacity is kept.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < size; ++i) {
+            pos[heap_nid[i]] = -1;
+        }
+        size = 0;
+    }
+
+
+    /**
+     * Insert {@code node_id}, which must not be contained yet.
+     *
+     * @throws RuntimeException when {@code node_id} is already contained
+     */
+    public void insert(int node_id, int value)
+    {
+        if (pos[node_id] >= 0)
+            throw new RuntimeException("Node " + node_id + " is already in the heap");
+        if (size == heap_nid.length)
+            grow();
+
+        heap_nid[size] = node_id;
+        heap_val[size] = value;
+        pos[node_id] = size;
+        siftUp(size++);
+    }
+
+
+    /**
+     * Lower the value of the contained {@code node_id} to {@code value}.
+     *
+     * @throws RuntimeException when {@code node_id} is not contained or {@code value} is larger
+     */
+    public void decreaseKey(int node_id, int value)
+    {
+        final int i = pos[node_id];
+        if (i < 0)
+            throw new RuntimeException("Node " + node_id + " is not in the heap");
+        if (value > heap_val[i])
+            throw new RuntimeException("Can't increase the value of node " + node_id);
+
+        heap_val[i] = value;
+        siftUp(i);
+    }
+
+
+    /**
+     * Insert {@code node_id} or lower its value when it is already contained
+     * with a larger one.
+     */
+    public void insertOrDecrease(int node_id, int value)
+    {
+        final int i = pos[node_id];
+        if (i < 0)
+            insert(node_id, value);
+        else if (value < heap_val[i])
+            decreaseKey(node_id, value);
+    }
+
+
+    /**
+     * @return the min heap node ID
+     */
+    public int getMinID()
+    {
+        if (isEmpty())
+            throw new RuntimeException("Empty Heap");
+        return heap_nid[0];
+    }
+
+
+    /**
+     * @return the min heap node value
+     */
+    public int getMinValue()
+    {
+        if (isEmpty())
+            throw new RuntimeException("Empty Heap");
+        return heap_val[0];
+    }
+
+
+    /**
+     * Remove the heap minimum <i>without</i> returning it.
+     */
+    public void removeMin()
+    {
+        if (isEmpty())
+            throw new RuntimeException("Empty Heap");
+
+        pos[heap_nid[0]] = -1;
+        --size;
+        if (size > 0) {
+            heap_nid[0] = heap_nid[size];
+            heap_val[0] = heap_val[size];
+            pos[heap_nid[0]] = 0;
+            siftDown(0);
+        }
+    }
+
+
+    private void siftUp(int c)
+    {
+        final int nid = heap_nid[c];
+        final int val = heap_val[c];
+
+        // move parents down until the hole reached the right place
+        while (c > 0) {
+            final int parent = (c - 1) / arity;
+            if (heap_val[parent] <= val)
+                break;
+            heap_nid[c] = heap_nid[parent];
+            heap_val[c] = heap_val[parent];
+            pos[heap_nid[c]] = c;
+            c = parent;
+        }
+        heap_nid[c] = nid;
+        heap_val[c] = val;
+        pos[nid] = c;
+    }
+
+
+    private void siftDown(int i)
+    {
+        final int nid = heap_nid[i];
+        final int val = heap_val[i];
+
+        int first;
+        while ((first = i * arity + 1) < size) {
+            // smallest child
+            int c = first;
+            final int last = Math.min(first + arity, size);
+            for (int j = first + 1; j < last; ++j) {
+                if (heap_val[j] < heap_val[c])
+                    c = j;
+            }
+
+            if (heap_val[c] >= val)
+                break;
+            heap_nid[i] = heap_nid[c];
+            heap_val[i] = heap_val[c];
+            pos[heap_nid[i]] = i;
+            i = c;
+        }
+        heap_nid[i] = nid;
+        heap_val[i] = val;
+        pos[nid] = i;
+    }
+
+}
@@ -0,0 +1,27 @@
+package data_structures.heap;
+
+
+
+/**
+ * Interface defining the API shared by the priority queues of the path searches:
+ * elements are node IDs along with an {@code int} value used for sorting.<br>
+ * See {@link BinaryMinHeap}, {@link IndexedMinHeap} and {@link RadixHeap}.
+ */
+public interface MinPriorityQueue
+{
+    public boolean isEmpty();
+    public int size();
+    public void clear();
+
+    public void insert(int node_id, int value);
+    /**
+     * Insert {@code node_id} or lower its value in case it is contained already.
+     * Queues without position tracking simply insert it again, the outdated entry
+     * is extracted later and has to be skipped by the caller.
+     */
+    public void insertOrDecrease(int node_id, int value);
+
+    public int getMinID();
+    public int getMinValue();
+    public void removeMin();
+}
@@ -0,0 +1,169 @@
+package data_structures.heap;
+
+import java.util.Arrays;
+
+
+
+/**
+ * See {@link #RadixHeap()}.
+ */
+public final class RadixHeap implements MinPriorityQueue
+{
+    /**
+     * Bucket {@code 0} holds values equal to {@code last}, bucket {@code i > 0}
+     * the values whose highest bit differing from {@code last} is bit {@code i - 1}.
+     */
+    private final int     BUCKETS = 33;
+
+    private final int[][] bucket_nid = new int[BUCKETS][];
+    private final int[][] bucket_val = new int[BUCKETS][];
+    private final int[]   bucket_size = new int[BUCKETS];
+    private int           size = 0;
+    /**
+     * Last extracted minimum, no smaller value may be inserted.
+     */
+    private int           last = 0;
+
+
+    /**
+     * Initializes a new empty radix heap for non-negative values.<br>
+     * A radix heap is a <i>monotone</i> priority queue: no value smaller than the
+     * last extracted minimum may be inserted, which always holds for Dijkstra with
+     * non-negative integer edge costs. Elements are kept in 33 buckets by the
+     * highest bit in which their value differs from the last minimum. Only when
+     * bucket {@code 0} is empty, the first non-empty bucket is split up among the
+     * lower buckets, every element moves at most 32 times in total.
+     * Insertion is {@code O(1)}, there are no comparisons along heap paths.
+     * <br><br>
+     * There is no decrease-key: like with {@link BinaryMinHeap} a node is inserted
+     * again and outdated entries have to be skipped when extracted.
+     */
+    public RadixHeap()
+    {
+        for (int i = 0; i < BUCKETS; ++i) {
+            bucket_nid[i] = new int[4];
+            bucket_val[i] = new int[4];
+        }
+    }
+
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Remove all elements, the next query may start with any value.
+     */
+    public void clear()
+    {
+        Arrays.fill(bucket_size, 0);
+        size = 0;
+        last = 0;
+    }
+
+
+    private int bucketOf(int value)
+    {
+        return value == last ? 0 : 32 - Integer.numberOfLeadingZeros(value ^ last);
+    }
+
+
+    private void add(int b, int node_id, int value)
+    {
+        final int n = bucket_size[b];
+        if (n == bucket_nid[b].length) {
+            bucket_nid[b] = Arrays.copyOf(bucket_nid[b], n * 2);
+            bucket_val[b] = Arrays.copyOf(bucket_val[b], n * 2);
+        }
+        bucket_nid[b][n] = node_id;
+        bucket_val[b][n] = value;
+        bucket_size[b] = n + 1;
+    }
+
+
+    /**
+     * @throws RuntimeException when {@code value} is smaller than the last extracted minimum
+     */
+    public void insert(int node_id, int value)
+    {
+        if (value < last)
+            throw new RuntimeException("Value " + value + " is smaller than the last minimum " + last);
+        add(bucketOf(value), node_id, value);
+        ++size;
+    }
+
+
+    /**
+     * Same as {@link #insert(int, int)}.
+     */
+    public void insertOrDecrease(int node_id, int value)
+    {
+        insert(node_id, value);
+    }
+
+
+    /**
+     * Make sure the minimum is in bucket {@code 0}.
+     */
+    private void pull()
+    {
+        if (bucket_size[0] > 0)
+            return;
+        if (size == 0)
+            throw new RuntimeException("Empty Heap");
+
+        int b = 1;
+        while (bucket_size[b] == 0)
+            ++b;
+
+        final int[] nid = bucket_nid[b];
+        final int[] val = bucket_val[b];
+        final int n = bucket_size[b];
+        int min = val[0];
+        for (int i = 1; i < n; ++i) {
+            if (val[i] < min)
+                min = val[i];
+        }
+
+        // all elements of bucket b end up in lower buckets relative to the new minimum
+        last = min;
+        bucket_size[b] = 0;
+        for (int i = 0; i < n; ++i) {
+            add(bucketOf(val[i]), nid[i], val[i]);
+        }
+    }
+
+
+    public int getMinID()
+    {
+        pull();
+        return bucket_nid[0][bucket_size[0] - 1];
+    }
+
+
+    public int getMinValue()
+    {
+        pull();
+        return last;
+    }
+
+
+    /**
+     * Remove the minimum <i>without</i> returning it.
+     */
+    public void removeMin()
+    {
+        pull();
+        --bucket_size[0];
+        --size;
+    }
+
+}
@@ -0,0 +1,155 @@
+package data_structures.list;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+
+
+/**
+ * See {@link #IntList(int) IntList}.
+ */
+public final class IntList
+{
+    private final double GROWTH_FACTOR = 0.5;
+
+    private int[] data = null;
+    private int   size = 0;
+
+
+    /**
+     * Initializes a new empty list with initial capacity {@code Math.max(1, capacity)}.<br>
+     * A growable list of primitive {@code int}s, e.g. node IDs, without the boxed
+     * {@link Integer} and list node per element of a {@code LinkedList<Integer>}.
+     * <br><br>
+     * The list will increase its capacity upon {@link #add(int) add()} when it's full.
+     * This requires copying the current list. {@link #clear()} keeps the capacity,
+     * so a list can be reused as buffer for consecutive queries.
+     *
+     * @param capacity initial capacity
+     */
+    public IntList(int capacity)
+    {
+        data = new int[Math.max(1, capacity)];
+        size = 0;
+    }
+
+
+    /**
+     * Using an initial capacity of {@code 16}.<br>
+     * See {@link #IntList(int)}.
+     */
+    public IntList()
+    {
+        this(16);
+    }
+
+
+    /**
+     * Grow the list by {@code GROWTH_FACTOR}, at least by 1.
+     */
+    private void grow()
+    {
+        data = Arrays.copyOf(data, data.length + (int) (data.length * GROWTH_FACTOR) + 1);
+    }
+
+
+    /**
+     * Append {@code v} to the end of the list.
+     */
+    public void add(int v)
+    {
+        if (size >= data.length) {
+            grow();
+        }
+        data[size++] = v;
+    }
+
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public int get(int i)
+    {
+        if (i >= size)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return data[i];
+    }
+
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public void set(int i, int v)
+    {
+        if (i >= size)
+            throw new ArrayIndexOutOfBoundsException(i);
+        data[i] = v;
+    }
+
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException when the list is empty
+     */
+    public int getLast()
+    {
+        return get(size - 1);
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    /**
+     * Remove all elements, the capacity is kept.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+
+    /**
+     * Reverse the order of the elements in place, e.g. after collecting
+     * a path from its end following predecessors.
+     */
+    public void reverse()
+    {
+        for (int i = 0, j = size - 1; i < j; ++i, --j) {
+            final int t = data[i];
+            data[i] = data[j];
+            data[j] = t;
+        }
+    }
+
+
+    /**
+     * @return copy of the elements
+     */
+    public int[] toArray()
+    {
+        return Arrays.copyOf(data, size);
+    }
+
+
+    /**
+     * @return copy of the elements as boxed list, for the legacy APIs
+     */
+    public LinkedList<Integer> toLinkedList()
+    {
+        final LinkedList<Integer> l = new LinkedList<Integer>();
+        for (int i = 0; i < size; ++i) {
+            l.add(data[i]);
+        }
+        return l;
+    }
+
+}
@@ -30,7 +30,10 @@ import org.jdesktop.swingx.mapviewer.WaypointPainter;
 import org.jdesktop.swingx.painter.CompoundPainter;
 import org.jdesktop.swingx.painter.Painter;
 
-import path.search.Dijkstra;
+import path.search.ParallelDistanceMatrix;
+import path.search.PathResult;
+import path.search.PathSearch;
+import path.search.SegmentSearch;
 import path.search.TravelRoute;
 import path.search.TravelRouteNode;
 import path.search.TravelRouteNoteData;
@@ -39,6 +42,8 @@ import util.StopWatch;
 import data_structures.graph.Graph;
 import data_structures.graph.GraphFactory;
 import data_structures.graph.InvalidGraphFormatException;
+import data_structures.grid.SegmentGrid;
+import data_structures.grid.SegmentSnap;
 
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
@@ -57,6 +62,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.concurrent.Callable;
 import java.util.HashSet;
 import java.util.LinkedList;
 
@@ -87,9 +93,16 @@ public class MainWindow extends JFrame implements Serializable
     private static final int MAX_CONCURRENTLY_VISIBLE_IMAGES = 1;
     private static final int MAX_LOG_LENGTH = 200;
     private static final int LOG_BUFFER_LENGTH = 10;
+    // milliseconds a route search, a path or a whole tour, may take
+    private static final long ROUTE_TIME_LIMIT = 10000;
 
     private Graph graph = null;
-    private Dijkstra d = null;
+    private SegmentGrid segments = null;
+    private SegmentSearch d = null;
+    // distances of tours, lives as long as the graph to reuse its search states
+    private ParallelDistanceMatrix matrix = null;
+    // runs the searches of d and of travel routes off the EDT
+    private final RoutingService routing = new RoutingService();
     
     // LinkedBlockingDeque in case we want to thread this stuff
     private final LinkedList<OverlayAggregate> overlay = new LinkedList<OverlayAggregate>();
@@ -109,6 +122,7 @@ public class MainWindow extends JFrame implements Serializable
 
     private GeoPosition currSource = null;
     private GeoPosition currTarget = null;
+    private SegmentSnap currSourceSnap = null;
     
     private boolean imagesHighQuality = true;
     private boolean imagesDynamicResize = true;
@@ -507,7 +521,7 @@ public class MainWindow extends JFrame implements Serializable
                 cb_VisitOrder(e);
             }
         });
-        cb_VisitOrder.setModel(new DefaultComboBoxModel<String>(new String[] {"selected order", "chronological", "shortest (greedy)"}));
+        cb_VisitOrder.setModel(new DefaultComboBoxModel<String>(new String[] {"selected order", "chronological", "shortest"}));
         GridBagConstraints gbc_cb_VisitOrder = new GridBagConstraints();
         gbc_cb_VisitOrder.anchor = GridBagConstraints.WEST;
         gbc_cb_VisitOrder.insets = new Insets(0, 0, 5, 5);
@@ -706,38 +720,76 @@ public class MainWindow extends JFrame implements Serializable
         
         final StopWatch sw = new StopWatch();
         sw.lap();
-        int n = graph.getNearestNode(clickPos);
+        // nearest point on a road of the main component,
+        // routes from and to other components mostly fail
+        final SegmentSnap s = segments.getNearestSegment(clickPos.getLatitude(), clickPos.getLongitude());
         sw.lap();
-        if (n == -1) {
-            System.out.println("Found no node!");
+        if (s == null) {
+            System.out.println("Found no road!");
             return;
         }
-        System.out.println("Closest node: " + String.format("%.4f", graph.getLat(n)) + ", "
-                + String.format("%.4f", graph.getLon(n)) + "  (found in " + sw.getLastInSecStr() + " sec)");
+        System.out.println("Closest road: " + String.format("%.4f", s.getLat()) + ", "
+                + String.format("%.4f", s.getLon()) + "  (" + Math.round(s.getDist()) + " m away, found in "
+                + sw.getLastInSecStr() + " sec)");
 
         if (SwingUtilities.isLeftMouseButton(e)) {
-            currSource = graph.getPosition(n);
+            currSource = s.getPosition();
             currTarget = null;
+            currSourceSnap = s;
             overlay.add(OverlayAggregate.route_var6(clickPos, currSource));
-            d.setSource(n);
+            // a route still being searched belongs to the previous source
+            routing.cancel(RoutingService.LANE_PATH);
         }
         else if (SwingUtilities.isRightMouseButton(e)) {
-            currTarget = graph.getPosition(n);
-            d.setTarget(n);
+            currTarget = s.getPosition();
             if (currSource != null && currTarget != null) {
+                findRoute(currSourceSnap, s);
+            }
+        }
+        mapKit.repaint();
+    }
+
+
+    /**
+     * Search the shortest route from {@code source} to {@code target} in the background
+     * and draw it once found. Supersedes a route search still running.
+     */
+    private void findRoute(final SegmentSnap source, final SegmentSnap target)
+    {
+        final SegmentSearch search = d;
+        final StopWatch sw = new StopWatch();
+        sw.lap();
+        routing.submit(RoutingService.LANE_PATH, new Callable<PathResult>() {
+            @Override
+            public PathResult call()
+            {
+                return search.pathFromTo(source, target) ? search.getPathResult(new PathResult()) : null;
+            }
+        }, new RoutingService.Listener<PathResult>() {
+            @Override
+            public void done(PathResult path)
+            {
                 sw.lap();
-                boolean r = d.pathFromTo();
-                sw.lap();
-                if (r) {
-                    overlay.add(OverlayAggregate.route_multi_var3(d.getPath()));
-                    System.out.println("Shortest route found in " + sw.getLastInSecStr(7) + " sec");
+                if (path != null) {
+                    overlay.add(OverlayAggregate.route_multi_var3(path));
+                    System.out.println("Shortest route (" + path.getLength() + " m) found in " + sw.getLastInSecStr(7) + " sec");
+                    mapKit.repaint();
+                }
+                // the lane is idle now, the status still belongs to this search
+                else if (search.getStatus() == PathSearch.STATUS_TIMED_OUT) {
+                    System.out.println("Route search timed out after " + sw.getLastInSecStr() + " sec");
                 }
                 else {
                     System.out.println("Found no route to specified destination!");
                 }
             }
-        }
-        mapKit.repaint();
+
+            @Override
+            public void failed(Throwable t)
+            {
+                System.out.println("Error: route search failed (" + t + ")");
+            }
+        });
     }
     
     
@@ -833,7 +885,8 @@ public class MainWindow extends JFrame implements Serializable
     
     
     /**
-     * Load a new {@link Graph} and initialize a new {@link Dijkstra} object for the new graph.
+     * Load a new {@link Graph} and initialize a new {@link SegmentGrid},
+     * {@link SegmentSearch} and {@link ParallelDistanceMatrix} object for the new graph.
      */
     private void btn_LoadGraph(ActionEvent e)
     {
@@ -850,8 +903,14 @@ public class MainWindow extends JFrame implements Serializable
                     for (OverlayImage oi : overlayImages) { 
                         oi.setAccommodation(null);
                     }
+                    routing.cancel(RoutingService.LANE_PATH);
+                    routing.cancel(RoutingService.LANE_TOUR);
+                    if (matrix != null)
+                        matrix.shutdown();
                     graph = null;
+                    segments = null;
                     d = null;
+                    matrix = null;
                     persistentOverlay.clear();
                     clearMap();
                     System.gc();
@@ -860,8 +919,11 @@ public class MainWindow extends JFrame implements Serializable
                     final StopWatch sw = new StopWatch();
                     sw.lap();
                     graph = GraphFactory.load(file.getAbsolutePath());
+                    segments = new SegmentGrid(graph, true);
                     sw.lap();
-                    d = new Dijkstra(graph);
+                    d = new SegmentSearch(graph);
+                    d.getLimit().setTimeLimit(ROUTE_TIME_LIMIT);
+                    matrix = new ParallelDistanceMatrix(graph, true);
                     
                     drawGraphRect();
                     clearMap();
@@ -901,33 +963,50 @@ public class MainWindow extends JFrame implements Serializable
         final boolean startWithMarker = cb_StartingPosition.getSelectedIndex() == 1;        // TODO: this is bad
         final int order = cb_VisitOrder.getSelectedIndex();                                 // TODO: this is bad
 
-        StopWatch sw = new StopWatch();
-        TravelRoute tr = null;
+        final StopWatch sw = new StopWatch();
+        final TravelRoute tr;
         try {
-            tr = new TravelRoute(graph, Collections.list(dm.elements()), order, startWithMarker && currSource != null ? currSource : null);
-            sw.lap();
-            tr.calculate();
+            tr = new TravelRoute(matrix, Collections.list(dm.elements()), order, startWithMarker && currSource != null ? currSource : null);
+            tr.getLimit().setTimeLimit(ROUTE_TIME_LIMIT);
         }
         catch (Exception e1) {
             System.out.println(e1.getMessage());
             return;
         }
 
-        
-        if (!tr.getRoute().isEmpty()) {
-            System.out.println(System.getProperty("line.separator") + "Calculated tour:    (in " + sw.lap().getLastInSecStr() + " sec)");
-            for (TravelRouteNode trn : tr.getNodes()) {
-                TravelRouteNoteData data = trn.getData();
-                System.out.println("   -> " + (data != null ? data.getLabel() : "(start marker)"));
+        sw.lap();
+        routing.submit(RoutingService.LANE_TOUR, new Callable<TravelRoute>() {
+            @Override
+            public TravelRoute call() throws Exception
+            {
+                return tr.calculate();
             }
-            
-            overlayTour.clear();
-            overlayTour.add(OverlayAggregate.route_multi_multi_var1(tr.getRoute()));
-            map.repaint();
-        }
-        else {
-            System.out.println("Found no route!");
-        }
+        }, new RoutingService.Listener<TravelRoute>() {
+            @Override
+            public void done(TravelRoute tr)
+            {
+                if (!tr.getRoute().isEmpty()) {
+                    System.out.println(System.getProperty("line.separator") + "Calculated tour:    (" + tr.getLength() + " m, in " + sw.lap().getLastInSecStr() + " sec)");
+                    for (TravelRouteNode trn : tr.getNodes()) {
+                        TravelRouteNoteData data = trn.getData();
+                        System.out.println("   -> " + (data != null ? data.getLabel() : "(start marker)"));
+                    }
+
+                    overlayTour.clear();
+                    overlayTour.add(OverlayAggregate.route_multi_multi_var1(tr.getRoute()));
+                    map.repaint();
+                }
+                else {
+                    System.out.println("Found no route!");
+                }
+            }
+
+            @Override
+            public void failed(Throwable t)
+            {
+                System.out.println(t.getMessage());
+            }
+        });
     }
     
     
@@ -1011,14 +1090,14 @@ public class MainWindow extends JFrame implements Serializable
 
         // request tourism nodes in range
         final StopWatch sw = new StopWatch().lap();
-        final LinkedList<Integer> l = graph.getNNodesInRange(oi.getPos().getLatitude(), 
-                                                         oi.getPos().getLongitude(), radius);
+        final int[] l = graph.getNNodesWithinRadius(oi.getPos().getLatitude(),
+                                                    oi.getPos().getLongitude(), radius);
         sw.lap();
-        if (l != null && l.size() < 1) {
+        if (l.length < 1) {
             System.out.println("No accommodation found! Try again with higher range");
             return;
         }
-        System.out.println("Found " + l.size() + " nearby accommodation(s) in " + sw.getLastInSecStr() + " sec");
+        System.out.println("Found " + l.length + " nearby accommodation(s) in " + sw.getLastInSecStr() + " sec");
         System.out.println("Click one to associate it with the currently selected photo");
         
         // visualize tourism nodes
@@ -1201,11 +1280,14 @@ public class MainWindow extends JFrame implements Serializable
      */
     private void clearMap()
     {
+        routing.cancel(RoutingService.LANE_PATH);
+        routing.cancel(RoutingService.LANE_TOUR);
         overlay.clear();
         overlayTour.clear();
         mapKit.repaint();
         currSource = null;
         currTarget = null;
+        currSourceSnap = null;
     }
     
     
@@ -0,0 +1,154 @@
+package gui;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+
+
+/**
+ * See {@link #RoutingService()}.
+ */
+public final class RoutingService
+{
+    /**
+     * Lanes of independent queries, see {@link #submit(int, Callable, Listener)}.
+     */
+    public static final int LANE_PATH = 0,
+                            LANE_TOUR = 1;
+    private static final int LANES   = 2;
+
+    /**
+     * Receives the result of a query on the event dispatch thread.
+     */
+    public interface Listener<T>
+    {
+        public void done(T result);
+        public void failed(Throwable t);
+    }
+
+    private final ExecutorService[] worker = new ExecutorService[LANES];
+    private final Future<?>[]       pending = new Future<?>[LANES];
+    /**
+     * Incremented for every query, results of older queries are dropped.
+     * Only accessed on the event dispatch thread.
+     */
+    private final int[]             generation = new int[LANES];
+
+
+    /**
+     * Runs route queries off the event dispatch thread (EDT), so the map stays
+     * responsive while searching.<br>
+     * Queries are grouped into lanes (point-to-point paths and tours), each lane
+     * has its own worker thread. A new query supersedes the pending query of its
+     * lane: that one is cancelled (its worker is interrupted) and its result is
+     * never published. Results are handed to the {@link Listener} via
+     * {@link SwingUtilities#invokeLater(Runnable)}, listeners may therefore
+     * touch Swing components and overlay lists directly.
+     * <br><br>
+     * All methods have to be called on the EDT. Queries of the same lane never run
+     * concurrently, so they may share a search object.
+     */
+    public RoutingService()
+    {
+        for (int i = 0; i < LANES; ++i) {
+            final String name = "routing-" + (i == LANE_PATH ? "path" : "tour");
+            worker[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    final Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Run {@code query} on the worker of {@code lane}, superseding the pending query.
+     *
+     * @param lane {@code LANE_PATH} or {@code LANE_TOUR}
+     * @param query the actual computation, must not touch Swing components
+     * @param listener receives the result on the EDT unless the query was superseded
+     */
+    public <T> void submit(final int lane, final Callable<T> query, final Listener<T> listener)
+    {
+        cancel(lane);
+        final int gen = generation[lane];
+
+        pending[lane] = worker[lane].submit(new Runnable() {
+            @Override
+            public void run()
+            {
+                T result = null;
+                Throwable error = null;
+                try {
+                    result = query.call();
+                }
+                catch (Throwable t) {
+                    error = t;
+                }
+                if (Thread.currentThread().isInterrupted())
+                    return;
+
+                final T r = result;
+                final Throwable e = error;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        // superseded meanwhile
+                        if (gen != generation[lane])
+                            return;
+                        pending[lane] = null;
+                        if (e == null)
+                            listener.done(r);
+                        else
+                            listener.failed(e);
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Cancel the pending query of {@code lane}, its result won't be published.
+     */
+    public void cancel(int lane)
+    {
+        ++generation[lane];
+        if (pending[lane] != null) {
+            pending[lane].cancel(true);
+            pending[lane] = null;
+        }
+    }
+
+
+    /**
+     * @return {@code true} when a query of {@code lane} is running or waiting
+     */
+    public boolean isBusy(int lane)
+    {
+        return pending[lane] != null;
+    }
+
+
+    /**
+     * Cancel all queries and stop the workers.
+     */
+    public void shutdown()
+    {
+        for (int i = 0; i < LANES; ++i) {
+            cancel(i);
+            worker[i].shutdownNow();
+        }
+    }
+
+}
@@ -7,6 +7,8 @@ import java.util.LinkedList;
 import org.jdesktop.swingx.JXMapViewer;
 import org.jdesktop.swingx.mapviewer.GeoPosition;
 
+import path.search.PathResult;
+
 
 
 /**
@@ -272,7 +274,25 @@ public final class OverlayAggregate implements OverlayObject
      * Black line, medium<br>
      * Blue target, big<br>
      */
-    public static OverlayAggregate route_multi_multi_var1(LinkedList<LinkedList<GeoPosition> > list) {
+    public static OverlayAggregate route_multi_var3(PathResult p) {
+        OverlayAggregate oa = new OverlayAggregate();
+        GeoPosition last = p.getPosition(0);
+        oa.addPoint(OverlayElement.pointRedBig(last));
+        for (int i = 1; i < p.size(); ++i) {
+            final GeoPosition curr = p.getPosition(i);
+            oa.addLine(OverlayElement.lineBlackMedium(last, curr));
+            last = curr;
+        }
+        oa.addPoint(OverlayElement.pointBlueBig(last));
+        return oa;
+    }
+    
+    
+    /**
+     * Red source, big<br>
+     * Lines alternating in color and width for every leg<br>
+     */
+    public static OverlayAggregate route_multi_multi_var1(LinkedList<PathResult> list) {
         // vary color and width
         final Color[] c = new Color[] { //new Color(0, 0, 0), 
                                         //new Color(64, 64, 64),
@@ -287,14 +307,16 @@ public final class OverlayAggregate implements OverlayObject
                                   };
         
         OverlayAggregate oa = new OverlayAggregate();
-        GeoPosition last = list.getFirst().removeFirst();
+        GeoPosition last = list.getFirst().getPosition(0);
         oa.addPoint(OverlayElement.pointRedBig(last));
         
         int i = 0;
-        for (LinkedList<GeoPosition> l : list)
+        for (PathResult l : list)
         {
-            for (GeoPosition p : l)
+            // every leg starts where the previous one ended
+            for (int k = 1; k < l.size(); ++k)
             {
+                final GeoPosition p = l.getPosition(k);
                 oa.addLine(new OverlayElement(last, p, c[i % c.length], w[i % w.length]));
                 last = p;
             }
@@ -0,0 +1,308 @@
+package path.search;
+
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import data_structures.graph.Graph;
+import data_structures.graph.alt.Landmarks;
+import data_structures.heap.BinaryMinHeap;
+import data_structures.list.IntList;
+
+
+
+/**
+ * See {@link #ALTSearch(Graph, Landmarks)}.
+ */
+public final class ALTSearch implements PathSearch
+{
+    /**
+     * Number of landmarks used per query, the ones giving the best bound
+     * between source and target.
+     */
+    private final int     ACTIVE_LANDMARKS = 4;
+    private final boolean weighted;
+
+    private final Graph   g;
+    private final Landmarks lm;
+    private final int[]   active;
+    private int           active_n = 0;
+    /**
+     * Current minimum distance from the source for every node.
+     */
+    private final SearchState state;
+    /**
+     * Lower bound of the distance to the target for every node,
+     * valid for nodes reached by the current query.
+     */
+    private final int[]   pot;
+
+    private int           source           = -1;
+    private int           target           = -1;
+    private boolean       found            = false;
+    private final SearchLimit limit        = new SearchLimit();
+    private int           status           = STATUS_NO_PATH;
+    private int           accDist          = 0;
+
+
+    /**
+     * Goal-directed search like {@link AStar}, but the lower bound of the
+     * remaining distance to the target is derived from precomputed landmark
+     * distances and the triangle inequality (see {@link Landmarks}). These bounds
+     * follow the road network and are usually much tighter than straight-line
+     * distances, so far fewer nodes are settled.
+     * <br><br>
+     * Per query only the {@code ACTIVE_LANDMARKS} landmarks giving the best bound
+     * from source to target are used. Since landmark distances are stored rounded
+     * the bound may not be perfectly consistent, settled nodes are hence reopened
+     * when a shorter distance shows up later.
+     * <br><br>
+     * The metric is the one the landmarks were computed for. The API is the
+     * same as the one of {@link Dijkstra}.
+     *
+     * @param graph the graph {@code landmarks} were computed for
+     * @param landmarks landmark tables of {@code graph}
+     * @throws RuntimeException when {@code landmarks} were not computed for {@code graph},
+     *         see {@link Landmarks#matches(Graph)}
+     */
+    public ALTSearch(Graph graph, Landmarks landmarks)
+    {
+        if (!landmarks.matches(graph)) {
+            throw new RuntimeException("Landmarks do not match graph, rebuild them");
+        }
+
+        g = graph;
+        lm = landmarks;
+        weighted = lm.isWeighted();
+        active = new int[Math.min(ACTIVE_LANDMARKS, lm.getLandmarkCount())];
+        state = new SearchState(g.size());
+        pot = new int[g.size()];
+    }
+
+
+    public ALTSearch setSource(int from)
+    {
+        source = from;
+        return this;
+    }
+
+
+    public ALTSearch setTarget(int to)
+    {
+        target = to;
+        return this;
+    }
+
+
+    public boolean pathFromTo(int from, int to)
+    {
+        setSource(from);
+        setTarget(to);
+        return pathFromTo();
+    }
+
+
+    /**
+     * Compute the potential of {@code n} when it is reached for the first time.
+     */
+    private void reach(int n)
+    {
+        if (!state.isReached(n)) {
+            int p = 0;
+            for (int i = 0; i < active_n; ++i) {
+                p = Math.max(p, lm.lowerBound(active[i], n, target));
+            }
+            pot[n] = p;
+        }
+    }
+
+
+    /**
+     * Select the landmarks giving the best bounds from source to target.
+     */
+    private void selectActiveLandmarks()
+    {
+        final int[] bound = new int[active.length];
+        active_n = 0;
+        for (int l = 0; l < lm.getLandmarkCount(); ++l) {
+            final int b = lm.lowerBound(l, source, target);
+            int i = active_n < active.length ? active_n++ : active.length;
+            // insertion into the descending list of the best bounds
+            while (i > 0 && bound[i - 1] < b) {
+                if (i < active.length) {
+                    bound[i] = bound[i - 1];
+                    active[i] = active[i - 1];
+                }
+                --i;
+            }
+            if (i < active.length) {
+                bound[i] = b;
+                active[i] = l;
+            }
+        }
+    }
+
+
+    /**
+     * Is using the currently designated source and destination values.<br>
+     * See {@link #ALTSearch(Graph, Landmarks)}.
+     *
+     * @return {@code false} when no path from source to target was found, otherwise {@code true}
+     */
+    public boolean pathFromTo()
+    {
+        limit.start();
+
+        // certainly unreachable (see StrongComponents), don't search the whole graph in vain
+        if (!g.mayReach(source, target)) {
+            found = false;
+            status = STATUS_NO_PATH;
+            return false;
+        }
+
+        state.reset();
+        final BinaryMinHeap heap = state.getHeap();
+
+        found = false;
+        selectActiveLandmarks();
+        reach(source);
+        state.setDist(source, 0, -1);
+        heap.insert(source, pot[source]);
+
+        while (!heap.isEmpty()) {
+            final int u = heap.getMinID();
+            final int key = heap.getMinValue();
+            heap.removeMin();
+
+            // outdated duplicate
+            final int u_dist = state.getDist(u);
+            if (key != u_dist + pot[u]) {
+                continue;
+            }
+
+            if (u == target) {
+                found = true;
+                break;
+            }
+
+            if (limit.exceeded()) {
+                status = limit.getStatus();
+                return false;
+            }
+
+            final int begin = g.edgeBegin(u);
+            final int end = g.edgeEnd(u);
+            for (int e = begin; e < end; ++e) {
+                final int inc = g.edgeWeight(e, weighted);
+                if (inc < 0)
+                    continue;
+
+                final int v = g.edgeTarget(e);
+                final int new_dist = u_dist + inc;
+                if (new_dist < state.getDist(v)) {
+                    reach(v);
+                    state.setDist(v, new_dist, u, e - begin);
+                    heap.insert(v, new_dist + pot[v]);
+                }
+            }
+        }
+
+        status = found ? STATUS_FOUND : STATUS_NO_PATH;
+        return found;
+    }
+
+
+    /**
+     * @return list of node IDs on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<Integer> getPathNodeIDs()
+    {
+        return getPathNodes(new IntList()).toLinkedList();
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathResult(PathResult)}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public PathResult getPathResult(PathResult out)
+    {
+        if (!found)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        PathResult.fromPreds(g, state, target, out);
+        accDist = out.getLength();
+        return out;
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathNodes(IntList)}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public IntList getPathNodes(IntList out)
+    {
+        if (!found)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        out.clear();
+        for (int i = target; i != -1; i = state.getPred(i)) {
+            out.add(i);
+        }
+        out.reverse();
+        accDist = PathResult.lengthFromPreds(g, state, target);
+        return out;
+    }
+
+
+    /**
+     * @return list of locations ({@link GeoPosition}) on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<GeoPosition> getPath()
+    {
+        return getPathResult(new PathResult()).toPositions();
+    }
+
+
+    /**
+     * @return accumulated distance of all edges in the shortest path
+     */
+    public int calculateDist()
+    {
+        if (!found)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        accDist = PathResult.lengthFromPreds(g, state, target);
+        return accDist;
+    }
+
+
+    public int getDist()
+    {
+        return accDist;
+    }
+
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    public SearchLimit getLimit()
+    {
+        return limit;
+    }
+
+
+    @Override
+    public void run()
+    {
+        pathFromTo();
+    }
+
+}
@@ -0,0 +1,294 @@
+package path.search;
+
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import util.Distance;
+import data_structures.graph.Graph;
+import data_structures.heap.BinaryMinHeap;
+import data_structures.list.IntList;
+
+
+
+/**
+ * See {@link #AStar(Graph, boolean)}.
+ */
+public final class AStar implements PathSearch
+{
+    private final boolean weighted;
+    /**
+     * Meters of straight-line distance are multiplied by this factor to get a
+     * lower bound of the path costs.
+     */
+    private final double  scale;
+
+    private final Graph   g;
+    /**
+     * Current minimum distance from the source for every node.
+     */
+    private final SearchState state;
+    /**
+     * Lower bound of the distance to the target for every node,
+     * valid for nodes reached by the current query.
+     */
+    private final int[]   pot;
+
+    private int           source           = -1;
+    private int           target           = -1;
+    private boolean       found            = false;
+    private final SearchLimit limit        = new SearchLimit();
+    private int           status           = STATUS_NO_PATH;
+    private int           accDist          = 0;
+
+
+    /**
+     * Goal-directed variant of {@link Dijkstra}: the heap is ordered by the distance
+     * from the source plus a lower bound of the remaining distance to the target.
+     * Nodes leading away from the target are therefore settled late or never.
+     * <br><br>
+     * The lower bound is the haversine distance to the target, scaled by the
+     * lowest ratio of edge cost to straight-line length of the graph, see
+     * {@link Graph#getMinCostPerMeter(boolean)}. Edge costs are rounded to whole
+     * meters and weighted ones are divided by the street type's speed factor, so
+     * an edge may cost less than its straight-line length, the scaled bound still
+     * never exceeds the cost of any path to the target (admissible).<br>
+     * It may not be perfectly consistent though, settled nodes are hence reopened
+     * when a shorter distance shows up later.
+     * <br><br>
+     * The API is the same as the one of {@link Dijkstra}, but only the
+     * allocated {@link SearchState} is reused between queries.
+     *
+     * @param graph
+     * @param weighted use distances weighted by street types?
+     */
+    public AStar(Graph graph, boolean weighted)
+    {
+        g = graph;
+        this.weighted = weighted;
+        scale = g.getMinCostPerMeter(weighted);
+        state = new SearchState(g.size());
+        pot = new int[g.size()];
+    }
+
+
+    /**
+     * Using {@code weighted == true}.<br>
+     * See {@link #AStar(Graph, boolean)}.
+     */
+    public AStar(Graph graph)
+    {
+        this(graph, true);
+    }
+
+
+    public AStar setSource(int from)
+    {
+        source = from;
+        return this;
+    }
+
+
+    public AStar setTarget(int to)
+    {
+        target = to;
+        return this;
+    }
+
+
+    public boolean pathFromTo(int from, int to)
+    {
+        setSource(from);
+        setTarget(to);
+        return pathFromTo();
+    }
+
+
+    /**
+     * Compute the potential of {@code n} when it is reached for the first time.
+     */
+    private void reach(int n)
+    {
+        if (!state.isReached(n)) {
+            pot[n] = (int) (Distance.haversine(g.getLat(n), g.getLon(n), g.getLat(target), g.getLon(target)) * scale);
+        }
+    }
+
+
+    /**
+     * Is using the currently designated source and destination values.<br>
+     * See {@link #AStar(Graph, boolean)}.
+     *
+     * @return {@code false} when no path from source to target was found, otherwise {@code true}
+     */
+    public boolean pathFromTo()
+    {
+        limit.start();
+
+        // certainly unreachable (see StrongComponents), don't search the whole graph in vain
+        if (!g.mayReach(source, target)) {
+            found = false;
+            status = STATUS_NO_PATH;
+            return false;
+        }
+
+        state.reset();
+        final BinaryMinHeap heap = state.getHeap();
+
+        found = false;
+        reach(source);
+        state.setDist(source, 0, -1);
+        heap.insert(source, pot[source]);
+
+        while (!heap.isEmpty()) {
+            final int u = heap.getMinID();
+            final int key = heap.getMinValue();
+            heap.removeMin();
+
+            // outdated duplicate
+            final int u_dist = state.getDist(u);
+            if (key != u_dist + pot[u]) {
+                continue;
+            }
+
+            if (u == target) {
+                found = true;
+                break;
+            }
+
+            if (limit.exceeded()) {
+                status = limit.getStatus();
+                return false;
+            }
+
+            final int begin = g.edgeBegin(u);
+            final int end = g.edgeEnd(u);
+            for (int e = begin; e < end; ++e) {
+                final int inc = g.edgeWeight(e, weighted);
+                if (inc < 0)
+                    continue;
+
+                final int v = g.edgeTarget(e);
+                final int new_dist = u_dist + inc;
+                if (new_dist < state.getDist(v)) {
+                    reach(v);
+                    state.setDist(v, new_dist, u, e - begin);
+                    heap.insert(v, new_dist + pot[v]);
+                }
+            }
+        }
+
+        status = found ? STATUS_FOUND : STATUS_NO_PATH;
+        return found;
+    }
+
+
+    /**
+     * @return list of node IDs on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<Integer> getPathNodeIDs()
+    {
+        return getPathNodes(new IntList()).toLinkedList();
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathResult(PathResult)}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public PathResult getPathResult(PathResult out)
+    {
+        if (!found)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        PathResult.fromPreds(g, state, target, out);
+        accDist = out.getLength();
+        return out;
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathNodes(IntList)}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public IntList getPathNodes(IntList out)
+    {
+        if (!found)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        out.clear();
+        for (int i = target; i != -1; i = state.getPred(i)) {
+            out.add(i);
+        }
+        out.reverse();
+        accDist = PathResult.lengthFromPreds(g, state, target);
+        return out;
+    }
+
+
+    /**
+     * @return list of locations ({@link GeoPosition}) on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<GeoPosition> getPath()
+    {
+        return getPathResult(new PathResult()).toPositions();
+    }
+
+
+    /**
+     * @return accumulated distance of all edges in the shortest path
+     */
+    public int calculateDist()
+    {
+        if (!found)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        accDist = PathResult.lengthFromPreds(g, state, target);
+        return accDist;
+    }
+
+
+    public int getDist()
+    {
+        return accDist;
+    }
+
+
+    /**
+     * Cost of the last path found in the metric of the search (weighted or not),
+     * as opposed to {@link #getDist()}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public int getCost()
+    {
+        if (!found)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        return state.getDist(target);
+    }
+
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    public SearchLimit getLimit()
+    {
+        return limit;
+    }
+
+
+    @Override
+    public void run()
+    {
+        pathFromTo();
+    }
+
+}
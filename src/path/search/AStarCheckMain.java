@@ -0,0 +1,87 @@
+package path.search;
+
+import java.io.IOException;
+import java.util.Random;
+
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFactory;
+import data_structures.graph.InvalidGraphFormatException;
+
+
+/**
+ * Compares the path costs found by {@link AStar} with the ones of {@link Dijkstra},
+ * for both metrics. Besides random queries, which mostly span long distances,
+ * short queries are run: their target is a random walk of a few edges away from
+ * the source, so they consist of few and often short edges, where rounding the
+ * edge costs matters most. An inadmissible lower bound shows up as A* costs
+ * exceeding Dijkstra's.
+ */
+public class AStarCheckMain
+{
+
+    private static final int MAX_WALK = 32;
+
+
+    public static void main(String[] args) throws InvalidGraphFormatException, IOException
+    {
+        if (args.length < 1) {
+            System.out.println("Parameters: <graph file> [<queries>]");
+            return;
+        }
+
+        final Graph g = GraphFactory.load(args[0]);
+        final int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        final Random r = new Random(42);
+
+        final int[][] from = new int[2][queries];
+        final int[][] to = new int[2][queries];
+        for (int i = 0; i < queries; ++i) {
+            from[0][i] = r.nextInt(g.size());
+            to[0][i] = r.nextInt(g.size());
+
+            from[1][i] = r.nextInt(g.size());
+            to[1][i] = walk(g, from[1][i], 1 + r.nextInt(MAX_WALK), r);
+        }
+
+        boolean ok = true;
+        for (boolean weighted : new boolean[] { false, true }) {
+            final Dijkstra d = new Dijkstra(g, weighted);
+            final AStar a = new AStar(g, weighted);
+            System.out.println((weighted ? "Weighted" : "Unweighted") + " costs, cost per meter "
+                               + g.getMinCostPerMeter(weighted) + ":");
+
+            for (int k = 0; k < 2; ++k) {
+                int differ = 0;
+                for (int i = 0; i < queries; ++i) {
+                    final boolean found = d.pathFromTo(from[k][i], to[k][i]);
+                    if (found != a.pathFromTo(from[k][i], to[k][i])
+                            || found && d.getSearchDist(to[k][i]) != a.getCost()) {
+                        ++differ;
+                    }
+                }
+                ok &= differ == 0;
+                System.out.println(String.format("  %-6s queries: %d of %d differ",
+                                                 k == 0 ? "random" : "short", differ, queries));
+            }
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+    }
+
+
+    /**
+     * @return node reached from {@code n} following {@code steps} random edges,
+     *         less when a node without outgoing edges is hit
+     */
+    private static int walk(Graph g, int n, int steps, Random r)
+    {
+        for (int i = 0; i < steps; ++i) {
+            final int begin = g.edgeBegin(n);
+            final int end = g.edgeEnd(n);
+            if (begin == end)
+                break;
+            n = g.edgeTarget(begin + r.nextInt(end - begin));
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,334 @@
+package path.search;
+
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import data_structures.graph.Graph;
+import data_structures.heap.BinaryMinHeap;
+import data_structures.list.IntList;
+
+
+
+/**
+ * See {@link #BidirectionalDijkstra(Graph, boolean)}.
+ */
+public final class BidirectionalDijkstra implements PathSearch
+{
+    private final int     UNREACHED = SearchState.UNREACHED;
+    private final boolean weighted;
+
+    private final Graph   g;
+
+    /**
+     * Distance from the source (forward) and to the target (backward) for every
+     * node, the predecessor of the backward search is the successor towards the target.
+     */
+    private final SearchState fwd;
+    private final SearchState bwd;
+    /**
+     * Backward part of the path, reused by {@link #getPathResult(PathResult)}.
+     */
+    private final IntList back = new IntList();
+
+    private int           source           = -1;
+    private int           target           = -1;
+    private int           meeting          = -1;
+    private final SearchLimit limit        = new SearchLimit();
+    private int           status           = STATUS_NO_PATH;
+    private int           accDist          = 0;
+
+
+    /**
+     * Search for a shortest path by running a forward search from the source
+     * and a backward search (on incoming edges, see
+     * {@link data_structures.graph.Graph#inEdgeBegin(int) inEdgeBegin()})
+     * from the target at the same time, always advancing the frontier with the
+     * smaller minimum.<br>
+     * Every edge relaxation reaching a node already labeled by the opposite search
+     * yields a candidate path, the best one ({@code mu}) is kept.
+     * The search stops as soon as the sum of both frontier minima is not smaller
+     * than {@code mu}, no shorter path can be found from there on.
+     * The cost of the found path is therefore identical to the one found by
+     * {@link Dijkstra}, while far less nodes are settled on long queries.
+     * <br><br>
+     * Unlike {@link Dijkstra} only the allocated {@link SearchState}s are
+     * reused between queries.
+     * <br><br>
+     * <b>Note</b>: for every parameter designating nodes
+     * {@link data_structures.graph.Graph Graph}-internal node IDs are used.
+     *
+     * @param graph
+     * @param weighted use distances weighted by street types?
+     */
+    public BidirectionalDijkstra(Graph graph, boolean weighted)
+    {
+        g = graph;
+        this.weighted = weighted;
+        fwd = new SearchState(g.size());
+        bwd = new SearchState(g.size());
+    }
+
+
+    /**
+     * Using {@code weighted == true}.<br>
+     * See {@link #BidirectionalDijkstra(Graph, boolean)}.
+     */
+    public BidirectionalDijkstra(Graph graph)
+    {
+        this(graph, true);
+    }
+
+
+    public BidirectionalDijkstra setSource(int from)
+    {
+        source = from;
+        return this;
+    }
+
+
+    public BidirectionalDijkstra setTarget(int to)
+    {
+        target = to;
+        return this;
+    }
+
+
+    public boolean pathFromTo(int from, int to)
+    {
+        setSource(from);
+        setTarget(to);
+        return pathFromTo();
+    }
+
+
+    /**
+     * Is using the currently designated source and destination values.<br>
+     * See {@link #BidirectionalDijkstra(Graph, boolean)}.
+     *
+     * @return {@code false} when no path from source to target was found, otherwise {@code true}
+     */
+    public boolean pathFromTo()
+    {
+        limit.start();
+
+        // certainly unreachable (see StrongComponents), don't search the whole graph in vain
+        if (!g.mayReach(source, target)) {
+            meeting = -1;
+            status = STATUS_NO_PATH;
+            return false;
+        }
+
+        fwd.reset();
+        bwd.reset();
+        meeting = -1;
+
+        final BinaryMinHeap heap_f = fwd.getHeap();
+        final BinaryMinHeap heap_b = bwd.getHeap();
+        fwd.setDist(source, 0, -1);
+        bwd.setDist(target, 0, -1);
+        heap_f.insert(source, 0);
+        heap_b.insert(target, 0);
+
+        int mu = source == target ? 0 : UNREACHED;
+        if (source == target) {
+            meeting = source;
+        }
+
+        while (!heap_f.isEmpty() && !heap_b.isEmpty()) {
+            final int min_f = heap_f.getMinValue();
+            final int min_b = heap_b.getMinValue();
+
+            if ((long) min_f + min_b >= mu) {
+                break;
+            }
+            if (limit.exceeded()) {
+                meeting = -1;
+                status = limit.getStatus();
+                return false;
+            }
+
+            if (min_f <= min_b) {
+                final int u = heap_f.getMinID();
+                heap_f.removeMin();
+                if (fwd.isSettled(u))
+                    continue;
+                fwd.settle(u);
+
+                final int begin = g.edgeBegin(u);
+                final int end = g.edgeEnd(u);
+                for (int e = begin; e < end; ++e) {
+                    final int v = g.edgeTarget(e);
+                    final int inc = g.edgeWeight(e, weighted);
+                    if (inc < 0 || fwd.isSettled(v))
+                        continue;
+
+                    final int new_dist = min_f + inc;
+                    if (new_dist < fwd.getDist(v)) {
+                        fwd.setDist(v, new_dist, u, e - begin);
+                        heap_f.insert(v, new_dist);
+                    }
+                    final int d_b = bwd.getDist(v);
+                    if (d_b != UNREACHED && (long) fwd.getDist(v) + d_b < mu) {
+                        mu = fwd.getDist(v) + d_b;
+                        meeting = v;
+                    }
+                }
+            }
+            else {
+                final int u = heap_b.getMinID();
+                heap_b.removeMin();
+                if (bwd.isSettled(u))
+                    continue;
+                bwd.settle(u);
+
+                final int end = g.inEdgeEnd(u);
+                for (int r = g.inEdgeBegin(u); r < end; ++r) {
+                    final int v = g.inEdgeSource(r);
+                    final int e = g.inEdgeForward(r);
+                    final int inc = g.edgeWeight(e, weighted);
+                    if (inc < 0 || bwd.isSettled(v))
+                        continue;
+
+                    final int new_dist = min_b + inc;
+                    if (new_dist < bwd.getDist(v)) {
+                        bwd.setDist(v, new_dist, u, e - g.edgeBegin(v));
+                        heap_b.insert(v, new_dist);
+                    }
+                    final int d_f = fwd.getDist(v);
+                    if (d_f != UNREACHED && (long) d_f + bwd.getDist(v) < mu) {
+                        mu = d_f + bwd.getDist(v);
+                        meeting = v;
+                    }
+                }
+            }
+        }
+
+        status = meeting != -1 ? STATUS_FOUND : STATUS_NO_PATH;
+        return meeting != -1;
+    }
+
+
+    /**
+     * @return list of node IDs on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<Integer> getPathNodeIDs()
+    {
+        return getPathNodes(new IntList()).toLinkedList();
+    }
+
+
+    /**
+     * @return sum of the (unweighted) edges used by both searches
+     */
+    private int length()
+    {
+        int r = PathResult.lengthFromPreds(g, fwd, meeting);
+        for (int i = meeting, p; (p = bwd.getPred(i)) != -1; i = p) {
+            r += g.edgeWeight(g.edgeBegin(i) + bwd.getPredEdge(i), false);
+        }
+        return r;
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathResult(PathResult)}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public PathResult getPathResult(PathResult out)
+    {
+        if (meeting == -1)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        // backward part from the target, its predecessors point towards the target
+        back.clear();
+        for (int i = meeting; i != -1; i = bwd.getPred(i)) {
+            back.add(i);
+        }
+        out.clear();
+        for (int k = back.size() - 1; k > 0; --k) {
+            out.add(g, back.get(k), back.get(k - 1), bwd.getPredEdge(back.get(k - 1)));
+        }
+        for (int i = meeting; i != -1; i = fwd.getPred(i)) {
+            out.add(g, i, fwd.getPred(i), fwd.getPredEdge(i));
+        }
+        out.finishReversed();
+        accDist = out.getLength();
+        return out;
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathNodes(IntList)}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public IntList getPathNodes(IntList out)
+    {
+        if (meeting == -1)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        out.clear();
+        for (int i = meeting; i != -1; i = fwd.getPred(i)) {
+            out.add(i);
+        }
+        out.reverse();
+        for (int i = bwd.getPred(meeting); i != -1; i = bwd.getPred(i)) {
+            out.add(i);
+        }
+
+        accDist = length();
+        return out;
+    }
+
+
+    /**
+     * @return list of locations ({@link GeoPosition}) on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<GeoPosition> getPath()
+    {
+        return getPathResult(new PathResult()).toPositions();
+    }
+
+
+    /**
+     * @return accumulated distance of all edges in the shortest path
+     */
+    public int calculateDist()
+    {
+        if (meeting == -1)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        accDist = length();
+        return accDist;
+    }
+
+
+    public int getDist()
+    {
+        return accDist;
+    }
+
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    public SearchLimit getLimit()
+    {
+        return limit;
+    }
+
+
+    @Override
+    public void run()
+    {
+        pathFromTo();
+    }
+
+}
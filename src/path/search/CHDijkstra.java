@@ -0,0 +1,347 @@
+package path.search;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import data_structures.graph.Graph;
+import data_structures.graph.ch.ContractionHierarchy;
+import data_structures.heap.BinaryMinHeap;
+import data_structures.list.IntList;
+
+
+
+/**
+ * See {@link #CHDijkstra(Graph, ContractionHierarchy)}.
+ */
+public final class CHDijkstra implements PathSearch
+{
+    private final int     UNREACHED = SearchState.UNREACHED;
+
+    private final Graph   g;
+    private final ContractionHierarchy ch;
+
+    /**
+     * Upward search from the source (forward) and from the target (backward),
+     * the predecessor of the backward search is the successor towards the target.
+     */
+    private final SearchState fwd;
+    private final SearchState bwd;
+    /**
+     * Hierarchy edge used to reach a node, upward edges (forward)
+     * or downward edges (backward).
+     */
+    private final int[]   pred_edge_f;
+    private final int[]   pred_edge_b;
+
+    private int           source           = -1;
+    private int           target           = -1;
+    private int           meeting          = -1;
+    private final SearchLimit limit        = new SearchLimit();
+    private int           status           = STATUS_NO_PATH;
+    private int           accDist          = 0;
+    /**
+     * Unpacked path, reused by {@link #getPathNodes(IntList)} and {@link #calculateDist()}.
+     */
+    private final PathResult path          = new PathResult();
+
+
+    /**
+     * Query a {@link ContractionHierarchy}: a bidirectional Dijkstra which only
+     * follows edges leading to nodes of higher rank, upward edges from the source
+     * and (reversed) downward edges from the target. Each direction stops once its
+     * minimum is not smaller than the best path via a node reached by both searches.
+     * Shortcuts of the resulting path are unpacked recursively, so
+     * {@link #getPathNodeIDs()} returns the node IDs of the original {@code graph}.
+     * <br><br>
+     * The metric is the one the hierarchy was built for.
+     * <br><br>
+     * <b>Note</b>: for every parameter designating nodes
+     * {@link data_structures.graph.Graph Graph}-internal node IDs are used.
+     *
+     * @param graph the graph {@code ch} was built from
+     * @param ch hierarchy of {@code graph}
+     * @throws RuntimeException when {@code ch} was not built from {@code graph},
+     *         see {@link ContractionHierarchy#matches(Graph)}
+     */
+    public CHDijkstra(Graph graph, ContractionHierarchy ch)
+    {
+        if (!ch.matches(graph)) {
+            throw new RuntimeException("Hierarchy does not match graph, rebuild it");
+        }
+
+        g = graph;
+        this.ch = ch;
+        fwd = new SearchState(g.size());
+        bwd = new SearchState(g.size());
+        pred_edge_f = new int[g.size()];
+        pred_edge_b = new int[g.size()];
+    }
+
+
+    public CHDijkstra setSource(int from)
+    {
+        source = from;
+        return this;
+    }
+
+
+    public CHDijkstra setTarget(int to)
+    {
+        target = to;
+        return this;
+    }
+
+
+    public boolean pathFromTo(int from, int to)
+    {
+        setSource(from);
+        setTarget(to);
+        return pathFromTo();
+    }
+
+
+    /**
+     * Is using the currently designated source and destination values.<br>
+     * See {@link #CHDijkstra(Graph, ContractionHierarchy)}.
+     *
+     * @return {@code false} when no path from source to target was found, otherwise {@code true}
+     */
+    public boolean pathFromTo()
+    {
+        limit.start();
+
+        // certainly unreachable (see StrongComponents), don't search the whole graph in vain
+        if (!g.mayReach(source, target)) {
+            meeting = -1;
+            status = STATUS_NO_PATH;
+            return false;
+        }
+
+        fwd.reset();
+        bwd.reset();
+        final BinaryMinHeap heap_f = fwd.getHeap();
+        final BinaryMinHeap heap_b = bwd.getHeap();
+
+        meeting = -1;
+        int mu = UNREACHED;
+
+        fwd.setDist(source, 0, -1);
+        bwd.setDist(target, 0, -1);
+        heap_f.insert(source, 0);
+        heap_b.insert(target, 0);
+
+        while (true) {
+            final boolean go_f = !heap_f.isEmpty() && heap_f.getMinValue() < mu;
+            final boolean go_b = !heap_b.isEmpty() && heap_b.getMinValue() < mu;
+            if (!go_f && !go_b) {
+                break;
+            }
+            if (limit.exceeded()) {
+                meeting = -1;
+                status = limit.getStatus();
+                return false;
+            }
+
+            if (go_f && (!go_b || heap_f.getMinValue() <= heap_b.getMinValue())) {
+                final int u = heap_f.getMinID();
+                final int d = heap_f.getMinValue();
+                heap_f.removeMin();
+                if (d > fwd.getDist(u))
+                    continue;
+
+                final int d_b = bwd.getDist(u);
+                if (d_b != UNREACHED && (long) d + d_b < mu) {
+                    mu = d + d_b;
+                    meeting = u;
+                }
+
+                for (int e = ch.upBegin(u); e < ch.upEnd(u); ++e) {
+                    final int v = ch.upTarget(e);
+                    final int nd = d + ch.upWeight(e);
+                    if (nd < fwd.getDist(v)) {
+                        fwd.setDist(v, nd, u);
+                        pred_edge_f[v] = e;
+                        heap_f.insert(v, nd);
+                    }
+                }
+            }
+            else {
+                final int u = heap_b.getMinID();
+                final int d = heap_b.getMinValue();
+                heap_b.removeMin();
+                if (d > bwd.getDist(u))
+                    continue;
+
+                final int d_f = fwd.getDist(u);
+                if (d_f != UNREACHED && (long) d + d_f < mu) {
+                    mu = d + d_f;
+                    meeting = u;
+                }
+
+                for (int e = ch.downBegin(u); e < ch.downEnd(u); ++e) {
+                    final int v = ch.downTarget(e);
+                    final int nd = d + ch.downWeight(e);
+                    if (nd < bwd.getDist(v)) {
+                        bwd.setDist(v, nd, u);
+                        pred_edge_b[v] = e;
+                        heap_b.insert(v, nd);
+                    }
+                }
+            }
+        }
+
+        status = meeting != -1 ? STATUS_FOUND : STATUS_NO_PATH;
+        return meeting != -1;
+    }
+
+
+    /**
+     * Append the original nodes of the hierarchy edge {@code from -> to} (with
+     * middle node {@code mid}) to {@code out}, excluding {@code from}, each reached
+     * by the graph edge the original hierarchy edge stands for.
+     */
+    private void unpack(int from, int to, int mid, PathResult out)
+    {
+        // explicit stack of (from, to, mid) triples, processed left to right
+        int[] stack = new int[3 * 16];
+        int sp = 0;
+        stack[sp++] = from; stack[sp++] = to; stack[sp++] = mid;
+
+        while (sp > 0) {
+            final int m = stack[--sp];
+            final int b = stack[--sp];
+            final int a = stack[--sp];
+
+            if (m < 0) {
+                final int e = ContractionHierarchy.originalEdge(m);
+                out.add(g, b, a, e != -1 ? e - g.edgeBegin(a) : -1);
+                continue;
+            }
+
+            // a -> m is a downward edge, m -> b an upward edge (m has the lowest rank)
+            final int e1 = ch.findDown(a, m);
+            final int e2 = ch.findUp(m, b);
+            if (e1 < 0 || e2 < 0) {
+                throw new RuntimeException("Corrupt hierarchy, unable to unpack " + a + " -> " + b);
+            }
+
+            if (sp + 6 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // push the second half first
+            stack[sp++] = m; stack[sp++] = b; stack[sp++] = ch.upMid(e2);
+            stack[sp++] = a; stack[sp++] = m; stack[sp++] = ch.downMid(e1);
+        }
+    }
+
+
+    /**
+     * @return list of node IDs on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<Integer> getPathNodeIDs()
+    {
+        return getPathNodes(new IntList()).toLinkedList();
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathResult(PathResult)}. The legs are the graph edges the
+     * hierarchy edges stand for, hierarchies written without them fall back to the
+     * first edge between two nodes.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public PathResult getPathResult(PathResult out)
+    {
+        if (meeting == -1)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        // hierarchy nodes from the source up to the meeting node
+        final IntList up = new IntList();
+        for (int i = meeting; i != source; i = fwd.getPred(i)) {
+            up.add(i);
+        }
+        up.reverse();
+
+        out.clear();
+        out.add(g, source, -1, -1);
+        int last = source;
+        for (int k = 0; k < up.size(); ++k) {
+            final int i = up.get(k);
+            unpack(last, i, ch.upMid(pred_edge_f[i]), out);
+            last = i;
+        }
+        for (int i = meeting; i != target; i = bwd.getPred(i)) {
+            unpack(i, bwd.getPred(i), ch.downMid(pred_edge_b[i]), out);
+        }
+        out.finish();
+
+        accDist = out.getLength();
+        return out;
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathNodes(IntList)}.
+     *
+     * @throws RuntimeException when there's no path
+     */
+    public IntList getPathNodes(IntList out)
+    {
+        getPathResult(path);
+        out.clear();
+        for (int i = 0; i < path.size(); ++i) {
+            out.add(path.getNode(i));
+        }
+        return out;
+    }
+
+
+    /**
+     * @return list of locations ({@link GeoPosition}) on the shortest path from current source to destination
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<GeoPosition> getPath()
+    {
+        return getPathResult(new PathResult()).toPositions();
+    }
+
+
+    /**
+     * @return accumulated distance of all edges in the shortest path
+     */
+    public int calculateDist()
+    {
+        getPathResult(path);
+        return accDist;
+    }
+
+
+    public int getDist()
+    {
+        return accDist;
+    }
+
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    public SearchLimit getLimit()
+    {
+        return limit;
+    }
+
+
+    @Override
+    public void run()
+    {
+        pathFromTo();
+    }
+
+}
@@ -1,12 +1,12 @@
 package path.search;
 
-import java.util.Arrays;
 import java.util.LinkedList;
 
 import org.jdesktop.swingx.mapviewer.GeoPosition;
 
 import data_structures.graph.Graph;
-import data_structures.heap.BinaryMinHeap;
+import data_structures.heap.MinPriorityQueue;
+import data_structures.list.IntList;
 
 
 
@@ -16,17 +16,8 @@ import data_structures.heap.BinaryMinHeap;
  * See {@link #Dijkstra(Graph, int, int)}.<br>
  * See {@link #Dijkstra(Graph, boolean, int, int)}.
  */
-public final class Dijkstra implements Runnable
+public final class Dijkstra implements PathSearch
 {
-    /**
-     * Factor used when allocating the heap to save some memory.
-     */
-    private final int     HEAP_SIZE_FACTOR = 500;
-    /**
-     * Magic values used internally in the {@code state} field.
-     * We are in big trouble when these values are used as distances.
-     */
-    private final int     UNSETTLED = Integer.MAX_VALUE, SETTLED = Integer.MAX_VALUE - 1;
     private final boolean weighted;
 
     /**
@@ -34,17 +25,19 @@ public final class Dijkstra implements Runnable
      */
     private final Graph   g;
     /**
-     * This field contains the current minimum distance for every node,
-     * {@code SETTLED} when the node is optimal or {@code UNSETTLED}
-     * when completely untouched.
+     * Distances, predecessors and the heap, reset for every new source.
      */
-    private final int[]   state;
+    private final SearchState state;
     /**
-     * Contains the predecessor node for every node.
+     * Epoch of {@code state} when the search from the current source started.
      */
-    private final int[]   pred;
-
-    private BinaryMinHeap heap             = null;
+    private int           epoch            = -1;
+    /**
+     * Nodes settled since the search from the current source started.
+     */
+    private int           settled_num      = 0;
+    private final SearchLimit limit        = new SearchLimit();
+    private int           status           = STATUS_NO_PATH;
 
     private int           source           = -1;
     private int           target           = -1;
@@ -56,11 +49,26 @@ public final class Dijkstra implements Runnable
      */
     public Dijkstra(Graph graph, boolean weighted)
     {
+        this(graph, weighted, new SearchState(graph.size()));
+    }
+
+
+    /**
+     * Use (and reuse) the given search {@code state}, e.g. to share it with other
+     * searches run one after another in the same thread. The search from the
+     * current source is restarted when another search used {@code state} meanwhile.<br>
+     * See {@link #Dijkstra(Graph, boolean, int, int)}.
+     *
+     * @throws RuntimeException when {@code state} does not match {@code graph}
+     */
+    public Dijkstra(Graph graph, boolean weighted, SearchState state)
+    {
+        if (state.size() != graph.size()) {
+            throw new RuntimeException("Search state does not match graph");
+        }
         g = graph;
         this.weighted = weighted;
-        state = new int[g.size()];
-        pred = new int[g.size()];
-        Arrays.fill(pred, -1);
+        this.state = state;
     }
 
 
@@ -77,10 +85,20 @@ public final class Dijkstra implements Runnable
     /**
      * Search for a shortest path from {@code from} to {@code to}
      * within the given {@code graph}.<br>
-     * This class is maintaining a {@link data_structures.heap.BinaryMinHeap BinaryMinHeap}
-     * which will remain allocated even after a path was successfully found.
-     * As long as the source {@code from} remains the same, the same heap is reused,
-     * significantly speeding up subsequent queries.
+     * This class is maintaining a {@link SearchState} which will remain allocated
+     * even after a path was successfully found. By default its
+     * {@link data_structures.heap.IndexedMinHeap IndexedMinHeap} holds every node
+     * of the frontier exactly once, distances are lowered with decrease-key.
+     * Any other {@link SearchState#getQueue() queue} works as well.
+     * As long as the source {@code from} remains the same, the search is continued
+     * where it stopped, significantly speeding up subsequent queries. A new source
+     * resets the state in time proportional to the nodes touched before.
+     * <br><br>
+     * A query stops early when its {@link #getLimit() limit} is exceeded, e.g. an
+     * unreachable target doesn't settle the whole graph once a time limit is set.
+     * The state stays consistent, a later query from the same source continues.
+     * Queries without any possible path (see {@link Graph#mayReach(int, int)})
+     * are rejected without searching at all.
      * <br><br>
      * This class implements {@code Runnable} and provides necessary means to
      * collect the calculated path after it was executed in a separate thread.
@@ -111,11 +129,13 @@ public final class Dijkstra implements Runnable
     }
 
 
-    private void buildNewHeap(int source)
+    private void restart(int source)
     {
-        Arrays.fill(state, UNSETTLED);
-        heap = new BinaryMinHeap(g.size() / HEAP_SIZE_FACTOR);
-        heap.insert(source, 0);
+        state.reset();
+        epoch = state.getEpoch();
+        settled_num = 0;
+        state.setDist(source, 0, -1);
+        state.getQueue().insert(source, 0);
     }
 
 
@@ -142,53 +162,73 @@ public final class Dijkstra implements Runnable
      */
     public boolean pathFromTo()
     {
-        if (state[target] == SETTLED) {
+        limit.start();
+
+        // certainly unreachable (see StrongComponents), don't search the whole graph in vain
+        if (!g.mayReach(source, target)) {
+            status = STATUS_NO_PATH;
+            return false;
+        }
+
+        // another search shared the state in the meantime
+        if (state.getEpoch() != epoch) {
+            restart(source);
+        }
+
+        if (state.isSettled(target)) {
+            status = STATUS_FOUND;
             return true;
         }
 
-        loop : while (!heap.isEmpty()) {
+        final MinPriorityQueue heap = state.getQueue();
+        while (!heap.isEmpty()) {
             int u_id = heap.getMinID();
             int u_dist = heap.getMinValue();
             heap.removeMin();
 
-            state[u_id] = SETTLED;
-            int i = 0;
-            int neighbor = -1;
-
-            if (target == u_id) {
-                break loop;
+            // outdated duplicate, queues without decrease-key only
+            if (state.isSettled(u_id)) {
+                continue;
             }
 
-            while ((neighbor = g.getIthNeighbor(u_id, i++)) != -1) {
+            state.settle(u_id);
+            ++settled_num;
+
+            // relax the edges of u in any case, later queries from
+            // the same source continue with this heap
+            final int begin = g.edgeBegin(u_id);
+            final int end = g.edgeEnd(u_id);
+            for (int e = begin; e < end; ++e) {
+                final int neighbor = g.edgeTarget(e);
 
-                if (state[neighbor] == SETTLED) {
+                if (state.isSettled(neighbor)) {
                     continue;
                 }
 
-                final int inc = g.getIthEdgeDistFor(u_id, i - 1, weighted);
+                final int inc = g.edgeWeight(e, weighted);
                 if (inc < 0)
                     continue;
                 final int new_dist = u_dist + inc;
 
-                if (state[neighbor] > new_dist) {
-                    heap.insert(neighbor, new_dist);
-                    state[neighbor] = new_dist;
-                    pred[neighbor] = u_id;
+                if (state.getDist(neighbor) > new_dist) {
+                    heap.insertOrDecrease(neighbor, new_dist);
+                    state.setDist(neighbor, new_dist, u_id, e - begin);
                 }
+            }
 
-                if (target == neighbor) {
-                    state[neighbor] = SETTLED;
-                    pred[neighbor] = u_id;
-                    break loop;
-                }
+            // only a settled target is guaranteed to be optimal
+            if (target == u_id) {
+                break;
             }
-        }
 
-        if (state[target] == SETTLED) {
-            return true;
+            if (limit.exceeded()) {
+                status = limit.getStatus();
+                return false;
+            }
         }
 
-        return false;
+        status = state.isSettled(target) ? STATUS_FOUND : STATUS_NO_PATH;
+        return status == STATUS_FOUND;
     }
 
 
@@ -199,7 +239,7 @@ public final class Dijkstra implements Runnable
     {
         if (source != from) {
             source = from;
-            buildNewHeap(from);
+            restart(from);
         }
         return this;
     }
@@ -230,34 +270,12 @@ public final class Dijkstra implements Runnable
      */
     public void printPathStats(int from, int to)
     {
-        LinkedList<Integer> l = getPathNodeIDs();
-        int last = l.pop();
-        int curr;
-        int dist = 0;
-        int hops = l.size();
-        int line_count = 0;
-
-        String s = "" + last;
-        while (!l.isEmpty()) {
-            curr = l.pop();
-            if (g.getDist(last, curr) == -1) {
-                System.out.println("NO EDGE FOUND FROM " + curr + " TO " + last);
-            }
-            else {
-                if (s.length() / 80 > line_count) {
-                    ++line_count;
-                    s += System.getProperty("line.separator") + "           ";
-                }
-                dist += g.getDist(last, curr);
-                s += " -> " + curr;
-            }
-            last = curr;
-        }
+        final PathResult p = getPathResult(new PathResult());
 
         // System.out.println("----------------------------------------------------------------------");
         System.out.println("Shortest path from " + source + " to " + target);
-        System.out.println("   >  Hops: " + hops);
-        System.out.println("   >  Dist: " + dist);
+        System.out.println("   >  Hops: " + (p.size() - 1));
+        System.out.println("   >  Dist: " + p.getLength() + " (weighted: " + p.getWeightedLength() + ")");
         // System.out.println("   > Path: " + s);
         // System.out.println("----------------------------------------------------------------------");
     }
@@ -269,25 +287,7 @@ public final class Dijkstra implements Runnable
      */
     public LinkedList<GeoPosition> getPath()
     {
-        if (target == -1)
-            throw new RuntimeException("Can't return path without target");
-
-        LinkedList<GeoPosition> l = new LinkedList<GeoPosition>();
-        l.addFirst(g.getPosition(target));
-
-        accDist = 0;
-        int last = target;
-        int i = pred[last];
-        while (i != -1) {
-            accDist += g.getDist(i, last);
-            l.addFirst(g.getPosition(i));
-            if (i == source) {
-                break;
-            }
-            last = i;
-            i = pred[last];
-        }
-        return l;
+        return getPathResult(new PathResult()).toPositions();
     }
 
 
@@ -296,17 +296,7 @@ public final class Dijkstra implements Runnable
      */
     public int calculateDist()
     {
-        accDist = 0;
-        int last = target;
-        int i = pred[last];
-        while (i != -1) {
-            accDist += g.getDist(i, last);
-            if (i == source) {
-                break;
-            }
-            last = i;
-            i = pred[last];
-        }        
+        accDist = PathResult.lengthFromPreds(g, state, target);
         return accDist;
     }
 
@@ -317,31 +307,89 @@ public final class Dijkstra implements Runnable
     }
 
 
+    /**
+     * Distance of {@code n} from the current source in the metric of the search
+     * (weighted or not), as opposed to {@link #getDist()}.
+     *
+     * @return distance or {@code -1} when {@code n} isn't settled (yet)
+     */
+    public int getSearchDist(int n)
+    {
+        return state.getEpoch() == epoch && state.isSettled(n) ? state.getDist(n) : -1;
+    }
+
+
+    /**
+     * @return number of nodes settled since the search from the current source started
+     */
+    public int getSettledCount()
+    {
+        return settled_num;
+    }
+
+
     /**
      * @return list of node IDs on the shortest path from current source to destination
      * @throws RuntimeException when the current target is {@code -1}
      */
     public LinkedList<Integer> getPathNodeIDs()
+    {
+        return getPathNodes(new IntList()).toLinkedList();
+    }
+
+
+    /**
+     * Write the points of the shortest path from current source to destination
+     * into {@code out}, replacing its contents. The lengths of the legs are taken
+     * from the edges the search used, reusing {@code out} for consecutive queries
+     * avoids allocating anything per point.
+     *
+     * @return {@code out}
+     * @throws RuntimeException when the current target is {@code -1}
+     */
+    public PathResult getPathResult(PathResult out)
     {
         if (target == -1)
             throw new RuntimeException("Can't return path without target");
 
-        LinkedList<Integer> l = new LinkedList<Integer>();
-        l.addFirst(target);
+        PathResult.fromPreds(g, state, target, out);
+        accDist = out.getLength();
+        return out;
+    }
 
-        accDist = 0;
-        int last = target;
-        int i = pred[last];
-        while (i != -1) {
-            accDist += g.getDist(i, last);
-            l.addFirst(i);
-            if (i == source) {
-                break;
-            }
-            last = i;
-            i = pred[last];
+
+    /**
+     * Write the node IDs on the shortest path from current source to destination
+     * into {@code out}, replacing its contents. Reusing {@code out} for consecutive
+     * queries avoids allocating anything per node.
+     *
+     * @return {@code out}
+     * @throws RuntimeException when the current target is {@code -1}
+     */
+    public IntList getPathNodes(IntList out)
+    {
+        if (target == -1)
+            throw new RuntimeException("Can't return path without target");
+
+        out.clear();
+        for (int i = target; i != -1; i = state.getPred(i)) {
+            out.add(i);
         }
-        return l;
+        out.reverse();
+        accDist = PathResult.lengthFromPreds(g, state, target);
+        return out;
+    }
+
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    public SearchLimit getLimit()
+    {
+        return limit;
     }
 
 
@@ -0,0 +1,114 @@
+package path.search;
+
+import data_structures.graph.Graph;
+
+
+
+/**
+ * See {@link #DistanceMatrix(Graph, boolean)}.
+ */
+public final class DistanceMatrix
+{
+    /**
+     * Matrix entry of node pairs without a path.
+     */
+    public static final int UNREACHABLE = -1;
+
+    private final Dijkstra d;
+
+
+    /**
+     * Computes shortest path distances between sets of nodes without
+     * materializing any path.<br>
+     * Every row is a single one-to-many search: {@link Dijkstra} continues the
+     * search from the same source for every further target, so the search stops
+     * as soon as the farthest target is settled instead of running once per pair.
+     * Paths should only be requested (e.g. by {@link Dijkstra#getPath()}) for the
+     * pairs actually chosen based on the distances.
+     * <br><br>
+     * Distances are in the metric of the search, see
+     * {@link Dijkstra#getSearchDist(int)}.
+     * <br><br>
+     * <b>Note</b>: for every parameter designating nodes
+     * {@link data_structures.graph.Graph Graph}-internal node IDs are used.
+     *
+     * @param graph
+     * @param weighted use distances weighted by street types?
+     */
+    public DistanceMatrix(Graph graph, boolean weighted)
+    {
+        this(graph, weighted, new SearchState(graph.size()));
+    }
+
+
+    /**
+     * Use (and reuse) the given search {@code state}.<br>
+     * See {@link #DistanceMatrix(Graph, boolean)}.
+     */
+    public DistanceMatrix(Graph graph, boolean weighted, SearchState state)
+    {
+        d = new Dijkstra(graph, weighted, state);
+    }
+
+
+    /**
+     * Distances from {@code source} to every node in {@code targets}.
+     *
+     * @return array of the size of {@code targets}, {@code UNREACHABLE} when there's no path
+     * @throws RuntimeException when the search was cancelled or timed out, see {@link #getLimit()}
+     */
+    public int[] oneToMany(int source, int[] targets)
+    {
+        final int[] r = new int[targets.length];
+        d.setSource(source);
+        for (int i = 0; i < targets.length; ++i) {
+            if (d.setTarget(targets[i]).pathFromTo()) {
+                r[i] = d.getSearchDist(targets[i]);
+            }
+            else if (d.getStatus() == PathSearch.STATUS_NO_PATH) {
+                r[i] = UNREACHABLE;
+            }
+            else {
+                throw new RuntimeException("Distance search " + (d.getStatus() == PathSearch.STATUS_CANCELLED
+                                                                 ? "cancelled" : "timed out"));
+            }
+        }
+        return r;
+    }
+
+
+    /**
+     * Cancellation and time limit of every single search.
+     */
+    public SearchLimit getLimit()
+    {
+        return d.getLimit();
+    }
+
+
+    /**
+     * Distances from every node in {@code sources} to every node in {@code targets}.
+     *
+     * @return matrix {@code [sources.length][targets.length]},
+     *         {@code UNREACHABLE} when there's no path
+     */
+    public int[][] manyToMany(int[] sources, int[] targets)
+    {
+        final int[][] r = new int[sources.length][];
+        for (int i = 0; i < sources.length; ++i) {
+            r[i] = oneToMany(sources[i], targets);
+        }
+        return r;
+    }
+
+
+    /**
+     * Pairwise distances between all {@code nodes}.<br>
+     * See {@link #manyToMany(int[], int[])}.
+     */
+    public int[][] manyToMany(int[] nodes)
+    {
+        return manyToMany(nodes, nodes);
+    }
+
+}
@@ -0,0 +1,126 @@
+package path.search;
+
+import java.io.IOException;
+import java.util.Random;
+
+import util.StopWatch;
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFactory;
+import data_structures.graph.InvalidGraphFormatException;
+
+
+/**
+ * Compares iterating the edges of every node with the {@code getIth*()} accessors
+ * of {@link Graph} against the range accessors ({@link Graph#edgeBegin(int) edgeBegin()} etc.),
+ * for both graph representations, and the settle rate of {@link Dijkstra} (which uses
+ * the range accessors).<br>
+ * Both representations pass through the same call sites, which therefore aren't
+ * monomorphic, as in an application loading graphs with different representations.
+ */
+public class EdgeIterationBenchmarkMain
+{
+
+    private static final String[] REPRESENTATION_NAME = { "array", "off-heap" };
+
+
+    public static void main(String[] args) throws InvalidGraphFormatException, IOException
+    {
+        if (args.length < 1) {
+            System.out.println("Parameters: <graph file> [<rounds>] [<queries>]");
+            return;
+        }
+
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        final Graph[] graphs = { GraphFactory.load(args[0], GraphFactory.REPRESENTATION_ARRAY),
+                                 GraphFactory.load(args[0], GraphFactory.REPRESENTATION_OFF_HEAP) };
+
+        long edges = 0;
+        for (int n = 0; n < graphs[0].size(); ++n) {
+            edges += graphs[0].edgeEnd(n) - graphs[0].edgeBegin(n);
+        }
+
+        for (boolean weighted : new boolean[] { false, true }) {
+            System.out.println("Scanning all " + edges + (weighted ? " weighted" : " unweighted")
+                               + " edges, best of " + rounds + " rounds:");
+            for (int k = 0; k < graphs.length; ++k) {
+                for (int api = 0; api < 2; ++api) {
+                    double best = Double.MAX_VALUE;
+                    long sum = 0;
+
+                    // the first rounds warm up the JIT
+                    for (int round = 0; round < 2 * rounds; ++round) {
+                        final StopWatch sw = new StopWatch().lap();
+                        sum = api == 0 ? scanIndexed(graphs[k], weighted) : scanRange(graphs[k], weighted);
+                        if (round >= rounds)
+                            best = Math.min(best, sw.lap().getLastInSec());
+                    }
+
+                    System.out.println(String.format("  %-9s %-8s %8.4f s  %7.1f M edges/s  (sum %d)",
+                                                     REPRESENTATION_NAME[k], api == 0 ? "getIth" : "range",
+                                                     best, edges / best / 1e6, sum));
+                }
+            }
+        }
+
+        final int[] from = new int[queries];
+        final int[] to = new int[queries];
+        final Random r = new Random(42);
+        for (int i = 0; i < queries; ++i) {
+            from[i] = r.nextInt(graphs[0].size());
+            to[i] = r.nextInt(graphs[0].size());
+        }
+
+        System.out.println("Dijkstra, " + queries + " queries, best of " + rounds + " rounds:");
+        for (int k = 0; k < graphs.length; ++k) {
+            final Dijkstra d = new Dijkstra(graphs[k], true);
+            double best = Double.MAX_VALUE;
+            long settled = 0;
+
+            for (int round = 0; round <= rounds; ++round) {
+                settled = 0;
+                final StopWatch sw = new StopWatch().lap();
+                for (int i = 0; i < queries; ++i) {
+                    d.pathFromTo(from[i], to[i]);
+                    settled += d.getSettledCount();
+                }
+                if (round > 0)
+                    best = Math.min(best, sw.lap().getLastInSec());
+            }
+
+            System.out.println(String.format("  %-9s %8.3f s  %6.2f M settled/s",
+                                             REPRESENTATION_NAME[k], best, settled / best / 1e6));
+        }
+    }
+
+
+    /**
+     * Sum up targets and weights of all edges, node by node, with the {@code getIth*()} accessors.
+     */
+    private static long scanIndexed(Graph g, boolean weighted)
+    {
+        long r = 0;
+        for (int n = 0; n < g.size(); ++n) {
+            for (int i = 0, v; (v = g.getIthNeighbor(n, i)) != -1; ++i) {
+                r += v + g.getIthEdgeDistFor(n, i, weighted);
+            }
+        }
+        return r;
+    }
+
+
+    /**
+     * Like {@link #scanIndexed(Graph, boolean)}, with the range accessors.
+     */
+    private static long scanRange(Graph g, boolean weighted)
+    {
+        long r = 0;
+        for (int n = 0; n < g.size(); ++n) {
+            for (int e = g.edgeBegin(n), end = g.edgeEnd(n); e < end; ++e) {
+                r += g.edgeTarget(e) + g.edgeWeight(e, weighted);
+            }
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,196 @@
+package path.search;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import data_structures.graph.Graph;
+
+
+
+/**
+ * See {@link #ParallelDistanceMatrix(Graph, boolean, int)}.
+ */
+public final class ParallelDistanceMatrix
+{
+    /**
+     * Seconds idle worker threads are kept alive.
+     */
+    private static final long KEEP_ALIVE = 60;
+
+    private final Graph              g;
+    private final boolean            weighted;
+    private final ThreadPoolExecutor executor;
+    /**
+     * Search states not in use by any row, at most one per worker thread.
+     */
+    private final ConcurrentLinkedQueue<SearchState> pool = new ConcurrentLinkedQueue<SearchState>();
+
+
+    /**
+     * Same as {@link DistanceMatrix}, but the rows (one-to-many searches) are
+     * computed concurrently by worker threads owned by this instance.<br>
+     * The graph is only read and shared by all rows. Every row borrows a
+     * {@link SearchState} from a pool kept by this instance, so a state is only
+     * allocated for every worker thread, not for every row, and is reused by later
+     * calls. An instance should therefore live as long as its graph.
+     * <br><br>
+     * Every row is searched with a {@link SearchLimit} of its own, its parent is the
+     * limit passed to {@link #manyToMany(int[], int[], SearchLimit)}: cancelling
+     * that one (from any thread) or interrupting the calling thread stops all rows.
+     * Workers are daemon threads and terminate after a minute without
+     * work, call {@link #shutdown()} when the graph is no longer used.
+     *
+     * @param graph
+     * @param weighted use distances weighted by street types?
+     * @param threads number of worker threads, i.e. rows computed at once
+     */
+    public ParallelDistanceMatrix(Graph graph, boolean weighted, int threads)
+    {
+        g = graph;
+        this.weighted = weighted;
+
+        final AtomicInteger num = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                final Thread t = new Thread(r, "distance-matrix-" + num.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * One worker thread per available processor.<br>
+     * See {@link #ParallelDistanceMatrix(Graph, boolean, int)}.
+     */
+    public ParallelDistanceMatrix(Graph graph, boolean weighted)
+    {
+        this(graph, weighted, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * @return the graph searched by this instance
+     */
+    public Graph getGraph()
+    {
+        return g;
+    }
+
+
+    private int[] row(int source, int[] targets, SearchLimit limit)
+    {
+        SearchState state = pool.poll();
+        if (state == null)
+            state = new SearchState(g.size());
+        try {
+            final DistanceMatrix m = new DistanceMatrix(g, weighted, state);
+            m.getLimit().setParent(limit);
+            return m.oneToMany(source, targets);
+        }
+        finally {
+            pool.add(state);
+        }
+    }
+
+
+    /**
+     * See {@link DistanceMatrix#manyToMany(int[], int[])}.<br>
+     * Rows still running or waiting when one fails (or the calling thread is
+     * interrupted) are cancelled, their workers are interrupted.
+     *
+     * @param limit parent of the limits of all rows, see {@link SearchLimit#setParent(SearchLimit)},
+     *              {@code null} for none
+     * @throws RuntimeException when a row failed, was cancelled or timed out, or the
+     *                          calling thread was interrupted
+     */
+    public int[][] manyToMany(int[] sources, final int[] targets, final SearchLimit limit)
+    {
+        final ArrayList<Future<int[]>> rows = new ArrayList<Future<int[]>>(sources.length);
+        for (final int s : sources) {
+            rows.add(executor.submit(new Callable<int[]>() {
+                @Override
+                public int[] call()
+                {
+                    return row(s, targets, limit);
+                }
+            }));
+        }
+
+        final int[][] r = new int[sources.length][];
+        try {
+            for (int i = 0; i < sources.length; ++i) {
+                r[i] = rows.get(i).get();
+            }
+        }
+        catch (InterruptedException e) {
+            for (Future<int[]> f : rows)
+                f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing distances", e);
+        }
+        catch (ExecutionException e) {
+            for (Future<int[]> f : rows)
+                f.cancel(true);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException("Unable to compute distances", e.getCause());
+        }
+        return r;
+    }
+
+
+    /**
+     * Without a limit.<br>
+     * See {@link #manyToMany(int[], int[], SearchLimit)}.
+     */
+    public int[][] manyToMany(int[] sources, int[] targets)
+    {
+        return manyToMany(sources, targets, null);
+    }
+
+
+    /**
+     * Pairwise distances between all {@code nodes}.<br>
+     * See {@link #manyToMany(int[], int[], SearchLimit)}.
+     */
+    public int[][] manyToMany(int[] nodes, SearchLimit limit)
+    {
+        return manyToMany(nodes, nodes, limit);
+    }
+
+
+    /**
+     * Pairwise distances between all {@code nodes}, without a limit.<br>
+     * See {@link #manyToMany(int[], int[], SearchLimit)}.
+     */
+    public int[][] manyToMany(int[] nodes)
+    {
+        return manyToMany(nodes, nodes, null);
+    }
+
+
+    /**
+     * Interrupt running rows and stop the worker threads, the instance can't be
+     * used afterwards.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        pool.clear();
+    }
+
+}
@@ -0,0 +1,405 @@
+package path.search;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFile;
+import data_structures.list.IntList;
+
+
+
+/**
+ * See {@link #PathResult(int) PathResult}.
+ */
+public final class PathResult
+{
+    private final double GROWTH_FACTOR = 0.5;
+
+    private int[]    node = null;
+    private double[] lat  = null;
+    private double[] lon  = null;
+    /**
+     * Length of the path up to every point in meters, the length of the
+     * leg leading to a point until {@link #finish()}. Same for the weighted length.
+     */
+    private int[]    dist = null;
+    private int[]    dist_w = null;
+    /**
+     * Index of the edge of the previous node leading to a node, {@code -1}
+     * for points which aren't reached by an edge.
+     */
+    private int[]    edge = null;
+    /**
+     * Highway type of the edge leading to a point, {@code GraphFile.TYPE_UNKNOWN}
+     * for the first point or when the graph doesn't know it.
+     */
+    private byte[]   type = null;
+    private int      size = 0;
+
+
+    /**
+     * Initializes a new empty path with initial capacity {@code Math.max(1, capacity)}.<br>
+     * The points of a path found by a {@link PathSearch}, stored as packed arrays:
+     * node ID, latitude, longitude, the edge leading to the point and its highway
+     * type and the length of the path from its first point up to each point, both
+     * unweighted (meters) and weighted by street types.
+     * <br><br>
+     * Unlike a {@code LinkedList<GeoPosition>} nothing is allocated per point, and
+     * a path can be reused for any number of queries
+     * (see {@link PathSearch#getPathResult(PathResult)}): its capacity is kept
+     * and only grows when needed.
+     *
+     * @param capacity initial capacity
+     */
+    public PathResult(int capacity)
+    {
+        node = new int[Math.max(1, capacity)];
+        lat = new double[node.length];
+        lon = new double[node.length];
+        dist = new int[node.length];
+        dist_w = new int[node.length];
+        edge = new int[node.length];
+        type = new byte[node.length];
+    }
+
+
+    /**
+     * Using an initial capacity of {@code 64}.<br>
+     * See {@link #PathResult(int)}.
+     */
+    public PathResult()
+    {
+        this(64);
+    }
+
+
+    /**
+     * Grow the arrays by {@code GROWTH_FACTOR}, at least by 1.
+     */
+    private void grow()
+    {
+        final int new_capacity = node.length + (int) (node.length * GROWTH_FACTOR) + 1;
+        node = Arrays.copyOf(node, new_capacity);
+        lat = Arrays.copyOf(lat, new_capacity);
+        lon = Arrays.copyOf(lon, new_capacity);
+        dist = Arrays.copyOf(dist, new_capacity);
+        dist_w = Arrays.copyOf(dist_w, new_capacity);
+        edge = Arrays.copyOf(edge, new_capacity);
+        type = Arrays.copyOf(type, new_capacity);
+    }
+
+
+    /**
+     * Remove all points, the capacity is kept.
+     */
+    PathResult clear()
+    {
+        size = 0;
+        return this;
+    }
+
+
+    /**
+     * Append a point.
+     *
+     * @param n node ID, {@code -1} for points off the graph (e.g. on a segment)
+     * @param leg length of the leg between the previous point and this one in meters
+     * @param leg_w weighted length of the leg
+     * @param e index of the edge of the previous node leading to this one, {@code -1} when none
+     * @param t highway type of the leg, see {@link Graph#edgeType(int)}
+     */
+    void add(int n, double la, double lo, int leg, int leg_w, int e, int t)
+    {
+        if (size >= node.length) {
+            grow();
+        }
+        node[size] = n;
+        lat[size] = la;
+        lon[size] = lo;
+        dist[size] = leg;
+        dist_w[size] = leg_w;
+        type[size] = (byte) t;
+        edge[size++] = e;
+    }
+
+
+    /**
+     * Append node {@code n} of {@code g}, reached by the {@code e}'th edge of {@code p}.<br>
+     * When {@code e} isn't known (it's {@code -1} but there is a predecessor {@code p})
+     * the first edge {@code p -> n} is used.
+     *
+     * @param p previous node, {@code -1} when {@code n} is the first node
+     */
+    void add(Graph g, int n, int p, int e)
+    {
+        if (p == -1) {
+            add(n, g.getLat(n), g.getLon(n), 0, 0, -1, GraphFile.TYPE_UNKNOWN);
+            return;
+        }
+        if (e == -1) {
+            e = findEdge(g, p, n);
+        }
+        final int k = g.edgeBegin(p) + e;
+        add(n, g.getLat(n), g.getLon(n), g.edgeWeight(k, false), g.edgeWeight(k, true), e, g.edgeType(k));
+    }
+
+
+    /**
+     * @return index of the first edge {@code p -> n}
+     * @throws RuntimeException when there's no such edge
+     */
+    private static int findEdge(Graph g, int p, int n)
+    {
+        final int begin = g.edgeBegin(p);
+        for (int e = begin, end = g.edgeEnd(p); e < end; ++e) {
+            if (g.edgeTarget(e) == n)
+                return e - begin;
+        }
+        throw new RuntimeException("No edge from " + p + " to " + n);
+    }
+
+
+    /**
+     * Complete a path appended from its end to its start following predecessors,
+     * every point added with the length of the leg leading to it: reverse the
+     * points, then see {@link #finish()}.
+     */
+    void finishReversed()
+    {
+        for (int i = 0, j = size - 1; i < j; ++i, --j) {
+            final int tn = node[i]; node[i] = node[j]; node[j] = tn;
+            final double ta = lat[i]; lat[i] = lat[j]; lat[j] = ta;
+            final double to = lon[i]; lon[i] = lon[j]; lon[j] = to;
+            final int td = dist[i]; dist[i] = dist[j]; dist[j] = td;
+            final int tw = dist_w[i]; dist_w[i] = dist_w[j]; dist_w[j] = tw;
+            final int te = edge[i]; edge[i] = edge[j]; edge[j] = te;
+            final byte tt = type[i]; type[i] = type[j]; type[j] = tt;
+        }
+        finish();
+    }
+
+
+    /**
+     * Complete a path appended from its start to its end, every point added
+     * with the length of the leg leading to it: accumulate the lengths.
+     */
+    void finish()
+    {
+        if (size > 0) {
+            dist[0] = 0;
+            dist_w[0] = 0;
+        }
+        for (int i = 1; i < size; ++i) {
+            dist[i] += dist[i - 1];
+            dist_w[i] += dist_w[i - 1];
+        }
+    }
+
+
+    /**
+     * Fill {@code out} with the nodes in {@code path}, the edges between them
+     * are looked up (for searches not knowing the edges used).
+     *
+     * @return {@code out}
+     */
+    static PathResult fromNodes(Graph g, IntList path, PathResult out)
+    {
+        out.clear();
+        for (int i = 0; i < path.size(); ++i) {
+            out.add(g, path.get(i), i > 0 ? path.get(i - 1) : -1, -1);
+        }
+        out.finish();
+        return out;
+    }
+
+
+    /**
+     * Fill {@code out} with the path to {@code target} labeled in {@code s}, the legs
+     * are the edges recorded by the search (see {@link SearchState#getPredEdge(int)}),
+     * without looking up anything.
+     *
+     * @return {@code out}
+     */
+    static PathResult fromPreds(Graph g, SearchState s, int target, PathResult out)
+    {
+        out.clear();
+        for (int n = target; n != -1; n = s.getPred(n)) {
+            out.add(g, n, s.getPred(n), s.getPredEdge(n));
+        }
+        out.finishReversed();
+        return out;
+    }
+
+
+    /**
+     * Sum of the (unweighted) edges of the path to {@code target} labeled in {@code s},
+     * i.e. {@code fromPreds(g, s, target, out).getLength()} without filling a path.
+     */
+    static int lengthFromPreds(Graph g, SearchState s, int target)
+    {
+        int r = 0;
+        for (int n = target, p; (p = s.getPred(n)) != -1; n = p) {
+            final int e = s.getPredEdge(n);
+            r += g.edgeWeight(g.edgeBegin(p) + (e != -1 ? e : findEdge(g, p, n)), false);
+        }
+        return r;
+    }
+
+
+    private void check(int i)
+    {
+        if (i >= size)
+            throw new ArrayIndexOutOfBoundsException(i);
+    }
+
+
+    /**
+     * @return number of points
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    /**
+     * @return node ID of the {@code i}'th point, {@code -1} when it's not a node
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public int getNode(int i)
+    {
+        check(i);
+        return node[i];
+    }
+
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public double getLat(int i)
+    {
+        check(i);
+        return lat[i];
+    }
+
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public double getLon(int i)
+    {
+        check(i);
+        return lon[i];
+    }
+
+
+    /**
+     * @return length of the path from its first point to the {@code i}'th point in meters
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public int getDist(int i)
+    {
+        check(i);
+        return dist[i];
+    }
+
+
+    /**
+     * @return length of the path from its first point to the {@code i}'th point
+     *         weighted by street types, in the metric of weighted searches
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public int getWeightedDist(int i)
+    {
+        check(i);
+        return dist_w[i];
+    }
+
+
+    /**
+     * @return length of the leg from the {@code i-1}'th to the {@code i}'th point in meters
+     * @throws ArrayIndexOutOfBoundsException when not {@code 0 < i < }{@link #size()}
+     */
+    public int getLegDist(int i)
+    {
+        check(i);
+        return dist[i] - dist[i - 1];
+    }
+
+
+    /**
+     * @return index of the edge of the {@code i-1}'th point's node leading to
+     *         the {@code i}'th point, i.e. {@code Graph.getIthNeighbor(getNode(i-1), getEdge(i)) == getNode(i)},
+     *         or {@code -1} when the leg isn't an edge (e.g. the first point or a partial segment)
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public int getEdge(int i)
+    {
+        check(i);
+        return edge[i];
+    }
+
+
+    /**
+     * @return highway type of the leg leading to the {@code i}'th point (see {@link Graph#edgeType(int)}),
+     *         {@code GraphFile.TYPE_UNKNOWN} for the first point or when the graph doesn't know it
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public int getType(int i)
+    {
+        check(i);
+        return type[i];
+    }
+
+
+    /**
+     * @return length of the whole path in meters
+     */
+    public int getLength()
+    {
+        return size > 0 ? dist[size - 1] : 0;
+    }
+
+
+    /**
+     * @return length of the whole path weighted by street types
+     */
+    public int getWeightedLength()
+    {
+        return size > 0 ? dist_w[size - 1] : 0;
+    }
+
+
+    /**
+     * @return location of the {@code i}'th point, allocated on every call
+     * @throws ArrayIndexOutOfBoundsException when not {@code -1 < i < }{@link #size()}
+     */
+    public GeoPosition getPosition(int i)
+    {
+        check(i);
+        return new GeoPosition(lat[i], lon[i]);
+    }
+
+
+    /**
+     * @return locations of all points, for APIs still using {@code GeoPosition}s
+     */
+    public LinkedList<GeoPosition> toPositions()
+    {
+        final LinkedList<GeoPosition> l = new LinkedList<GeoPosition>();
+        for (int i = 0; i < size; ++i) {
+            l.add(new GeoPosition(lat[i], lon[i]));
+        }
+        return l;
+    }
+
+}
@@ -0,0 +1,44 @@
+package path.search;
+
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import data_structures.list.IntList;
+
+
+
+/**
+ * Interface defining the API shared by all point-to-point searches.<br>
+ * See {@link path.search.Dijkstra Dijkstra} for detailed comments and explanations.
+ */
+public interface PathSearch extends Runnable
+{
+    /**
+     * Result of the last query, see {@link #getStatus()}.
+     */
+    public static final int STATUS_FOUND     = 0,
+                            STATUS_NO_PATH   = 1,
+                            STATUS_CANCELLED = 2,
+                            STATUS_TIMED_OUT = 3;
+
+    public PathSearch setSource(int from);
+    public PathSearch setTarget(int to);
+    public boolean pathFromTo(int from, int to);
+    public boolean pathFromTo();
+
+    // why the last query returned (not) a path
+    public int getStatus();
+    // cancellation and time limit of the queries
+    public SearchLimit getLimit();
+
+    // path of the last successful search
+    public LinkedList<GeoPosition> getPath();
+    public LinkedList<Integer> getPathNodeIDs();
+    // same without boxing, written into a reusable buffer
+    public IntList getPathNodes(IntList out);
+    // packed locations and lengths, written into a reusable buffer
+    public PathResult getPathResult(PathResult out);
+    public int calculateDist();
+    public int getDist();
+}
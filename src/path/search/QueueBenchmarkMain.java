@@ -0,0 +1,73 @@
+package path.search;
+
+import java.io.IOException;
+import java.util.Random;
+
+import util.StopWatch;
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFactory;
+import data_structures.graph.InvalidGraphFormatException;
+
+
+/**
+ * Compares the settle rate of {@link Dijkstra} with the different priority
+ * queues of {@link SearchState} on random queries.
+ */
+public class QueueBenchmarkMain
+{
+
+    private static final String[] QUEUE_NAME = { "indexed 4-ary heap", "radix heap", "binary heap" };
+
+
+    public static void main(String[] args) throws InvalidGraphFormatException, IOException
+    {
+        if (args.length < 1) {
+            System.out.println("Parameters: <graph file> [<queries>] [<rounds>]");
+            return;
+        }
+
+        final Graph g = GraphFactory.load(args[0]);
+        final int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        final int[] from = new int[queries];
+        final int[] to = new int[queries];
+        final Random r = new Random(42);
+        for (int i = 0; i < queries; ++i) {
+            from[i] = r.nextInt(g.size());
+            to[i] = r.nextInt(g.size());
+        }
+
+        for (boolean weighted : new boolean[] { false, true }) {
+            System.out.println((weighted ? "Weighted" : "Unweighted") + " distances, "
+                               + queries + " queries, best of " + rounds + " rounds:");
+
+            for (int q = 0; q < QUEUE_NAME.length; ++q) {
+                final Dijkstra d = new Dijkstra(g, weighted, new SearchState(g.size(), q));
+                double best = Double.MAX_VALUE;
+                long settled = 0;
+                long dist_sum = 0;
+
+                // the first round warms up the JIT
+                for (int round = 0; round <= rounds; ++round) {
+                    settled = 0;
+                    dist_sum = 0;
+                    final StopWatch sw = new StopWatch().lap();
+                    for (int i = 0; i < queries; ++i) {
+                        // in the metric of the search, the paths may differ between equally short ones
+                        if (d.pathFromTo(from[i], to[i]))
+                            dist_sum += d.getSearchDist(to[i]);
+                        settled += d.getSettledCount();
+                    }
+                    if (round > 0)
+                        best = Math.min(best, sw.lap().getLastInSec());
+                }
+
+                System.out.println(String.format("  %-20s %8.3f s  %6.2f M settled/s  %8.3f ms/query  (cost sum %d)",
+                                                 QUEUE_NAME[q], best, settled / best / 1e6,
+                                                 best * 1000.0 / queries, dist_sum));
+            }
+        }
+    }
+
+}
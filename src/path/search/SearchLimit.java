@@ -0,0 +1,163 @@
+package path.search;
+
+
+
+/**
+ * See {@link #SearchLimit()}.
+ */
+public final class SearchLimit
+{
+    /**
+     * Number of settled nodes between two checks of the limits.
+     * A power of two.
+     */
+    public static final int CHECK_INTERVAL = 1024;
+
+    private volatile boolean cancelled = false;
+    /**
+     * Time limit per query in milliseconds, {@code 0} when unlimited.
+     */
+    private long             time_limit = 0;
+    /**
+     * Deadline of the running query ({@link System#nanoTime()}), valid when {@code time_limit > 0}.
+     */
+    private long             deadline   = 0;
+    private int              count      = 0;
+    private int              status     = PathSearch.STATUS_FOUND;
+    private SearchLimit      parent     = null;
+
+
+    /**
+     * Cooperative cancellation and time limit of the queries of a {@link PathSearch}.<br>
+     * Every search counts its settled nodes here and checks the limits every
+     * {@code CHECK_INTERVAL} nodes, which is cheap enough to not matter per node.
+     * A query exceeding a limit stops early, {@code pathFromTo()} returns {@code false}
+     * and {@link PathSearch#getStatus()} tells why:
+     * <ul>
+     * <li>{@code STATUS_CANCELLED} after {@link #cancel()} or when the thread running
+     *     the search was interrupted (e.g. by {@link java.util.concurrent.Future#cancel(boolean)
+     *     Future.cancel(true)}), the interrupt flag is not cleared
+     * <li>{@code STATUS_TIMED_OUT} when the query ran longer than the
+     *     {@link #setTimeLimit(long) time limit}
+     * </ul>
+     * {@link #cancel()} may be called from any thread, also before the query was
+     * started (e.g. while it's still waiting in an executor). It stays in effect for
+     * all following queries until {@link #reset()}, which the owner calls before
+     * submitting new ones. The time limit should only be changed between queries.<br>
+     * A limit may have a {@link #setParent(SearchLimit) parent}, e.g. the limit of a
+     * whole tour, stopping all of its searches at once.
+     */
+    public SearchLimit()
+    {
+    }
+
+
+    /**
+     * Time limit of every query, {@code 0} (default) for no limit.
+     *
+     * @param ms milliseconds
+     */
+    public SearchLimit setTimeLimit(long ms)
+    {
+        time_limit = Math.max(0, ms);
+        return this;
+    }
+
+
+    /**
+     * @return time limit of every query in milliseconds, {@code 0} when unlimited
+     */
+    public long getTimeLimit()
+    {
+        return time_limit;
+    }
+
+
+    /**
+     * Queries also stop when {@code parent} is cancelled or the running query of
+     * {@code parent} exceeds its time limit. {@code parent} has to be started
+     * (by its own query) before any query of this limit, if it has a time limit.
+     *
+     * @param parent {@code null} for none (default)
+     */
+    public SearchLimit setParent(SearchLimit parent)
+    {
+        this.parent = parent;
+        return this;
+    }
+
+
+    /**
+     * Stop the running query as soon as possible, and all queries started
+     * afterwards until {@link #reset()}.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+
+    /**
+     * Undo {@link #cancel()}, before submitting new queries. Not done by the queries
+     * themselves, a cancellation issued before a query started would be lost.
+     */
+    public void reset()
+    {
+        cancelled = false;
+    }
+
+
+    /**
+     * Start of a new query: start the clock, a pending cancellation is kept.
+     */
+    void start()
+    {
+        // check at the first settled node already
+        count = -1;
+        status = PathSearch.STATUS_FOUND;
+        if (time_limit > 0)
+            deadline = System.nanoTime() + time_limit * 1000000L;
+    }
+
+
+    /**
+     * To be called for every settled node.
+     *
+     * @return {@code true} when the query has to stop, see {@link #getStatus()} for the reason
+     */
+    boolean exceeded()
+    {
+        if ((++count & (CHECK_INTERVAL - 1)) != 0)
+            return false;
+
+        status = check();
+        return status != PathSearch.STATUS_FOUND;
+    }
+
+
+    /**
+     * Check the limits of this and all parents right now.
+     *
+     * @return {@code STATUS_CANCELLED}, {@code STATUS_TIMED_OUT} or {@code STATUS_FOUND}
+     *         when no limit is exceeded
+     */
+    int check()
+    {
+        if (cancelled || Thread.currentThread().isInterrupted())
+            return PathSearch.STATUS_CANCELLED;
+        if (time_limit > 0 && System.nanoTime() - deadline > 0)
+            return PathSearch.STATUS_TIMED_OUT;
+        return parent != null ? parent.check() : PathSearch.STATUS_FOUND;
+    }
+
+
+    /**
+     * @return {@code STATUS_CANCELLED} or {@code STATUS_TIMED_OUT} once
+     *         {@link #exceeded()} returned {@code true}, otherwise {@code STATUS_FOUND}
+     */
+    int getStatus()
+    {
+        return status;
+    }
+
+}
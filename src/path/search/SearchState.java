@@ -0,0 +1,242 @@
+package path.search;
+
+import java.util.Arrays;
+
+import data_structures.heap.BinaryMinHeap;
+import data_structures.heap.IndexedMinHeap;
+import data_structures.heap.MinPriorityQueue;
+import data_structures.heap.RadixHeap;
+
+
+
+/**
+ * See {@link #SearchState(int, int)}.
+ */
+public final class SearchState
+{
+    /**
+     * Kinds of priority queues returned by {@link #getQueue()}.
+     */
+    public static final int QUEUE_INDEXED_HEAP = 0,
+                            QUEUE_RADIX_HEAP   = 1,
+                            QUEUE_BINARY_HEAP  = 2;
+
+    /**
+     * Factor used when allocating the heap to save some memory.
+     */
+    private final int     HEAP_SIZE_FACTOR = 500;
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final int[]   dist;
+    private final int[]   pred;
+    /**
+     * Index of the edge of {@code pred} used to reach a node, {@code -1} when unknown.
+     */
+    private final int[]   pred_edge;
+    /**
+     * A node's {@code dist}, {@code pred} and {@code pred_edge} are only valid when its
+     * {@code reached} stamp is {@code 2 * epoch} (reached) or {@code 2 * epoch + 1}
+     * (reached and settled), i.e. {@code mark} or {@code mark + 1}.
+     */
+    private final int[]   reached;
+    private int           epoch = 1;
+    private int           mark  = 2;
+
+    private final int     queue_kind;
+    /**
+     * Allocated on first use, see {@link #getHeap()} and {@link #getQueue()}.
+     */
+    private BinaryMinHeap heap = null;
+    private MinPriorityQueue queue = null;
+
+
+    /**
+     * Per-node labels (distance, predecessor and the edge used, settled flag) and the heap of a
+     * single-direction search over a graph of {@code size} nodes, meant to be
+     * kept and reused for any number of queries.
+     * <br><br>
+     * Instead of clearing the arrays, {@link #reset()} increments a generation
+     * counter ({@code epoch}) and every label carries the epoch it was written in,
+     * labels of earlier epochs read as unreached. The settled flag is the lowest bit
+     * of that stamp, so a state takes 16 bytes per node. Starting a new query therefore
+     * costs {@code O(1)} instead of {@code O(size)}, the work is proportional to
+     * the nodes actually touched. The heaps keep their capacity between queries.
+     * <br><br>
+     * Besides the {@link BinaryMinHeap} there is a second priority queue of the
+     * given kind for searches using {@link MinPriorityQueue#insertOrDecrease(int, int)}.
+     * Both are allocated when a search first asks for them.
+     * The {@link RadixHeap} may only be used when extracted values never decrease,
+     * e.g. by {@link Dijkstra}.
+     * <br><br>
+     * Not thread-safe, use one instance per thread.
+     *
+     * @param size number of nodes
+     * @param queue kind of priority queue, e.g. {@code QUEUE_INDEXED_HEAP}
+     */
+    public SearchState(int size, int queue)
+    {
+        if (queue != QUEUE_INDEXED_HEAP && queue != QUEUE_RADIX_HEAP && queue != QUEUE_BINARY_HEAP) {
+            throw new RuntimeException("Unknown priority queue " + queue);
+        }
+        dist = new int[size];
+        pred = new int[size];
+        pred_edge = new int[size];
+        reached = new int[size];
+        queue_kind = queue;
+    }
+
+
+    /**
+     * Using {@code queue == QUEUE_INDEXED_HEAP}.<br>
+     * See {@link #SearchState(int, int)}.
+     */
+    public SearchState(int size)
+    {
+        this(size, QUEUE_INDEXED_HEAP);
+    }
+
+
+    /**
+     * Start a new query: all nodes are unreached and the heap is empty.
+     */
+    public void reset()
+    {
+        if (heap != null)
+            heap.clear();
+        if (queue != null)
+            queue.clear();
+        if (epoch == Integer.MAX_VALUE / 2) {
+            // stamps would overflow, once every 2^30 queries
+            Arrays.fill(reached, 0);
+            epoch = 0;
+        }
+        ++epoch;
+        mark = 2 * epoch;
+    }
+
+
+    /**
+     * @return generation of the current query, changes with every {@link #reset()}
+     */
+    public int getEpoch()
+    {
+        return epoch;
+    }
+
+
+    public int size()
+    {
+        return dist.length;
+    }
+
+
+    /**
+     * Heap for searches inserting a node again whenever its distance decreases,
+     * allocated on first use.
+     */
+    public BinaryMinHeap getHeap()
+    {
+        if (heap == null)
+            heap = new BinaryMinHeap(dist.length / HEAP_SIZE_FACTOR);
+        return heap;
+    }
+
+
+    /**
+     * Queue of the kind given to the constructor, allocated on first use.
+     */
+    public MinPriorityQueue getQueue()
+    {
+        if (queue == null) {
+            switch (queue_kind) {
+                case QUEUE_RADIX_HEAP:
+                    queue = new RadixHeap();
+                    break;
+                case QUEUE_BINARY_HEAP:
+                    queue = new BinaryMinHeap(dist.length / HEAP_SIZE_FACTOR);
+                    break;
+                default:
+                    queue = new IndexedMinHeap(dist.length);
+            }
+        }
+        return queue;
+    }
+
+
+    /**
+     * @return {@code true} when {@code n} was labeled during the current query
+     */
+    public boolean isReached(int n)
+    {
+        return (reached[n] & ~1) == mark;
+    }
+
+
+    /**
+     * @return current distance of {@code n} or {@code UNREACHED}
+     */
+    public int getDist(int n)
+    {
+        return isReached(n) ? dist[n] : UNREACHED;
+    }
+
+
+    /**
+     * @return predecessor of {@code n} or {@code -1} when there's none
+     */
+    public int getPred(int n)
+    {
+        return isReached(n) ? pred[n] : -1;
+    }
+
+
+    /**
+     * @return index of the edge of {@link #getPred(int) getPred(n)} leading to {@code n},
+     *         i.e. {@code Graph.getIthNeighbor(getPred(n), getPredEdge(n)) == n},
+     *         or {@code -1} when there's none or it's unknown
+     */
+    public int getPredEdge(int n)
+    {
+        return isReached(n) ? pred_edge[n] : -1;
+    }
+
+
+    /**
+     * Label {@code n} with distance {@code d} and predecessor {@code p},
+     * reached by {@code p}'s {@code e}'th edge. Keeps {@code n} settled.
+     */
+    public void setDist(int n, int d, int p, int e)
+    {
+        if (reached[n] != mark + 1)
+            reached[n] = mark;
+        dist[n] = d;
+        pred[n] = p;
+        pred_edge[n] = e;
+    }
+
+
+    /**
+     * Label {@code n} with distance {@code d} and predecessor {@code p},
+     * the edge used is unknown.
+     */
+    public void setDist(int n, int d, int p)
+    {
+        setDist(n, d, p, -1);
+    }
+
+
+    public boolean isSettled(int n)
+    {
+        return reached[n] == mark + 1;
+    }
+
+
+    /**
+     * Mark {@code n} settled, it has to be {@link #isReached(int) reached}.
+     */
+    public void settle(int n)
+    {
+        reached[n] = mark + 1;
+    }
+
+}
@@ -0,0 +1,369 @@
+package path.search;
+
+import java.util.LinkedList;
+
+import org.jdesktop.swingx.mapviewer.GeoPosition;
+
+import util.Distance;
+import data_structures.graph.Graph;
+import data_structures.graph.GraphFile;
+import data_structures.grid.SegmentSnap;
+import data_structures.heap.BinaryMinHeap;
+import data_structures.list.IntList;
+
+
+
+/**
+ * See {@link #SegmentSearch(Graph, boolean)}.
+ */
+public final class SegmentSearch
+{
+    private final boolean weighted;
+    /**
+     * See {@link AStar}.
+     */
+    private final double  scale;
+
+    private final Graph   g;
+    private final SearchState state;
+    /**
+     * Lower bound of the distance to the target point,
+     * valid for nodes reached by the current query.
+     */
+    private final int[]   pot;
+
+    private final SearchLimit limit        = new SearchLimit();
+    private int           status           = PathSearch.STATUS_NO_PATH;
+
+    private SegmentSnap   source           = null;
+    private SegmentSnap   target           = null;
+    /**
+     * Endpoint of the target segment the shortest path leaves the graph at,
+     * {@code -1} when it runs along the common segment of source and target only.
+     */
+    private int           exit             = -1;
+    private int           cost             = 0;
+
+
+    /**
+     * Search for a shortest path between two points on road segments, e.g. as
+     * returned by {@link data_structures.grid.SegmentGrid#getNearestSegment(double, double)
+     * SegmentGrid.getNearestSegment()}.<br>
+     * The search starts from both endpoints of the source segment at once, each with
+     * the cost of the part of the segment between the source point and the endpoint
+     * (the reverse direction only when there's an opposing edge). Likewise the partial
+     * costs from the target segment's endpoints to the target point are added once an
+     * endpoint is settled, the best sum is the result. When source and target lie on
+     * the same segment, going along it directly is a candidate as well.
+     * <br><br>
+     * The search is goal-directed like {@link AStar}, with the straight-line distance
+     * to the target point as lower bound. It stops as soon as no queued node can lead
+     * to a shorter path than the best one found.
+     * <br><br>
+     * Queries can be cancelled and time limited, see {@link #getLimit()}.
+     *
+     * @param graph
+     * @param weighted use distances weighted by street types?
+     */
+    public SegmentSearch(Graph graph, boolean weighted)
+    {
+        g = graph;
+        this.weighted = weighted;
+        scale = g.getMinCostPerMeter(weighted);
+        state = new SearchState(g.size());
+        pot = new int[g.size()];
+    }
+
+
+    /**
+     * Using {@code weighted == true}.<br>
+     * See {@link #SegmentSearch(Graph, boolean)}.
+     */
+    public SegmentSearch(Graph graph)
+    {
+        this(graph, true);
+    }
+
+
+    /**
+     * @return cost of the edge {@code from -> to}, negative when there's no (usable) edge
+     */
+    private int edgeCost(int from, int to, boolean weighted)
+    {
+        for (int e = g.edgeBegin(from), end = g.edgeEnd(from); e < end; ++e) {
+            if (g.edgeTarget(e) == to)
+                return g.edgeWeight(e, weighted);
+        }
+        return -1;
+    }
+
+
+    /**
+     * Length in meters of the part of {@code s}'s segment between its projection
+     * point and node {@code n}, one of the segment's endpoints. It's a part of the
+     * edge {@code s.getFrom() -> s.getTo()} when going from the projection point
+     * towards {@code s.getTo()} or from {@code s.getFrom()} towards the projection
+     * point, of the opposing edge otherwise.
+     *
+     * @param towards_n going from the projection point to {@code n}?
+     * @param weighted weighted by street type?
+     */
+    private int partialLength(SegmentSnap s, int n, boolean towards_n, boolean weighted)
+    {
+        final double f = n == s.getTo() ? 1 - s.getFraction() : s.getFraction();
+        final int w = (n == s.getTo()) == towards_n ? g.getIthEdgeDistFor(s.getFrom(), s.getEdge(), weighted)
+                                                    : edgeCost(s.getTo(), s.getFrom(), weighted);
+        return (int) Math.round(f * Math.max(0, w));
+    }
+
+
+    /**
+     * @return {@code false} when no endpoint of {@code s}'s segment can reach any of {@code t}'s,
+     *         see {@link Graph#mayReach(int, int)}
+     */
+    private boolean mayReach(SegmentSnap s, SegmentSnap t)
+    {
+        return g.mayReach(s.getFrom(), t.getFrom()) || g.mayReach(s.getFrom(), t.getTo())
+            || g.mayReach(s.getTo(), t.getFrom()) || g.mayReach(s.getTo(), t.getTo());
+    }
+
+
+    /**
+     * @return highway type of {@code s}'s segment, for the partial legs of the path
+     */
+    private int type(SegmentSnap s)
+    {
+        return g.edgeType(g.edgeBegin(s.getFrom()) + s.getEdge());
+    }
+
+
+    /**
+     * Compute the potential of {@code n} when it is reached for the first time.
+     * Like {@link AStar}, less one since the partial cost of the target segment
+     * is rounded as well.
+     */
+    private void reach(int n)
+    {
+        if (!state.isReached(n)) {
+            pot[n] = Math.max(0, (int) (Distance.haversine(g.getLat(n), g.getLon(n), target.getLat(), target.getLon()) * scale) - 1);
+        }
+    }
+
+
+    /**
+     * Start the search at {@code n} with distance {@code d}.
+     */
+    private void seed(BinaryMinHeap heap, int n, int d)
+    {
+        if (d < state.getDist(n)) {
+            reach(n);
+            state.setDist(n, d, -1);
+            heap.insert(n, d + pot[n]);
+        }
+    }
+
+
+    /**
+     * Search the shortest path from {@code from} to {@code to}.
+     *
+     * @return {@code false} when no path was found, see {@link #getStatus()} for the reason
+     */
+    public boolean pathFromTo(SegmentSnap from, SegmentSnap to)
+    {
+        source = from;
+        target = to;
+        exit = -1;
+        cost = SearchState.UNREACHED;
+        limit.start();
+
+        // certainly no path, see StrongComponents.mayReach()
+        if (!mayReach(source, target)) {
+            status = PathSearch.STATUS_NO_PATH;
+            return false;
+        }
+
+        final int w_src = g.getIthEdgeDistFor(source.getFrom(), source.getEdge(), weighted);
+        final int w_src_rev = edgeCost(source.getTo(), source.getFrom(), weighted);
+        final int w_dst = g.getIthEdgeDistFor(target.getFrom(), target.getEdge(), weighted);
+        final int w_dst_rev = edgeCost(target.getTo(), target.getFrom(), weighted);
+
+        // along the common segment only
+        if (source.sameEdge(target)) {
+            final double delta = target.getFraction() - source.getFraction();
+            if (delta >= 0 && w_src >= 0)
+                cost = (int) Math.round(delta * w_src);
+            else if (delta <= 0 && w_src_rev >= 0)
+                cost = (int) Math.round(-delta * w_src_rev);
+        }
+
+        // remaining cost from the target segment's endpoints to the target point
+        final int off_from = w_dst >= 0 ? (int) Math.round(target.getFraction() * w_dst) : -1;
+        final int off_to = w_dst_rev >= 0 ? (int) Math.round((1 - target.getFraction()) * w_dst_rev) : -1;
+
+        state.reset();
+        final BinaryMinHeap heap = state.getHeap();
+        if (w_src >= 0)
+            seed(heap, source.getTo(), (int) Math.round((1 - source.getFraction()) * w_src));
+        if (w_src_rev >= 0)
+            seed(heap, source.getFrom(), (int) Math.round(source.getFraction() * w_src_rev));
+
+        while (!heap.isEmpty()) {
+            final int u = heap.getMinID();
+            final int key = heap.getMinValue();
+            heap.removeMin();
+
+            // no shorter path left
+            if (key >= cost)
+                break;
+
+            // outdated duplicate
+            final int u_dist = state.getDist(u);
+            if (key != u_dist + pot[u]) {
+                continue;
+            }
+
+            if (u == target.getFrom() && off_from >= 0 && u_dist + off_from < cost) {
+                cost = u_dist + off_from;
+                exit = u;
+            }
+            if (u == target.getTo() && off_to >= 0 && u_dist + off_to < cost) {
+                cost = u_dist + off_to;
+                exit = u;
+            }
+
+            if (limit.exceeded()) {
+                status = limit.getStatus();
+                return false;
+            }
+
+            final int begin = g.edgeBegin(u);
+            final int end = g.edgeEnd(u);
+            for (int e = begin; e < end; ++e) {
+                final int inc = g.edgeWeight(e, weighted);
+                if (inc < 0)
+                    continue;
+
+                final int v = g.edgeTarget(e);
+                final int new_dist = u_dist + inc;
+                if (new_dist < state.getDist(v)) {
+                    reach(v);
+                    state.setDist(v, new_dist, u, e - begin);
+                    heap.insert(v, new_dist + pot[v]);
+                }
+            }
+        }
+
+        status = cost != SearchState.UNREACHED ? PathSearch.STATUS_FOUND : PathSearch.STATUS_NO_PATH;
+        return status == PathSearch.STATUS_FOUND;
+    }
+
+
+    /**
+     * @return node IDs of the path in the graph, from the first to the last
+     *         endpoint used, empty when the path runs along a single segment
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<Integer> getPathNodeIDs()
+    {
+        return getPathNodes(new IntList()).toLinkedList();
+    }
+
+
+    /**
+     * See {@link Dijkstra#getPathNodes(IntList)}.
+     *
+     * @return {@code out}, empty when the path runs along a single segment
+     * @throws RuntimeException when there's no path
+     */
+    public IntList getPathNodes(IntList out)
+    {
+        if (status != PathSearch.STATUS_FOUND)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        out.clear();
+        for (int i = exit; i != -1; i = state.getPred(i)) {
+            out.add(i);
+        }
+        out.reverse();
+        return out;
+    }
+
+
+    /**
+     * Write the points of the path into {@code out}, replacing its contents: the
+     * source point, the nodes in the graph and the target point (node ID {@code -1}
+     * for both points). The lengths of the partial segments at both ends are included.
+     *
+     * @return {@code out}
+     * @throws RuntimeException when there's no path
+     */
+    public PathResult getPathResult(PathResult out)
+    {
+        if (status != PathSearch.STATUS_FOUND)
+            throw new RuntimeException("Can't return path without a successful search");
+
+        out.clear();
+        if (exit == -1) {
+            // along the common segment only, towards its end the target is closer to
+            final int end = target.getFraction() >= source.getFraction() ? source.getTo() : source.getFrom();
+            out.add(-1, target.getLat(), target.getLon(),
+                    partialLength(source, end, true, false) - partialLength(target, end, true, false),
+                    partialLength(source, end, true, true) - partialLength(target, end, true, true), -1, type(source));
+        }
+        else {
+            out.add(-1, target.getLat(), target.getLon(),
+                    partialLength(target, exit, false, false), partialLength(target, exit, false, true), -1, type(target));
+            for (int n = exit; n != -1; n = state.getPred(n)) {
+                final int p = state.getPred(n);
+                // the first node is reached from the source point
+                if (p != -1)
+                    out.add(g, n, p, state.getPredEdge(n));
+                else
+                    out.add(n, g.getLat(n), g.getLon(n),
+                            partialLength(source, n, true, false), partialLength(source, n, true, true), -1, type(source));
+            }
+        }
+        out.add(-1, source.getLat(), source.getLon(), 0, 0, -1, GraphFile.TYPE_UNKNOWN);
+        out.finishReversed();
+        return out;
+    }
+
+
+    /**
+     * @return locations of the path, from the source point to the target point
+     * @throws RuntimeException when there's no path
+     */
+    public LinkedList<GeoPosition> getPath()
+    {
+        return getPathResult(new PathResult()).toPositions();
+    }
+
+
+    /**
+     * @return cost of the last path found in the metric of the search
+     *         (weighted or not), including the partial segments
+     */
+    public int getCost()
+    {
+        return cost;
+    }
+
+
+    /**
+     * @return why the last query returned (not) a path, one of {@code PathSearch.STATUS_*}
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+
+    /**
+     * Cancellation and time limit of the queries.
+     */
+    public SearchLimit getLimit()
+    {
+        return limit;
+    }
+
+}
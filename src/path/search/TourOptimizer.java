@@ -0,0 +1,448 @@
+package path.search;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+
+/**
+ * See {@link #TourOptimizer(int[][])}.
+ */
+public final class TourOptimizer
+{
+    /**
+     * Default time budget of {@link #optimize(int)} in milliseconds.
+     */
+    public static final long DEFAULT_TIME_BUDGET = 250;
+    /**
+     * Default length of the neighbor lists.
+     */
+    public static final int  DEFAULT_NEIGHBORS = 10;
+    /**
+     * Longest segment moved by an Or-opt move.
+     */
+    private final int        OR_OPT_LENGTH = 3;
+    /**
+     * Cost of a missing connection, large enough to be avoided whenever
+     * possible and small enough to sum up without overflow.
+     */
+    private static final long INF = 1L << 40;
+
+    private final int[][]    dist;
+    private final int        n;
+    private long             budget = DEFAULT_TIME_BUDGET;
+    private int              neighbor_num = DEFAULT_NEIGHBORS;
+    private final Random     random = new Random(1);
+
+    /*
+     * Current tour (city at every position, position of every city) and
+     * prefix sums of its edge costs, forward and reversed.
+     */
+    private int[]            tour;
+    private int[]            pos;
+    private long[]           fwd;
+    private long[]           bwd;
+    private int[][]          neighbors;
+
+    /*
+     * Don't-look bits as a queue of the cities worth looking at.
+     */
+    private boolean[]        queued;
+    private int[]            queue;
+    private int              queue_head, queue_num;
+
+
+    /**
+     * Find a short round trip through all cities of the distance matrix {@code dist}
+     * ({@code dist[i][j]} is the cost from {@code i} to {@code j}, negative when
+     * there's no connection, e.g. from {@link DistanceMatrix}). The matrix does not
+     * have to be symmetric.
+     * <br><br>
+     * The tour is built by the nearest neighbor heuristic and then improved by local
+     * search with 2-opt (reverse a part of the tour) and Or-opt (move a segment of
+     * up to {@code OR_OPT_LENGTH} cities elsewhere) moves. Only moves creating an
+     * edge to one of the nearest cities (neighbor lists) are tried, and cities whose
+     * surroundings did not change since their last unsuccessful check are skipped
+     * (don't-look bits). Local optima are perturbed by random double-bridge moves as
+     * long as the time budget lasts and improvements are found (iterated local search).
+     *
+     * @param dist square distance matrix
+     */
+    public TourOptimizer(int[][] dist)
+    {
+        this.dist = dist;
+        n = dist.length;
+        for (int[] row : dist) {
+            if (row.length != n)
+                throw new RuntimeException("Distance matrix is not square");
+        }
+    }
+
+
+    /**
+     * Time budget of {@link #optimize(int)} in milliseconds,
+     * default is {@code DEFAULT_TIME_BUDGET}.
+     */
+    public TourOptimizer setTimeBudget(long ms)
+    {
+        budget = ms;
+        return this;
+    }
+
+
+    /**
+     * Number of nearest cities considered per city, default is {@code DEFAULT_NEIGHBORS}.
+     */
+    public TourOptimizer setNeighbors(int k)
+    {
+        neighbor_num = Math.max(1, k);
+        return this;
+    }
+
+
+    private long cost(int from, int to)
+    {
+        final int d = dist[from][to];
+        return d < 0 ? INF : d;
+    }
+
+
+    /**
+     * @return total cost of the round trip {@code t}, at least {@code INF}
+     *         when a connection is missing
+     */
+    public long getCost(int[] t)
+    {
+        long c = 0;
+        for (int i = 0; i < t.length; ++i) {
+            c += cost(t[i], t[(i + 1) % t.length]);
+        }
+        return c;
+    }
+
+
+    /**
+     * @return {@code true} when the round trip {@code t} only uses existing connections
+     */
+    public boolean isFeasible(int[] t)
+    {
+        for (int i = 0; i < t.length; ++i) {
+            if (dist[t[i]][t[(i + 1) % t.length]] < 0)
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Compute the round trip.
+     *
+     * @param start city the tour starts (and implicitly ends) with
+     * @return order of all cities, starting with {@code start}
+     */
+    public int[] optimize(int start)
+    {
+        final long deadline = System.nanoTime() + budget * 1000000L;
+
+        tour = nearestNeighborTour(start);
+        if (n < 4) {
+            // at most two different round trips
+            final int[] other = tour.clone();
+            reverseTail(other);
+            return getCost(other) < getCost(tour) ? other : tour;
+        }
+
+        pos = new int[n];
+        fwd = new long[n + 1];
+        bwd = new long[n + 1];
+        queued = new boolean[n];
+        queue = new int[n];
+        buildNeighbors();
+        update();
+
+        for (int c = 0; c < n; ++c)
+            push(c);
+        localSearch(deadline);
+
+        int[] best = tour.clone();
+        long best_cost = getCost(best);
+
+        // iterated local search
+        final int max_failures = Math.max(100, 10 * n);
+        int failures = 0;
+        while (failures < max_failures && System.nanoTime() < deadline) {
+            doubleBridge();
+            localSearch(deadline);
+
+            final long c = getCost(tour);
+            if (c < best_cost) {
+                best = tour.clone();
+                best_cost = c;
+                failures = 0;
+            }
+            else {
+                System.arraycopy(best, 0, tour, 0, n);
+                update();
+                ++failures;
+            }
+        }
+        return best;
+    }
+
+
+    private static void reverseTail(int[] t)
+    {
+        for (int i = 1, j = t.length - 1; i < j; ++i, --j) {
+            final int x = t[i];
+            t[i] = t[j];
+            t[j] = x;
+        }
+    }
+
+
+    private int[] nearestNeighborTour(int start)
+    {
+        final int[] t = new int[n];
+        final boolean[] used = new boolean[n];
+        t[0] = start;
+        used[start] = true;
+        for (int i = 1; i < n; ++i) {
+            int best = -1;
+            for (int c = 0; c < n; ++c) {
+                if (!used[c] && (best < 0 || cost(t[i - 1], c) < cost(t[i - 1], best)))
+                    best = c;
+            }
+            t[i] = best;
+            used[best] = true;
+        }
+        return t;
+    }
+
+
+    /**
+     * Neighbor lists: the {@code neighbor_num} cities nearest to every city,
+     * in either direction.
+     */
+    private void buildNeighbors()
+    {
+        final int k = Math.min(neighbor_num, n - 1);
+        neighbors = new int[n][k];
+        final long[] key = new long[n - 1];
+        final int[] other = new int[n - 1];
+
+        for (int a = 0; a < n; ++a) {
+            int m = 0;
+            for (int b = 0; b < n; ++b) {
+                if (b != a) {
+                    key[m] = Math.min(cost(a, b), cost(b, a));
+                    other[m++] = b;
+                }
+            }
+            // partial selection sort, k is small
+            for (int i = 0; i < k; ++i) {
+                int min = i;
+                for (int j = i + 1; j < m; ++j) {
+                    if (key[j] < key[min])
+                        min = j;
+                }
+                final long tk = key[i]; key[i] = key[min]; key[min] = tk;
+                final int to = other[i]; other[i] = other[min]; other[min] = to;
+                neighbors[a][i] = other[i];
+            }
+        }
+    }
+
+
+    /**
+     * Recompute positions and prefix sums after the tour changed.
+     */
+    private void update()
+    {
+        for (int i = 0; i < n; ++i) {
+            pos[tour[i]] = i;
+        }
+        for (int i = 0; i < n; ++i) {
+            final int a = tour[i];
+            final int b = tour[(i + 1) % n];
+            fwd[i + 1] = fwd[i] + cost(a, b);
+            bwd[i + 1] = bwd[i] + cost(b, a);
+        }
+    }
+
+
+    private void push(int c)
+    {
+        if (queued[c])
+            return;
+        queued[c] = true;
+        queue[(queue_head + queue_num) % n] = c;
+        ++queue_num;
+    }
+
+
+    private int pop()
+    {
+        final int c = queue[queue_head];
+        queue_head = (queue_head + 1) % n;
+        --queue_num;
+        queued[c] = false;
+        return c;
+    }
+
+
+    private int next(int i)
+    {
+        return tour[(i + 1) % n];
+    }
+
+
+    private void localSearch(long deadline)
+    {
+        while (queue_num > 0 && System.nanoTime() < deadline) {
+            final int a = pop();
+            if (improveTwoOpt(a) || improveOrOpt(a)) {
+                // look at a again, its surroundings changed
+                push(a);
+            }
+        }
+    }
+
+
+    /**
+     * 2-opt move on positions {@code i < j}: replace the edges after {@code i}
+     * and after {@code j} by reversing the part in between.
+     *
+     * @return gain, positive when the tour gets shorter
+     */
+    private long twoOptGain(int i, int j)
+    {
+        final int a = tour[i], b = tour[i + 1];
+        final int c = tour[j], d = next(j);
+        // edges within the segment b .. c change direction
+        final long old_cost = cost(a, b) + cost(c, d) + (fwd[j] - fwd[i + 1]);
+        final long new_cost = cost(a, c) + cost(b, d) + (bwd[j] - bwd[i + 1]);
+        return old_cost - new_cost;
+    }
+
+
+    private boolean improveTwoOpt(int a)
+    {
+        final int pa = pos[a];
+        for (int b : neighbors[a]) {
+            final int pb = pos[b];
+            // new edge a -> b (a before b) or b -> a's successor's ... (b before a)
+            for (int k = 0; k < 2; ++k) {
+                int i = k == 0 ? pa : pa - 1;
+                int j = k == 0 ? pb : pb - 1;
+                if (i > j) {
+                    final int t = i; i = j; j = t;
+                }
+                // position 0 stays fixed
+                if (i < 0 || i == j || j > n - 1)
+                    continue;
+                if (twoOptGain(i, j) > 0) {
+                    push(tour[i]); push(tour[i + 1]); push(tour[j]); push(next(j));
+                    reverse(i + 1, j);
+                    update();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private void reverse(int from, int to)
+    {
+        while (from < to) {
+            final int t = tour[from];
+            tour[from++] = tour[to];
+            tour[to--] = t;
+        }
+    }
+
+
+    /**
+     * Or-opt: move the segment of {@code len} cities starting at {@code a}
+     * between a neighbor {@code b} and its successor.
+     */
+    private boolean improveOrOpt(int a)
+    {
+        final int i = pos[a];
+        for (int len = 1; len <= OR_OPT_LENGTH; ++len) {
+            final int j = i + len - 1;
+            // position 0 stays fixed
+            if (i == 0 || j > n - 1 || len > n - 3)
+                break;
+
+            final int prev = tour[i - 1], last = tour[j], nxt = next(j);
+            final long removed = cost(prev, a) + cost(last, nxt) - cost(prev, nxt);
+
+            for (int b : neighbors[a]) {
+                final int pb = pos[b];
+                if ((pb >= i - 1 && pb <= j))
+                    continue;
+                final int c = next(pb);
+                final long gain = removed + cost(b, c) - cost(b, a) - cost(last, c);
+                if (gain > 0) {
+                    push(prev); push(nxt); push(b); push(c); push(last);
+                    moveSegment(i, j, pb);
+                    update();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Move the cities at positions {@code i .. j} behind the city at position {@code p}.
+     */
+    private void moveSegment(int i, int j, int p)
+    {
+        final int len = j - i + 1;
+        final int[] seg = new int[len];
+        System.arraycopy(tour, i, seg, 0, len);
+
+        if (p > j) {
+            System.arraycopy(tour, j + 1, tour, i, p - j);
+            System.arraycopy(seg, 0, tour, p - len + 1, len);
+        }
+        else {
+            System.arraycopy(tour, p + 1, tour, p + 1 + len, i - p - 1);
+            System.arraycopy(seg, 0, tour, p + 1, len);
+        }
+    }
+
+
+    /**
+     * Random double-bridge move: cut the tour into four parts A B C D and
+     * reconnect them as A C B D. Cannot be undone by a single 2-opt or Or-opt move.
+     */
+    private void doubleBridge()
+    {
+        final int[] cut = new int[3];
+        do {
+            cut[0] = 1 + random.nextInt(n - 1);
+            cut[1] = 1 + random.nextInt(n - 1);
+            cut[2] = 1 + random.nextInt(n - 1);
+            Arrays.sort(cut);
+        } while (cut[0] == cut[1] || cut[1] == cut[2]);
+
+        final int[] t = new int[n];
+        int k = 0;
+        for (int i = 0; i < cut[0]; ++i)      t[k++] = tour[i];
+        for (int i = cut[1]; i < cut[2]; ++i) t[k++] = tour[i];
+        for (int i = cut[0]; i < cut[1]; ++i) t[k++] = tour[i];
+        for (int i = cut[2]; i < n; ++i)      t[k++] = tour[i];
+        tour = t;
+        update();
+
+        for (int c : new int[] { tour[cut[0] - 1], tour[cut[0]], tour[cut[1] - 1],
+                                 tour[cut[1]], tour[cut[2] - 1], tour[cut[2]] }) {
+            push(c);
+        }
+    }
+
+}
@@ -14,7 +14,7 @@ import data_structures.graph.Graph;
 
 
 /**
- * See {@link #TravelRoute(Graph, ArrayList, int, GeoPosition)}.
+ * See {@link #TravelRoute(ParallelDistanceMatrix, ArrayList, int, GeoPosition)}.
  */
 public class TravelRoute
 {
@@ -28,11 +28,13 @@ public class TravelRoute
                             VISIT_ORDER_SHORTEST      = 2;
 
     private final Graph graph;
+    private final ParallelDistanceMatrix matrix;
     private final GeoPosition start;
+    private final SearchLimit limit = new SearchLimit();
 
     private int visitOrder = VISIT_ORDER_BY_USER;
     private LinkedList<TravelRouteNode> nodes;
-    private LinkedList<LinkedList<GeoPosition> > route = new LinkedList<LinkedList<GeoPosition> >();
+    private LinkedList<PathResult> route = new LinkedList<PathResult>();
 
     
     /**
@@ -46,12 +48,16 @@ public class TravelRoute
      * <b>Please note</b>: the elements in {@code elements} might change
      * their positions, depending on the selected order!
      * 
+     * @param matrix computes the distances for {@code VISIT_ORDER_SHORTEST}, routes
+     *               are searched in its graph; a long-lived instance keeps its search
+     *               states between routes
      * @throws NoSuchRouteOrderException when {@code order} is unexpected
      * @throws RuntimeException when {@code elements.size() < 2}
      */
-    public TravelRoute(Graph graph, ArrayList<OverlayImage> elements, int order, GeoPosition startPos) throws NoSuchRouteOrderException
+    public TravelRoute(ParallelDistanceMatrix matrix, ArrayList<OverlayImage> elements, int order, GeoPosition startPos) throws NoSuchRouteOrderException
     {
-        this.graph = graph;
+        this.matrix = matrix;
+        graph = matrix.getGraph();
         start = startPos;
         
         if (elements.size() < 2) {
@@ -75,11 +81,11 @@ public class TravelRoute
     
     
     /**
-     * See {@link #TravelRoute(Graph, ArrayList, int, GeoPosition)}.
+     * See {@link #TravelRoute(ParallelDistanceMatrix, ArrayList, int, GeoPosition)}.
      */
-    public TravelRoute(Graph graph, ArrayList<OverlayImage> elements, int order) throws NoSuchRouteOrderException
+    public TravelRoute(ParallelDistanceMatrix matrix, ArrayList<OverlayImage> elements, int order) throws NoSuchRouteOrderException
     {
-        this(graph, elements, order, null);
+        this(matrix, elements, order, null);
     }
     
     
@@ -92,12 +98,26 @@ public class TravelRoute
     }
             
     
+    /**
+     * Cancellation and time limit of {@link #calculate()} as a whole: the distance
+     * matrix and the searches of all legs stop once it is exceeded.
+     */
+    public SearchLimit getLimit()
+    {
+        return limit;
+    }
+    
+    
     /**
      * Find a route with the requested parameters (i.e. order).
-     * @throws NoSuchRouteException when there's no way found from a location to other locations
+     * @throws NoSuchRouteException when there's no way found from a location to other locations,
+     *         or the calculation was cancelled or timed out, see {@link #getLimit()}
      */
     public TravelRoute calculate() throws NoSuchRouteException
     {
+        limit.start();
+        checkLocations(nodes);
+        
         switch(visitOrder) {
             case VISIT_ORDER_BY_USER:
                 // the list is already in user-defined order
@@ -107,13 +127,39 @@ public class TravelRoute
                 simpleRoute(nodes);
                 break;
             case VISIT_ORDER_SHORTEST:
-                shortestRouteGreedy(nodes);
+                shortestRoute(nodes);
                 break;
         }
         return this;
     }
     
     
+    /**
+     * Node a location is routed from or to: the nearest node of the main
+     * strongly connected component. Nodes of other components (e.g. dead-end
+     * fragments) can't reach most locations, searches from or to them fail.
+     */
+    private int snap(GeoPosition pos)
+    {
+        return graph.getNearestNode(pos, true);
+    }
+    
+    
+    /**
+     * Every location has to be routed from and to a node. Since {@link #snap(GeoPosition)}
+     * only picks nodes of the main component, they all reach each other.
+     * @throws NoSuchRouteException 
+     */
+    private void checkLocations(LinkedList<TravelRouteNode> nodes) throws NoSuchRouteException
+    {
+        for (TravelRouteNode n : nodes) {
+            if (snap(n.getPos()) < 0) {
+                throw new NoSuchRouteException("At least one location is outside of the graph!");
+            }
+        }
+    }
+    
+    
     /**
      * Just connect all nodes in {@code nodes}.
      * @throws NoSuchRouteException 
@@ -122,22 +168,23 @@ public class TravelRoute
     {
         route.clear();
         Dijkstra d = new Dijkstra(graph);
+        d.getLimit().setParent(limit);
         Iterator<TravelRouteNode> it = nodes.iterator();
         GeoPosition src, dst;
         int src_nid = 0, dst_nid = 0;
         
         src = it.next().getPos();
-        src_nid = graph.getNearestNode(src);
+        src_nid = snap(src);
         
         while (it.hasNext())
         {
             dst = it.next().getPos();
-            dst_nid = graph.getNearestNode(dst);
+            dst_nid = snap(dst);
             if (d.pathFromTo(src_nid, dst_nid)) {
-                route.add(d.getPath());
+                route.add(d.getPathResult(new PathResult()));
             }
             else {
-                throw new NoSuchRouteException("Unable to find a way between two locations!");
+                throw noRoute(d.getStatus());
             }
             src = dst;
             src_nid = dst_nid;
@@ -146,83 +193,72 @@ public class TravelRoute
     
     
     /**
-     * Simple greedy approach to find a shortest route.<br>
-     * The resulting route can be potentially pretty bad, but it's reasonably fast.
+     * @param status status of a failed query, see {@link PathSearch#getStatus()}
+     * @return exception telling whether there's no way or the search was stopped
+     */
+    private static NoSuchRouteException noRoute(int status)
+    {
+        switch (status) {
+            case PathSearch.STATUS_CANCELLED:
+                return new NoSuchRouteException("Route calculation was cancelled!");
+            case PathSearch.STATUS_TIMED_OUT:
+                return new NoSuchRouteException("Route calculation timed out!");
+            default:
+                return new NoSuchRouteException("Unable to find a way between two locations!");
+        }
+    }
+    
+    
+    /**
+     * Find a short round trip: distances between all locations are computed
+     * up front by the {@link ParallelDistanceMatrix}, the visit order is optimized by a
+     * {@link TourOptimizer} and paths are only searched for the chosen legs.
      * @throws NoSuchRouteException 
      */
-    private void shortestRouteGreedy(LinkedList<TravelRouteNode> nodes) throws NoSuchRouteException
+    private void shortestRoute(LinkedList<TravelRouteNode> nodes) throws NoSuchRouteException
     {
         route.clear();
-        Dijkstra d = new Dijkstra(graph);
-        
-        LinkedList<TravelRouteNode> candidates = new LinkedList<TravelRouteNode>(nodes);
-        nodes.clear();
-        nodes.add(candidates.removeFirst());
-        // we go home "manually" at the end
-        candidates.removeLast();
-                
-        
-        while (!candidates.isEmpty())
-        {
-            // the node added during the last iteration
-            final TravelRouteNode src_trn = nodes.getLast();
-            final GeoPosition src = src_trn.getPos();
-            final int src_nid = graph.getNearestNode(src);
-            
-            //System.out.println("   src: " + (src_trn.getData() == null ? "(null)" : src_trn.getData().getLabel()));
-            
-            TravelRouteNode shortest_trn = null;
-            LinkedList<GeoPosition> shortest = new LinkedList<GeoPosition>();
-            int shortest_dist = Integer.MAX_VALUE;
-            
-            // find the best next node
-            Iterator<TravelRouteNode> it = candidates.iterator();
-            while (it.hasNext())
-            {
-                final TravelRouteNode cand_trn = it.next();
-                final GeoPosition cand = cand_trn.getPos();
-                final int cand_nid = graph.getNearestNode(cand);
-                
-                if (d.pathFromTo(src_nid, cand_nid)) {
-                    LinkedList<GeoPosition> r = d.getPath();
-                    if (d.getDist() < shortest_dist) {
-                        shortest_trn = cand_trn;
-                        shortest_dist = d.getDist();
-                        shortest = r;
-                    }
-                    //System.out.println("      cand: " + (cand_trn.getData() == null? "(null)" : cand_trn.getData().getLabel()) + " (" + d.getDist() + ")");
-                }
-                //else {
-                //    System.out.println("      cand: no route to " + (cand_trn.getData() == null ? "(null)" : cand_trn.getData().getLabel()));
-                //}
 
-            }
-            
-            if (shortest_trn == null) {
-                throw new NoSuchRouteException("At least one location is not reachable by any candidate locations!");
-            }
-            //System.out.println("   src: shortest candidate: " + (shortest_trn.getData() == null? "(null)" :shortest_trn.getData().getLabel()) + " (" + shortest_dist + ")");
-            nodes.add(shortest_trn);
-            candidates.remove(shortest_trn);
-            route.add(shortest);
+        // we go home "manually" at the end
+        final TravelRouteNode[] trn = new TravelRouteNode[nodes.size() - 1];
+        final int[] nid = new int[trn.length];
+        int k = 0;
+        for (TravelRouteNode n : nodes) {
+            if (k == trn.length)
+                break;
+            trn[k] = n;
+            nid[k] = snap(n.getPos());
+            ++k;
         }
-        
-        
-        // go back home
-        final TravelRouteNode src_trn = nodes.getLast();
-        final GeoPosition src = src_trn.getPos();
-        final int src_nid = graph.getNearestNode(src);
 
-        final TravelRouteNode dst_trn = nodes.getFirst();
-        final GeoPosition dst = dst_trn.getPos();
-        final int dst_nid = graph.getNearestNode(dst);
-        
-        if (d.pathFromTo(src_nid, dst_nid)) {
-            nodes.add(dst_trn);
-            route.add(d.getPath());
+        final int[][] dist;
+        try {
+            dist = matrix.manyToMany(nid, limit);
+        }
+        catch (RuntimeException e) {
+            if (limit.check() == PathSearch.STATUS_FOUND)
+                throw e;
+            throw noRoute(limit.check());
+        }
+        final TourOptimizer opt = new TourOptimizer(dist);
+        final int[] order = opt.optimize(0);
+        if (!opt.isFeasible(order)) {
+            throw new NoSuchRouteException("At least one location is not reachable by any candidate locations!");
         }
-        else {
-            throw new NoSuchRouteException("Unable to find a way back home!");
+
+        // paths of the chosen legs only, back home at the end
+        Dijkstra d = new Dijkstra(graph);
+        d.getLimit().setParent(limit);
+        nodes.clear();
+        nodes.add(trn[0]);
+        for (int i = 1; i <= order.length; ++i) {
+            final int src = order[i - 1];
+            final int dst = order[i % order.length];
+            if (!d.pathFromTo(nid[src], nid[dst])) {
+                throw noRoute(d.getStatus());
+            }
+            nodes.add(trn[dst]);
+            route.add(d.getPathResult(new PathResult()));
         }
     }
     
@@ -260,11 +296,24 @@ public class TravelRoute
     
     
     /**
-     * @return a list of lists of positions for the last calculated route
+     * @return the paths between consecutive locations of the last calculated route
      */
-    public LinkedList<LinkedList<GeoPosition> > getRoute()
+    public LinkedList<PathResult> getRoute()
     {
         return route;
     }
     
+    
+    /**
+     * @return length of the last calculated route in meters
+     */
+    public long getLength()
+    {
+        long r = 0;
+        for (PathResult p : route) {
+            r += p.getLength();
+        }
+        return r;
+    }
+    
 }
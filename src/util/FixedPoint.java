@@ -0,0 +1,67 @@
+package util;
+
+
+
+/**
+ * Coordinates as fixed-point {@code int}s in units of {@code 1e-7} degrees, the
+ * resolution OSM stores them in (about 1 cm). Every latitude and longitude fits
+ * into an {@code int} and converting a fixed-point value to degrees and back
+ * yields the same value.
+ */
+public final class FixedPoint
+{
+    /**
+     * Units per degree.
+     */
+    public static final double SCALE = 1e7;
+
+
+    private FixedPoint() {};
+
+
+    /**
+     * @param deg latitude or longitude in decimal degrees
+     * @return {@code deg} rounded to the closest fixed-point value
+     */
+    public static int toFixed(double deg)
+    {
+        return (int) Math.round(deg * SCALE);
+    }
+
+
+    /**
+     * @param f latitude or longitude in fixed-point units
+     * @return {@code f} in decimal degrees
+     */
+    public static double toDegrees(int f)
+    {
+        return f / SCALE;
+    }
+
+
+    /**
+     * @return all values of {@code deg} rounded to fixed-point values
+     */
+    public static int[] toFixed(double[] deg)
+    {
+        final int[] r = new int[deg.length];
+        for (int i = 0; i < deg.length; ++i) {
+            r[i] = toFixed(deg[i]);
+        }
+        return r;
+    }
+
+
+    /**
+     * @return all values of {@code f} in decimal degrees
+     */
+    public static double[] toDegrees(int[] f)
+    {
+        final double[] r = new double[f.length];
+        for (int i = 0; i < f.length; ++i) {
+            r[i] = toDegrees(f[i]);
+        }
+        return r;
+    }
+
+}